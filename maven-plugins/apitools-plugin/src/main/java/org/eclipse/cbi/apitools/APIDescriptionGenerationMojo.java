@@ -33,6 +33,27 @@ public class APIDescriptionGenerationMojo extends AbstractMojo {
      */
     private MavenProject project;
 
+    /**
+     * Number of threads scanning the Java sources for API tags.
+     * @parameter expression="${apitools.scanThreads}" default-value="1"
+     */
+    private int scanThreads;
+
+    /**
+     * File remembering the API tags of each source file, so that unchanged
+     * files are not parsed again. Point it outside the build directory to
+     * keep it across clean builds.
+     * @parameter expression="${apitools.scanCache}" default-value="${project.build.directory}/apitools/tagScanCache.xml"
+     */
+    private File scanCache;
+
+    /**
+     * Digest of the inputs of the last generated .api_description file.
+     * The description is only generated again when its inputs change.
+     * @parameter expression="${apitools.inputsDigest}" default-value="${project.build.directory}/apitools/api_description.digest"
+     */
+    private File inputsDigest;
+
     public void execute() throws MojoExecutionException, MojoFailureException {
     	// API Tools can apply to any kind of Java code
     	if (! (this.project.getPackaging().equals("eclipse-plugin") || this.project.getPackaging().equals("jar")) ) {
@@ -45,6 +66,9 @@ public class APIDescriptionGenerationMojo extends AbstractMojo {
     	task.setBinary(this.project.getBuild().getDirectory());
     	task.setTarget(new File(this.project.getBuild().getDirectory(), "classes").getAbsolutePath());
     	task.setDebug(Boolean.toString(getLog().isDebugEnabled()));
+    	task.setThreads(this.scanThreads);
+    	task.setScanCache(this.scanCache.getAbsolutePath());
+    	task.setInputsDigest(this.inputsDigest.getAbsolutePath());
     	task.execute();
     }
 }
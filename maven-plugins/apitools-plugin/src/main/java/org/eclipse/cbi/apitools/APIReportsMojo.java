@@ -58,6 +58,13 @@ public class APIReportsMojo extends AbstractMojo {
      */
     private Map<String, TychoProject> projectTypes;
 
+    /**
+     * Loopback port of an API analysis daemon keeping baselines loaded
+     * between builds. The analysis runs in this build if no daemon answers.
+     * @parameter expression="${apitools.daemonPort}" default-value="0"
+     */
+    private int daemonPort;
+
     private File profileLocation;
     private File includeList;
 
@@ -71,6 +78,7 @@ public class APIReportsMojo extends AbstractMojo {
     	task.setFilters(this.project.getArtifactId());
     	prepareProfile();
     	task.setProfile(this.profileLocation.getAbsolutePath());
+    	task.setDaemonPort(this.daemonPort);
     	// TODO includes & excludes
     	task.execute();
     }
@@ -10,27 +10,62 @@
  *******************************************************************************/
 package org.eclipse.pde.apitools.ant.internal;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.tools.ant.BuildException;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.pde.api.tools.internal.builder.BaseApiAnalyzer;
 import org.eclipse.pde.api.tools.internal.builder.BuildContext;
+import org.eclipse.pde.api.tools.internal.model.StubApiComponent;
 import org.eclipse.pde.api.tools.internal.provisional.ApiPlugin;
+import org.eclipse.pde.api.tools.internal.provisional.IApiFilterStore;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
 import org.eclipse.pde.api.tools.internal.provisional.problems.IApiProblem;
 import org.eclipse.pde.api.tools.internal.util.Util;
 import org.eclipse.pde.apitools.ant.util.ApiToolsUtils;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 public abstract class AbstractAnalysisRunner {
+	public static final String REPORT_NAME = "analysisReport.xml";
+	
 	protected String reports;
 	protected String filters;
 	protected Properties properties;
 	protected boolean debug;
 	protected boolean skipNonApi;
 	protected String xslLoc;
+	protected int threads = 1;
+	protected boolean incremental = false;
+	protected ReportHandler reportHandler = null;
+	protected Metrics metrics = new Metrics();
+	protected AnalysisProfile profile = null;
+	
+	/**
+	 * Receives each report as soon as it is generated
+	 */
+	public interface ReportHandler {
+		/**
+		 * Write the given report. The report is released 
+		 * once this method returns.
+		 * 
+		 * @param id the id of the bundle
+		 * @param report its report
+		 * @throws BuildException if the report cannot be written
+		 */
+		public void handleReport(String id, ApiAnalysisReport report) throws BuildException;
+	}
 
 	public AbstractAnalysisRunner(String reports, String filters, Properties properties, 
 			boolean skipNonApi, String xslLoc, boolean debug) {
@@ -44,6 +79,107 @@ public abstract class AbstractAnalysisRunner {
 	
 	public abstract HashMap<String, ApiAnalysisReport> generateReports() throws BuildException;
 
+	/**
+	 * Hand each report to the given handler as soon as it is generated, 
+	 * instead of keeping all reports until the analysis is complete.
+	 * 
+	 * <p>The map answered by {@link #generateReports()} then only holds 
+	 * the skipped reports, and a {@link ApiAnalysisReport.WrittenReport} 
+	 * for every other bundle. When bundles are analyzed one after another, 
+	 * each bundle is also closed once analyzed, so that memory use is bound 
+	 * by the largest bundle rather than by the whole baseline.</p>
+	 * 
+	 * @param handler a handler, or <code>null</code> to keep all reports
+	 */
+	public void setReportHandler(ReportHandler handler) {
+		this.reportHandler = handler;
+	}
+	
+	/*
+	 * Hand the report over in streaming mode, and answer what remains of it
+	 */
+	protected ApiAnalysisReport handleReport(String name, ApiAnalysisReport report) {
+		if( reportHandler == null || report instanceof ApiAnalysisReport.AnalysisSkippedReport )
+			return report;
+		reportHandler.handleReport(name, report);
+		return new ApiAnalysisReport.WrittenReport(name);
+	}
+	
+	/*
+	 * Release what the analysis of a bundle loaded. Classes of the 
+	 * bundle are read again if a later bundle depends on them.
+	 */
+	protected void releaseBundle(IApiBaseline refBase, IApiComponent apiComponent) {
+		try {
+			apiComponent.close();
+			IApiComponent refComponent = refBase.getApiComponent(apiComponent.getSymbolicName());
+			if( refComponent != null )
+				refComponent.close();
+		} catch(CoreException ce) {
+			ApiPlugin.log(ce);
+		}
+		StubApiComponent.disposeAllCaches();
+	}
+
+	/**
+	 * Set the metrics the runner records its timers and counters in
+	 * 
+	 * @param metrics the metrics of the running task
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	public Metrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Record the cost of analyzing each bundle in the given profile
+	 * 
+	 * @param profile a profile, or <code>null</code> to not profile the analysis
+	 */
+	public void setProfile(AnalysisProfile profile) {
+		this.profile = profile;
+	}
+	
+	public AnalysisProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Set the number of worker threads used to load baselines and 
+	 * analyze bundles. A value of 1 or less handles bundles one after 
+	 * another on the calling thread.
+	 * 
+	 * @param threads the number of workers
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	public int getThreads() {
+		return threads;
+	}
+	
+	/**
+	 * Set whether a bundle whose analysis inputs did not change since
+	 * the previous run should reuse the report found in the reports 
+	 * directory instead of being analyzed again. 
+	 * 
+	 * <p>The runner only reads the fingerprints stored next to the reports. 
+	 * Writing them along with the reports is up to the caller, as the 
+	 * apiAnalysis task does.</p>
+	 * 
+	 * @param incremental true to reuse unchanged reports
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+	
+	public boolean isIncremental() {
+		return incremental;
+	}
 	
 	public HashMap<String, ApiAnalysisReport> generateReports(
 			IApiBaseline refBase,
@@ -56,14 +192,15 @@ public abstract class AbstractAnalysisRunner {
 		if( debug )
 			System.out.println("Calculating Missing Bundles...");
 
-		// Create our report mapping
-		HashMap<String, ApiAnalysisReport> reports = new HashMap<String, ApiAnalysisReport>();
+		// Create our report mapping. Keep insertion order so the
+		// resulting reports are stable regardless of the thread count
+		HashMap<String, ApiAnalysisReport> reports = new LinkedHashMap<String, ApiAnalysisReport>();
 		for( int i = 0; i < removedBundles.length; i++ ) {
 			IApiProblem problem = ApiToolsUtils.createRemovedComponentProblem(removedBundles[i].getSymbolicName());
 			ApiAnalysisReport report = new ApiAnalysisReport(removedBundles[i].getSymbolicName(), 
 					new IApiProblem[]{ problem }, properties, xslLoc);
 
-			reports.put(removedBundles[i].getSymbolicName(), report);
+			reports.put(removedBundles[i].getSymbolicName(), handleReport(removedBundles[i].getSymbolicName(), report));
 		}
 		if( debug )
 			System.out.println("Finished Calculating Missing Bundles.\n\n");
@@ -71,42 +208,144 @@ public abstract class AbstractAnalysisRunner {
 		
 		
 		IApiComponent[] bundlesToCompare = curIncluded;
-		for( int i = 0; i < bundlesToCompare.length; i++ ) {
-			IApiComponent apiComponent = bundlesToCompare[i];
-			String name = apiComponent.getSymbolicName();
-			if( debug )
-				System.out.println("Analyzing Bundle " + (i+1) + " of " + bundlesToCompare.length + ": " + name);
-			
-			if (apiComponent.isSystemComponent()) {
-				reports.put(name, new ApiAnalysisReport.AnalysisSkippedReport(
-						name, "systemComponent"));
-				continue;
+		if( threads > 1 && bundlesToCompare.length > 1 ) {
+			analyzeParallel(refBase, bundlesToCompare, properties, reports);
+		} else {
+			for( int i = 0; i < bundlesToCompare.length; i++ ) {
+				if( debug )
+					System.out.println("Analyzing Bundle " + (i+1) + " of " + bundlesToCompare.length + ": " + bundlesToCompare[i].getSymbolicName());
+				String name = bundlesToCompare[i].getSymbolicName();
+				reports.put(name, handleReport(name, analyzeBundle(refBase, bundlesToCompare[i], properties)));
+				if( reportHandler != null )
+					releaseBundle(refBase, bundlesToCompare[i]);
 			}
-			
-			if (skipNonApi && !Util.isApiToolsComponent(apiComponent)) {
-				reports.put(name, new ApiAnalysisReport.AnalysisSkippedReport(
-						name, "nonAPI"));
-				continue;
+		}
+		return reports;
+	}
+	
+	/*
+	 * Analyze every bundle on a fixed pool of workers. Each bundle 
+	 * gets its own analyzer, build context and filter store; the 
+	 * results are merged in the order of the given array.
+	 */
+	protected void analyzeParallel(final IApiBaseline refBase, final IApiComponent[] bundlesToCompare, 
+			final Properties properties, HashMap<String, ApiAnalysisReport> reports) throws BuildException {
+		int workers = Math.min(threads, bundlesToCompare.length);
+		if( debug )
+			System.out.println("Analyzing " + bundlesToCompare.length + " Bundles with " + workers + " threads");
+		
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		try {
+			ArrayList<Future<ApiAnalysisReport>> futures = new ArrayList<Future<ApiAnalysisReport>>(bundlesToCompare.length);
+			for( int i = 0; i < bundlesToCompare.length; i++ ) {
+				final IApiComponent apiComponent = bundlesToCompare[i];
+				futures.add(executor.submit(new Callable<ApiAnalysisReport>() {
+					public ApiAnalysisReport call() throws Exception {
+						return analyzeBundle(refBase, apiComponent, properties);
+					}
+				}));
+			}
+			for( int i = 0; i < bundlesToCompare.length; i++ ) {
+				String name = bundlesToCompare[i].getSymbolicName();
+				if( debug )
+					System.out.println("Analyzing Bundle " + (i+1) + " of " + bundlesToCompare.length + ": " + name);
+				reports.put(name, handleReport(name, futures.get(i).get()));
+				// Do not hold on to the report any longer than needed
+				futures.set(i, null);
+			}
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new BuildException(ie);
+		} catch(ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if( cause instanceof RuntimeException )
+				throw (RuntimeException)cause;
+			if( cause instanceof Error )
+				throw (Error)cause;
+			throw new BuildException(cause);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/*
+	 * Analyze a single bundle against the reference baseline. 
+	 * This method must remain safe to call from several threads at once.
+	 */
+	protected ApiAnalysisReport analyzeBundle(IApiBaseline refBase, 
+			IApiComponent apiComponent, Properties properties) {
+		String name = apiComponent.getSymbolicName();
+		if (apiComponent.isSystemComponent()) {
+			metrics.count(Metrics.BUNDLES_SKIPPED, 1);
+			return new ApiAnalysisReport.AnalysisSkippedReport(
+					name, "systemComponent");
+		}
+		
+		if (skipNonApi && !Util.isApiToolsComponent(apiComponent)) {
+			metrics.count(Metrics.BUNDLES_SKIPPED, 1);
+			return new ApiAnalysisReport.AnalysisSkippedReport(
+					name, "nonAPI");
+		}
+		
+		AnalysisFingerprint fingerprint = null;
+		if( incremental && reports != null ) {
+			File reportDir = new File(reports, name);
+			AnalysisFingerprint previous = AnalysisFingerprint.load(new File(reportDir, AnalysisFingerprint.FILE_NAME));
+			fingerprint = AnalysisFingerprint.create(refBase, apiComponent, filters, 
+					properties, getFingerprintSettings(), previous);
+			File previousReport = new File(reportDir, REPORT_NAME);
+			if( fingerprint != null && fingerprint.isUnchanged(previous) && previousReport.isFile()) {
+				try {
+					ApiAnalysisReport report = ApiAnalysisReport.readReport(name, previousReport, properties, xslLoc);
+					report.setFingerprint(previous);
+					metrics.count(Metrics.BUNDLES_REUSED, 1);
+					if( debug )
+						System.out.println("Reusing unchanged report for " + name);
+					return report;
+				} catch(IOException ioe) {
+					// Unreadable, analyze again
+				}
 			}
+		}
+		
+		BaseApiAnalyzer analyzer = new BaseApiAnalyzer();
+		try {
+			IApiFilterStore filterStore = ApiToolsUtils.getFilterStore(filters, name);
+			Metrics.Stopwatch watch = metrics.start(Metrics.ANALYSIS);
+			AnalysisProfile.Probe probe = profile == null ? null : profile.start(name);
+			analyzer.analyzeComponent(null, filterStore, properties, 
+					refBase, apiComponent, new BuildContext(), new NullProgressMonitor());
+			IApiProblem[] problems = analyzer.getProblems();
+			// remove duplicates
+			problems = ApiToolsUtils.removeDuplicates(problems);
+			if( probe != null )
+				probe.stop(problems.length);
 			
-			BaseApiAnalyzer analyzer = new BaseApiAnalyzer();
-			try {
-				analyzer.analyzeComponent(null, ApiToolsUtils.getFilterStore(filters, name), properties, 
-						refBase, apiComponent, new BuildContext(), new NullProgressMonitor());
-				IApiProblem[] problems = analyzer.getProblems();
-				// remove duplicates
-				problems = ApiToolsUtils.removeDuplicates(problems);
-				
-				// Show even if empty. Otherwise users get confused
-				reports.put(name, new ApiAnalysisReport(
-						name, problems, properties, xslLoc));
-			} catch(RuntimeException e) {
-				ApiPlugin.log(e);
-				throw e;
-			} finally {
-				analyzer.dispose();
+			metrics.record(Metrics.BUNDLE_ANALYSIS_TIME, watch.stop());
+			metrics.record(Metrics.BUNDLE_PROBLEMS, problems.length);
+			metrics.count(Metrics.BUNDLES_ANALYZED, 1);
+			metrics.count(Metrics.PROBLEMS, problems.length);
+			if( filterStore instanceof AntFilterStore ) {
+				metrics.count(Metrics.FILTER_CHECKS, ((AntFilterStore)filterStore).getFilterChecks());
+				metrics.count(Metrics.FILTER_HITS, ((AntFilterStore)filterStore).getFilterHits());
 			}
+			
+			// Show even if empty. Otherwise users get confused
+			ApiAnalysisReport report = new ApiAnalysisReport(name, problems, properties, xslLoc);
+			report.setFingerprint(fingerprint);
+			return report;
+		} catch(RuntimeException e) {
+			ApiPlugin.log(e);
+			throw e;
+		} finally {
+			analyzer.dispose();
 		}
-		return reports;
+	}
+	
+	/*
+	 * Any runner setting that changes the contents of a report
+	 */
+	protected String getFingerprintSettings() {
+		return "skipNonApi=" + skipNonApi + ",xsl=" + xslLoc; //$NON-NLS-1$ //$NON-NLS-2$
 	}
 }
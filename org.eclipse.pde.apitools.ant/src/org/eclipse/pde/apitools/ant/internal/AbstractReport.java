@@ -13,7 +13,7 @@ package org.eclipse.pde.apitools.ant.internal;
 import java.util.ArrayList;
 import java.util.Iterator;
 
-import org.eclipse.pde.apitools.ant.util.IMemento;
+import org.eclipse.pde.apitools.ant.util.IMementoWriter;
 
 
 public abstract class AbstractReport {
@@ -36,7 +36,7 @@ public abstract class AbstractReport {
 	 * 
 	 * @param xml an xml memento to be filled with data
 	 */
-	protected void fillChildren(IMemento xml) {
+	protected void fillChildren(IMementoWriter xml) {
 		Iterator<AbstractReport> cIt = children.iterator();
 		while(cIt.hasNext()) {
 			AbstractReport next = cIt.next();
@@ -49,11 +49,11 @@ public abstract class AbstractReport {
 	 * Current implementation only passes the responsibility on 
 	 * to child reports. 
 	 * 
-	 * Extenders should create child contexts to the IMemento and fill it
+	 * Extenders should create child contexts to the IMementoWriter and fill it
 	 * with proper attributes, then pass on such a child memento 
 	 * to fillChildren(...). 
 	 */
-	protected void fillMemento(IMemento parentContext) {
+	protected void fillMemento(IMementoWriter parentContext) {
 		// Fill with details here, then recurse by calling fillChildren
 		fillChildren(parentContext);
 	}
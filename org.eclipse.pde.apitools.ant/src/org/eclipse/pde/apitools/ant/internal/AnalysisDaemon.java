@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.tools.ant.DefaultLogger;
+import org.apache.tools.ant.Project;
+import org.eclipse.pde.apitools.ant.tasks.slim.AbstractComparisonTask;
+
+/**
+ * A long-lived process running analysis tasks on behalf of Ant tasks
+ * and Maven mojos, so that baselines stay loaded from one build to
+ * the next.
+ *
+ * The daemon listens on a loopback port. Each connection carries one
+ * request and its response, both as properties: the client writes the
+ * request and shuts its output down, the daemon runs the task and
+ * answers with a status, a message and the output of the task.
+ * Connections are read on their own thread with a timeout, so a stalled
+ * client cannot hold the daemon, but tasks run one at a time, and
+ * baselines given as a location are taken from a {@link BaselineRepository}.
+ *
+ * On start the daemon writes a random token to a file only its owner
+ * can read, see {@link #getTokenFile(int)}. Requests without that token
+ * are refused, so that other local users cannot run tasks through it.
+ *
+ * Usage: <code>AnalysisDaemon &lt;port&gt; [&lt;max baselines&gt;]</code>
+ */
+public class AnalysisDaemon {
+	public static final String KEY_COMMAND = "command"; //$NON-NLS-1$
+	public static final String KEY_TASK = "task"; //$NON-NLS-1$
+	public static final String KEY_STATUS = "status"; //$NON-NLS-1$
+	public static final String KEY_MESSAGE = "message"; //$NON-NLS-1$
+	public static final String KEY_OUTPUT = "output"; //$NON-NLS-1$
+	public static final String KEY_TOKEN = "token"; //$NON-NLS-1$
+
+	public static final String COMMAND_RUN = "run"; //$NON-NLS-1$
+	public static final String COMMAND_SHUTDOWN = "shutdown"; //$NON-NLS-1$
+	public static final String STATUS_OK = "ok"; //$NON-NLS-1$
+	public static final String STATUS_FAILED = "failed"; //$NON-NLS-1$
+
+	private static final int CONNECT_TIMEOUT = 2000;
+	private static final int READ_TIMEOUT = 30000;
+	private static final String TOKEN_FOLDER = ".apitools"; //$NON-NLS-1$
+
+	private int port;
+	private BaselineRepository repository;
+	private volatile boolean running;
+	private ServerSocket server;
+	private String token;
+	private Object executionLock = new Object();
+
+	public AnalysisDaemon(int port, int maxBaselines) {
+		this.port = port;
+		this.repository = new BaselineRepository(maxBaselines);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if( args.length < 1 ) {
+			System.err.println("Usage: AnalysisDaemon <port> [<max baselines>]"); //$NON-NLS-1$
+			System.exit(1);
+		}
+		int port = Integer.parseInt(args[0]);
+		int maxBaselines = args.length > 1 ? Integer.parseInt(args[1]) : BaselineRepository.DEFAULT_MAX_BASELINES;
+		new AnalysisDaemon(port, maxBaselines).run();
+	}
+
+	/**
+	 * Serve requests until a shutdown request is received
+	 *
+	 * @throws IOException if the port cannot be bound
+	 */
+	public void run() throws IOException {
+		server = new ServerSocket(port, 50, InetAddress.getByName(null));
+		File tokenFile = getTokenFile(server.getLocalPort());
+		ExecutorService handlers = Executors.newCachedThreadPool();
+		running = true;
+		try {
+			token = new BigInteger(130, new SecureRandom()).toString(32);
+			writeToken(tokenFile, token);
+			System.out.println("API analysis daemon listening on port " + server.getLocalPort()); //$NON-NLS-1$
+			while( running ) {
+				final Socket socket;
+				try {
+					socket = server.accept();
+				} catch(SocketException se) {
+					// Closed by a shutdown request
+					if( !running )
+						break;
+					throw se;
+				}
+				handlers.execute(new Runnable() {
+					public void run() {
+						try {
+							socket.setSoTimeout(READ_TIMEOUT);
+							handle(socket);
+						} catch(IOException ioe) {
+							// The client went away or stalled, wait for the next one
+							ioe.printStackTrace();
+						} finally {
+							try {
+								socket.close();
+							} catch(IOException e) {
+								// ignore
+							}
+						}
+					}
+				});
+			}
+		} finally {
+			running = false;
+			tokenFile.delete();
+			server.close();
+			handlers.shutdown();
+			synchronized(executionLock) {
+				repository.dispose();
+			}
+		}
+	}
+
+	private void handle(Socket socket) throws IOException {
+		Properties request = new Properties();
+		InputStream in = new BufferedInputStream(socket.getInputStream());
+		request.load(in);
+
+		Properties response = new Properties();
+		if( !isTokenValid(request.getProperty(KEY_TOKEN))) {
+			response.setProperty(KEY_STATUS, STATUS_FAILED);
+			response.setProperty(KEY_MESSAGE, "Invalid token for the analysis daemon on port " + server.getLocalPort()); //$NON-NLS-1$
+		} else if( COMMAND_SHUTDOWN.equals(request.getProperty(KEY_COMMAND))) {
+			running = false;
+			server.close();
+			response.setProperty(KEY_STATUS, STATUS_OK);
+		} else {
+			synchronized(executionLock) {
+				if( running ) {
+					long time = System.currentTimeMillis();
+					runTask(request, response);
+					System.out.println(request.getProperty(KEY_TASK) + " done in " + (System.currentTimeMillis() - time) + "ms, " //$NON-NLS-1$ //$NON-NLS-2$
+							+ repository.getHits() + " baseline hits, " + repository.getMisses() + " misses"); //$NON-NLS-1$ //$NON-NLS-2$
+				} else {
+					response.setProperty(KEY_STATUS, STATUS_FAILED);
+					response.setProperty(KEY_MESSAGE, "The analysis daemon is shutting down"); //$NON-NLS-1$
+				}
+			}
+		}
+		OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+		response.store(out, null);
+		out.flush();
+	}
+
+	private boolean isTokenValid(String value) {
+		if( value == null )
+			return false;
+		try {
+			return MessageDigest.isEqual(token.getBytes("UTF-8"), value.getBytes("UTF-8")); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch(IOException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * Run the task of the request and store its status and output in the
+	 * response. Only called while holding the execution lock, since the
+	 * output is captured by replacing System.out and System.err.
+	 */
+	private void runTask(Properties request, Properties response) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		PrintStream capture = new PrintStream(buffer, true, "UTF-8"); //$NON-NLS-1$
+		PrintStream stdout = System.out;
+		PrintStream stderr = System.err;
+		System.setOut(capture);
+		System.setErr(capture);
+		try {
+			execute(request, capture);
+			response.setProperty(KEY_STATUS, STATUS_OK);
+		} catch(Throwable t) {
+			t.printStackTrace();
+			response.setProperty(KEY_STATUS, STATUS_FAILED);
+			response.setProperty(KEY_MESSAGE, String.valueOf(t.getMessage()));
+		} finally {
+			System.setOut(stdout);
+			System.setErr(stderr);
+			capture.close();
+		}
+		response.setProperty(KEY_OUTPUT, buffer.toString("UTF-8")); //$NON-NLS-1$
+	}
+
+	private void execute(Properties request, PrintStream output) throws Exception {
+		Class<?> taskClass = Class.forName(request.getProperty(KEY_TASK));
+		if( !AbstractComparisonTask.class.isAssignableFrom(taskClass))
+			throw new IllegalArgumentException("Not an analysis task: " + taskClass.getName()); //$NON-NLS-1$
+		AbstractComparisonTask task = (AbstractComparisonTask)taskClass.newInstance();
+		Project project = new Project();
+		project.init();
+		DefaultLogger logger = new DefaultLogger();
+		logger.setOutputPrintStream(output);
+		logger.setErrorPrintStream(output);
+		logger.setMessageOutputLevel(Project.MSG_INFO);
+		project.addBuildListener(logger);
+		task.setProject(project);
+		task.readDaemonRequest(request);
+		task.useBaselineRepository(repository);
+		try {
+			task.execute();
+		} finally {
+			repository.endRequest();
+		}
+	}
+
+	/**
+	 * Returns the file holding the token of the daemon listening on the given
+	 * port, <code>.apitools/daemon-&lt;port&gt;.token</code> in the user home.
+	 *
+	 * @param port the port of the daemon
+	 * @return the token file
+	 */
+	public static File getTokenFile(int port) {
+		File folder = new File(System.getProperty("user.home"), TOKEN_FOLDER); //$NON-NLS-1$
+		return new File(folder, "daemon-" + port + ".token"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/*
+	 * Create the token file readable and writable by its owner only (0600)
+	 * before writing the token to it
+	 */
+	private static void writeToken(File file, String token) throws IOException {
+		File folder = file.getParentFile();
+		if( !folder.exists() && !folder.mkdirs())
+			throw new IOException("Could not create " + folder); //$NON-NLS-1$
+		if( file.exists() && !file.delete())
+			throw new IOException("Could not replace " + file); //$NON-NLS-1$
+		if( !file.createNewFile())
+			throw new IOException("Could not create " + file); //$NON-NLS-1$
+		if( !file.setReadable(false, false) || !file.setWritable(false, false) || !file.setExecutable(false, false)
+				|| !file.setReadable(true, true) || !file.setWritable(true, true)) {
+			file.delete();
+			throw new IOException("Could not restrict the permissions of " + file); //$NON-NLS-1$
+		}
+		Writer w = null;
+		boolean written = false;
+		try {
+			w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8"); //$NON-NLS-1$
+			w.write(token);
+			w.close();
+			w = null;
+			written = true;
+		} finally {
+			if( w != null ) {
+				try {
+					w.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+			if( !written )
+				file.delete();
+		}
+	}
+
+	private static String readToken(int port) throws IOException {
+		File file = getTokenFile(port);
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8")); //$NON-NLS-1$
+			String value = reader.readLine();
+			if( value == null )
+				throw new IOException("Empty token file " + file); //$NON-NLS-1$
+			return value.trim();
+		} finally {
+			if( reader != null ) {
+				try {
+					reader.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Send a request to the daemon listening on the given port
+	 * and wait for its response. The token of the daemon is read
+	 * from its token file and added to the request.
+	 *
+	 * @param port the port of the daemon
+	 * @param request the request
+	 * @return the response
+	 * @throws IOException if no daemon answers on that port or its token cannot be read
+	 */
+	public static Properties submit(int port, Properties request) throws IOException {
+		request.setProperty(KEY_TOKEN, readToken(port));
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(InetAddress.getByName(null), port), CONNECT_TIMEOUT);
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			request.store(out, null);
+			out.flush();
+			socket.shutdownOutput();
+			Properties response = new Properties();
+			response.load(new BufferedInputStream(socket.getInputStream()));
+			if( response.getProperty(KEY_STATUS) == null )
+				throw new IOException("No response from the analysis daemon on port " + port); //$NON-NLS-1$
+			return response;
+		} finally {
+			try {
+				socket.close();
+			} catch(IOException e) {
+				// ignore
+			}
+		}
+	}
+}
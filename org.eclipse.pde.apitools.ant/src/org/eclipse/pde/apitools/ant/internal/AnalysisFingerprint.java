@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Properties;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.pde.api.tools.internal.IApiCoreConstants;
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
+import org.eclipse.pde.apitools.ant.util.BundleFingerprint;
+
+/**
+ * Describes everything an analysis of a single bundle depends on:
+ * the bytes of the bundle, its dependency closure, the bundle it is
+ * compared against, its problem filters, the problem preferences
+ * and the runner settings.
+ *
+ * A fingerprint is stored next to the analysis report of each bundle,
+ * so that a later run can tell whether that report is still valid.
+ */
+public class AnalysisFingerprint {
+	public static final String FILE_NAME = "analysisReport.fingerprint"; //$NON-NLS-1$
+
+	private static final String KEY_BUNDLE_SIZE = "bundle.size"; //$NON-NLS-1$
+	private static final String KEY_BUNDLE_MODIFIED = "bundle.lastModified"; //$NON-NLS-1$
+	private static final String KEY_BUNDLE_DIGEST = "bundle.digest"; //$NON-NLS-1$
+	private static final String KEY_DEPENDENCIES = "dependencies"; //$NON-NLS-1$
+	private static final String KEY_REFERENCE = "reference"; //$NON-NLS-1$
+	private static final String KEY_FILTERS = "filters"; //$NON-NLS-1$
+	private static final String KEY_PREFERENCES = "preferences"; //$NON-NLS-1$
+	private static final String KEY_SETTINGS = "settings"; //$NON-NLS-1$
+
+	private static final String[] COMPARED_KEYS = new String[] {
+		KEY_BUNDLE_DIGEST, KEY_DEPENDENCIES, KEY_REFERENCE,
+		KEY_FILTERS, KEY_PREFERENCES, KEY_SETTINGS
+	};
+
+	private Properties values;
+
+	private AnalysisFingerprint(Properties values) {
+		this.values = values;
+	}
+
+	/**
+	 * Compute the fingerprint of an analysis.
+	 *
+	 * The contents of the bundle are only hashed again when its size or
+	 * modification time differ from those of the previous fingerprint.
+	 * Dependencies are identified by name, version and a digest of their
+	 * contents, but not by their location, so that a baseline extracted
+	 * to a new place on every build still matches.
+	 *
+	 * @param refBase the reference baseline
+	 * @param component the component to analyze
+	 * @param filtersRoot the root of the filter files, or <code>null</code>
+	 * @param preferences the problem preferences, or <code>null</code>
+	 * @param settings any other setting that influences the report
+	 * @param previous the previous fingerprint, or <code>null</code>
+	 * @return the fingerprint, or <code>null</code> if it cannot be computed
+	 */
+	public static AnalysisFingerprint create(IApiBaseline refBase, IApiComponent component,
+			String filtersRoot, Properties preferences, String settings,
+			AnalysisFingerprint previous) {
+		if( component.getLocation() == null )
+			return null;
+		try {
+			Properties values = new Properties();
+			File bundle = new File(component.getLocation());
+			long[] stat = BundleFingerprint.stat(bundle);
+			String digest = null;
+			if( previous != null
+					&& Long.toString(stat[0]).equals(previous.values.getProperty(KEY_BUNDLE_SIZE))
+					&& Long.toString(stat[1]).equals(previous.values.getProperty(KEY_BUNDLE_MODIFIED))) {
+				digest = previous.values.getProperty(KEY_BUNDLE_DIGEST);
+			}
+			if( digest == null )
+				digest = BundleFingerprint.computeDigest(bundle);
+			values.setProperty(KEY_BUNDLE_SIZE, Long.toString(stat[0]));
+			values.setProperty(KEY_BUNDLE_MODIFIED, Long.toString(stat[1]));
+			values.setProperty(KEY_BUNDLE_DIGEST, digest);
+
+			values.setProperty(KEY_DEPENDENCIES, digestClosure(component));
+			IApiComponent refComponent = refBase.getApiComponent(component.getSymbolicName());
+			values.setProperty(KEY_REFERENCE, refComponent == null ? "" : digestClosure(refComponent)); //$NON-NLS-1$
+			values.setProperty(KEY_FILTERS, digestFilters(filtersRoot, component.getSymbolicName()));
+			values.setProperty(KEY_PREFERENCES, digestPreferences(preferences));
+			values.setProperty(KEY_SETTINGS, BundleFingerprint.computeDigest(settings == null ? "" : settings)); //$NON-NLS-1$
+			return new AnalysisFingerprint(values);
+		} catch(CoreException ce) {
+			return null;
+		} catch(IOException ioe) {
+			return null;
+		}
+	}
+
+	/*
+	 * Digest the component and all components it depends on
+	 */
+	private static String digestClosure(IApiComponent component) throws CoreException, IOException {
+		IApiBaseline baseline = component.getBaseline();
+		IApiComponent[] closure = baseline == null ? new IApiComponent[] { component }
+				: baseline.getPrerequisiteComponents(new IApiComponent[] { component });
+		ArrayList<String> described = new ArrayList<String>(closure.length + 1);
+		described.add(describe(component));
+		for( int i = 0; i < closure.length; i++ ) {
+			if( closure[i] != component )
+				described.add(describe(closure[i]));
+		}
+		Collections.sort(described.subList(1, described.size()));
+		StringBuffer sb = new StringBuffer();
+		Iterator<String> it = described.iterator();
+		while(it.hasNext()) {
+			sb.append(it.next()).append('\n');
+		}
+		return BundleFingerprint.computeDigest(sb.toString());
+	}
+
+	private static String describe(IApiComponent component) throws IOException {
+		StringBuffer sb = new StringBuffer();
+		sb.append(component.getSymbolicName()).append('_').append(component.getVersion());
+		String location = component.getLocation();
+		if( location != null ) {
+			sb.append('#').append(BundleFingerprint.getContentDigest(new File(location)));
+		}
+		return sb.toString();
+	}
+
+	private static String digestFilters(String filtersRoot, String componentId) throws IOException {
+		if( filtersRoot == null )
+			return ""; //$NON-NLS-1$
+		File filterFile = new File(new File(filtersRoot, componentId), IApiCoreConstants.API_FILTERS_XML_NAME);
+		if( !filterFile.isFile())
+			return ""; //$NON-NLS-1$
+		return BundleFingerprint.computeDigest(filterFile);
+	}
+
+	private static String digestPreferences(Properties preferences) {
+		if( preferences == null )
+			return ""; //$NON-NLS-1$
+		Object[] keys = preferences.keySet().toArray();
+		Arrays.sort(keys, new Comparator<Object>() {
+			public int compare(Object o1, Object o2) {
+				return String.valueOf(o1).compareTo(String.valueOf(o2));
+			}
+		});
+		StringBuffer sb = new StringBuffer();
+		for( int i = 0; i < keys.length; i++ ) {
+			sb.append(keys[i]).append('=').append(preferences.get(keys[i])).append('\n');
+		}
+		return BundleFingerprint.computeDigest(sb.toString());
+	}
+
+	/**
+	 * Returns whether a report produced under the other fingerprint
+	 * is still valid for this one.
+	 *
+	 * @param other a previous fingerprint, or <code>null</code>
+	 * @return true if all analysis inputs are unchanged
+	 */
+	public boolean isUnchanged(AnalysisFingerprint other) {
+		if( other == null )
+			return false;
+		for( int i = 0; i < COMPARED_KEYS.length; i++ ) {
+			String mine = values.getProperty(COMPARED_KEYS[i]);
+			if( mine == null || !mine.equals(other.values.getProperty(COMPARED_KEYS[i])))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Load a fingerprint stored by {@link #save(File)}
+	 *
+	 * @param file the fingerprint file
+	 * @return the fingerprint, or <code>null</code> if there is none or it cannot be read
+	 */
+	public static AnalysisFingerprint load(File file) {
+		if( !file.isFile())
+			return null;
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(file));
+			Properties values = new Properties();
+			values.load(in);
+			return new AnalysisFingerprint(values);
+		} catch(IOException ioe) {
+			return null;
+		} finally {
+			if( in != null ) {
+				try {
+					in.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	public void save(File file) throws IOException {
+		OutputStream out = null;
+		boolean written = false;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(file));
+			values.store(out, null);
+			out.close();
+			out = null;
+			written = true;
+		} finally {
+			if( out != null ) {
+				try {
+					out.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+			// A truncated fingerprint must not be mistaken for the last analysis
+			if( !written )
+				file.delete();
+		}
+	}
+}
@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.internal;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import org.eclipse.pde.apitools.ant.util.IMemento;
+import org.eclipse.pde.apitools.ant.util.XMLMemento;
+
+/**
+ * The cost of analyzing each bundle of a run: wall time, CPU time,
+ * allocated bytes and number of problems.
+ *
+ * A profile is written as <code>analysisProfile.xml</code> and
+ * <code>analysisProfile.csv</code> next to the reports, slowest bundle
+ * first. When compared with the profile of a previous run, every bundle
+ * whose wall time grew by more than a threshold is flagged.
+ *
+ * CPU time and allocated bytes are -1 when the running VM cannot
+ * measure them.
+ */
+public class AnalysisProfile {
+	public static final String XML_FILE_NAME = "analysisProfile.xml"; //$NON-NLS-1$
+	public static final String CSV_FILE_NAME = "analysisProfile.csv"; //$NON-NLS-1$
+
+	private static final String ELEMENT_PROFILE = "analysisProfile"; //$NON-NLS-1$
+	private static final String ELEMENT_BUNDLE = "bundle"; //$NON-NLS-1$
+	private static final String ATTR_ID = "id"; //$NON-NLS-1$
+	private static final String ATTR_WALL_TIME = "wallTimeMs"; //$NON-NLS-1$
+	private static final String ATTR_CPU_TIME = "cpuTimeMs"; //$NON-NLS-1$
+	private static final String ATTR_ALLOCATED = "allocatedBytes"; //$NON-NLS-1$
+	private static final String ATTR_PROBLEMS = "problems"; //$NON-NLS-1$
+	private static final String ATTR_PREVIOUS_WALL_TIME = "previousWallTimeMs"; //$NON-NLS-1$
+	private static final String ATTR_GROWTH = "growthPercent"; //$NON-NLS-1$
+	private static final String ATTR_REGRESSED = "regressed"; //$NON-NLS-1$
+	private static final String ATTR_THRESHOLD = "thresholdPercent"; //$NON-NLS-1$
+
+	private static final String HOTSPOT_THREAD_BEAN = "com.sun.management.ThreadMXBean"; //$NON-NLS-1$
+	private static final String ALLOCATED_BYTES_METHOD = "getThreadAllocatedBytes"; //$NON-NLS-1$
+
+	/*
+	 * The HotSpot extension of ThreadMXBean is not part of the Java API,
+	 * so it is only looked up reflectively, once
+	 */
+	private static final Method allocatedBytes = findAllocatedBytesMethod();
+	private static boolean allocationSupported = allocatedBytes != null;
+
+	/**
+	 * The cost of analyzing one bundle
+	 */
+	public static class Entry {
+		private String id;
+		private long wallTime;
+		private long cpuTime;
+		private long allocated;
+		private int problems;
+		private long previousWallTime = -1;
+		private boolean regressed;
+
+		private Entry(String id, long wallTime, long cpuTime, long allocated, int problems) {
+			this.id = id;
+			this.wallTime = wallTime;
+			this.cpuTime = cpuTime;
+			this.allocated = allocated;
+			this.problems = problems;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public long getWallTime() {
+			return wallTime;
+		}
+
+		public long getCpuTime() {
+			return cpuTime;
+		}
+
+		public long getAllocatedBytes() {
+			return allocated;
+		}
+
+		public int getProblems() {
+			return problems;
+		}
+
+		public long getPreviousWallTime() {
+			return previousWallTime;
+		}
+
+		/**
+		 * @return the growth of the wall time in percent, or -1 if there is no previous time
+		 */
+		public long getGrowth() {
+			if( previousWallTime <= 0 )
+				return -1;
+			return (wallTime - previousWallTime) * 100 / previousWallTime;
+		}
+
+		public boolean isRegressed() {
+			return regressed;
+		}
+	}
+
+	/**
+	 * Measures the analysis of one bundle. A probe must be
+	 * stopped on the thread that started it.
+	 */
+	public class Probe {
+		private String id;
+		private long wallStart;
+		private long cpuStart;
+		private long allocatedStart;
+
+		private Probe(String id) {
+			this.id = id;
+			this.allocatedStart = getAllocatedBytes();
+			this.cpuStart = getCpuTime();
+			this.wallStart = System.nanoTime();
+		}
+
+		/**
+		 * Record the cost of the analysis since this probe was started
+		 *
+		 * @param problems the number of problems found
+		 */
+		public void stop(int problems) {
+			long wall = (System.nanoTime() - wallStart) / 1000000;
+			long cpu = getCpuTime();
+			long allocated = getAllocatedBytes();
+			add(new Entry(id, wall,
+					cpu == -1 || cpuStart == -1 ? -1 : (cpu - cpuStart) / 1000000,
+					allocated == -1 || allocatedStart == -1 ? -1 : allocated - allocatedStart,
+					problems));
+		}
+	}
+
+	private ArrayList<Entry> entries = new ArrayList<Entry>();
+	private int threshold = -1;
+
+	/**
+	 * Start measuring the analysis of a bundle on the current thread
+	 *
+	 * @param id the id of the bundle
+	 * @return a probe to stop once the bundle is analyzed
+	 */
+	public Probe start(String id) {
+		return new Probe(id);
+	}
+
+	private synchronized void add(Entry entry) {
+		entries.add(entry);
+	}
+
+	/**
+	 * @return the entries, slowest bundle first
+	 */
+	public synchronized Entry[] getEntries() {
+		ArrayList<Entry> sorted = new ArrayList<Entry>(entries);
+		Collections.sort(sorted, new Comparator<Entry>() {
+			public int compare(Entry o1, Entry o2) {
+				if( o1.wallTime != o2.wallTime )
+					return o1.wallTime > o2.wallTime ? -1 : 1;
+				return o1.id.compareTo(o2.id);
+			}
+		});
+		return sorted.toArray(new Entry[sorted.size()]);
+	}
+
+	/**
+	 * Compare this profile with the profile of a previous run, and flag
+	 * every bundle whose wall time grew by more than the given threshold.
+	 * Bundles missing from the previous profile are never flagged.
+	 *
+	 * @param previous the previous profile
+	 * @param threshold the allowed growth in percent
+	 * @return the flagged bundles, slowest first
+	 */
+	public synchronized Entry[] compare(AnalysisProfile previous, int threshold) {
+		this.threshold = threshold;
+		HashMap<String, Entry> before = new HashMap<String, Entry>();
+		for( int i = 0; i < previous.entries.size(); i++ ) {
+			Entry entry = previous.entries.get(i);
+			before.put(entry.id, entry);
+		}
+		ArrayList<Entry> regressed = new ArrayList<Entry>();
+		Entry[] sorted = getEntries();
+		for( int i = 0; i < sorted.length; i++ ) {
+			Entry old = before.get(sorted[i].id);
+			if( old == null )
+				continue;
+			sorted[i].previousWallTime = old.wallTime;
+			sorted[i].regressed = sorted[i].getGrowth() > threshold;
+			if( sorted[i].regressed )
+				regressed.add(sorted[i]);
+		}
+		return regressed.toArray(new Entry[regressed.size()]);
+	}
+
+	/**
+	 * Load a profile written by {@link #save(File)}
+	 *
+	 * @param file the <code>analysisProfile.xml</code> file
+	 * @return the profile, or <code>null</code> if there is none or it cannot be read
+	 */
+	public static AnalysisProfile load(File file) {
+		if( !file.isFile())
+			return null;
+		IMemento root = null;
+		try {
+			root = XMLMemento.loadMemento(file.getAbsolutePath());
+		} catch(IOException ioe) {
+			return null;
+		}
+		if( root == null )
+			return null;
+		AnalysisProfile profile = new AnalysisProfile();
+		IMemento[] bundles = root.getChildren(ELEMENT_BUNDLE);
+		for( int i = 0; i < bundles.length; i++ ) {
+			String id = bundles[i].getString(ATTR_ID);
+			if( id == null )
+				continue;
+			profile.entries.add(new Entry(id, getLong(bundles[i], ATTR_WALL_TIME),
+					getLong(bundles[i], ATTR_CPU_TIME), getLong(bundles[i], ATTR_ALLOCATED),
+					(int)getLong(bundles[i], ATTR_PROBLEMS)));
+		}
+		return profile;
+	}
+
+	private static long getLong(IMemento memento, String key) {
+		String value = memento.getString(key);
+		if( value == null )
+			return -1;
+		try {
+			return Long.parseLong(value);
+		} catch(NumberFormatException nfe) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Write the profile as <code>analysisProfile.xml</code> and
+	 * <code>analysisProfile.csv</code> in the given folder
+	 *
+	 * @param folder the reports folder
+	 * @throws IOException if a file cannot be written
+	 */
+	public void save(File folder) throws IOException {
+		if( !folder.exists())
+			folder.mkdirs();
+		Entry[] sorted = getEntries();
+		saveXml(sorted, new File(folder, XML_FILE_NAME));
+		saveCsv(sorted, new File(folder, CSV_FILE_NAME));
+	}
+
+	private void saveXml(Entry[] sorted, File file) throws IOException {
+		XMLMemento root = XMLMemento.createWriteRoot(ELEMENT_PROFILE);
+		if( threshold != -1 )
+			root.putInteger(ATTR_THRESHOLD, threshold);
+		for( int i = 0; i < sorted.length; i++ ) {
+			Entry entry = sorted[i];
+			IMemento child = root.createChild(ELEMENT_BUNDLE);
+			child.putString(ATTR_ID, entry.id);
+			child.putString(ATTR_WALL_TIME, Long.toString(entry.wallTime));
+			child.putString(ATTR_CPU_TIME, Long.toString(entry.cpuTime));
+			child.putString(ATTR_ALLOCATED, Long.toString(entry.allocated));
+			child.putInteger(ATTR_PROBLEMS, entry.problems);
+			if( entry.previousWallTime != -1 ) {
+				child.putString(ATTR_PREVIOUS_WALL_TIME, Long.toString(entry.previousWallTime));
+				child.putString(ATTR_GROWTH, Long.toString(entry.getGrowth()));
+				child.putBoolean(ATTR_REGRESSED, entry.regressed);
+			}
+		}
+		root.saveToFile(file.getAbsolutePath());
+	}
+
+	private void saveCsv(Entry[] sorted, File file) throws IOException {
+		Writer w = null;
+		try {
+			w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")); //$NON-NLS-1$
+			w.write(ATTR_ID + ',' + ATTR_WALL_TIME + ',' + ATTR_CPU_TIME + ',' + ATTR_ALLOCATED + ','
+					+ ATTR_PROBLEMS + ',' + ATTR_PREVIOUS_WALL_TIME + ',' + ATTR_GROWTH + ',' + ATTR_REGRESSED + '\n');
+			for( int i = 0; i < sorted.length; i++ ) {
+				Entry entry = sorted[i];
+				boolean compared = entry.previousWallTime != -1;
+				w.write(entry.id + ',' + entry.wallTime + ',' + entry.cpuTime + ','
+						+ entry.allocated + ',' + entry.problems + ','
+						+ (compared ? Long.toString(entry.previousWallTime) : "") + ',' //$NON-NLS-1$
+						+ (compared ? Long.toString(entry.getGrowth()) : "") + ',' //$NON-NLS-1$
+						+ (compared ? Boolean.toString(entry.regressed) : "") + '\n'); //$NON-NLS-1$
+			}
+		} finally {
+			if( w != null ) {
+				try {
+					w.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/*
+	 * CPU time of the current thread in nanoseconds, or -1
+	 */
+	private static long getCpuTime() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if( !bean.isCurrentThreadCpuTimeSupported())
+			return -1;
+		try {
+			return bean.getCurrentThreadCpuTime();
+		} catch(UnsupportedOperationException uoe) {
+			return -1;
+		}
+	}
+
+	/*
+	 * Find getThreadAllocatedBytes(long) on the HotSpot interface
+	 * the thread bean implements, or null on other VMs
+	 */
+	private static Method findAllocatedBytesMethod() {
+		Class<?> c = ManagementFactory.getThreadMXBean().getClass();
+		while( c != null ) {
+			Class<?>[] interfaces = c.getInterfaces();
+			for( int i = 0; i < interfaces.length; i++ ) {
+				if( HOTSPOT_THREAD_BEAN.equals(interfaces[i].getName())) {
+					try {
+						return interfaces[i].getMethod(ALLOCATED_BYTES_METHOD, new Class[] { long.class });
+					} catch(NoSuchMethodException nsme) {
+						return null;
+					}
+				}
+			}
+			c = c.getSuperclass();
+		}
+		return null;
+	}
+
+	/*
+	 * Bytes allocated so far by the current thread, or -1. Only
+	 * HotSpot based VMs can tell; once a call fails, no other is made.
+	 */
+	private static long getAllocatedBytes() {
+		if( !allocationSupported )
+			return -1;
+		try {
+			Object allocated = allocatedBytes.invoke(ManagementFactory.getThreadMXBean(),
+					new Object[] { new Long(Thread.currentThread().getId()) });
+			if( allocated instanceof Long && ((Long)allocated).longValue() != -1 )
+				return ((Long)allocated).longValue();
+		} catch(Exception e) {
+			// not accessible, or not supported by this VM
+		}
+		allocationSupported = false;
+		return -1;
+	}
+}
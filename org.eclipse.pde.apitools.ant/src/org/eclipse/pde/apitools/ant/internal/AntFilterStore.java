@@ -16,32 +16,31 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.Path;
-import org.eclipse.pde.api.tools.internal.IApiCoreConstants;
 import org.eclipse.pde.api.tools.internal.IApiXmlConstants;
 import org.eclipse.pde.api.tools.internal.problems.ApiProblemFactory;
-import org.eclipse.pde.api.tools.internal.problems.ApiProblemFilter;
 import org.eclipse.pde.api.tools.internal.provisional.ApiPlugin;
 import org.eclipse.pde.api.tools.internal.provisional.IApiFilterStore;
 import org.eclipse.pde.api.tools.internal.provisional.problems.IApiProblem;
 import org.eclipse.pde.api.tools.internal.provisional.problems.IApiProblemFilter;
-import org.eclipse.pde.api.tools.internal.util.Util;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 public class AntFilterStore implements IApiFilterStore {
 	private static final String GLOBAL = "!global!"; //$NON-NLS-1$
-	private static int loadIntegerAttribute(Element element, String name) {
-		String value = element.getAttribute(name);
-		if(value.length() == 0) {
+	private static int parseInteger(String value) {
+		if(value == null || value.length() == 0) {
 			return -1;
 		}
 		try {
@@ -53,10 +52,28 @@ public class AntFilterStore implements IApiFilterStore {
 	}
 	private boolean debug;
 
-	private Map fFilterMap;
+	/*
+	 * Compiled filters per type name
+	 */
+	private Map<String, CompiledFilters> fFilterMap;
 
+	/*
+	 * A store is used by a single analyzer, so these are not synchronized
+	 */
+	private int checks = 0;
+	private int hits = 0;
+
+	/**
+	 * Create a read-only view on the filters of the given component. 
+	 * The filter file is parsed once and shared through the {@link FilterRepository}.
+	 */
 	public AntFilterStore(boolean debug, String filtersRoot, String componentID) {
-		this.initialize(filtersRoot, componentID);
+		this(debug, FilterRepository.getDefault().getFilters(filtersRoot, componentID));
+	}
+
+	AntFilterStore(boolean debug, Map<String, CompiledFilters> compiledFilters) {
+		this.debug = debug;
+		this.fFilterMap = compiledFilters;
 	}
 
 	public void addFiltersFor(IApiProblem[] problems) {
@@ -67,7 +84,7 @@ public class AntFilterStore implements IApiFilterStore {
 		// do nothing
 	}
 
-	private boolean argumentsEquals(String[] problemMessageArguments,
+	private static boolean argumentsEquals(String[] problemMessageArguments,
 			String[] filterProblemMessageArguments) {
 		// filter problems message arguments are always simple name
 		// problem message arguments are fully qualified name outside the IDE
@@ -118,28 +135,31 @@ public class AntFilterStore implements IApiFilterStore {
 	}
 
 	/**
-	 * Initialize the filter store using the given component id
+	 * Read and compile the filters of a filter file. The file is streamed 
+	 * rather than loaded into a document, and only what is needed to 
+	 * match problems is kept.
+	 * 
+	 * @param filterFile a .api_filters file
+	 * @return the compiled filters per type name, never <code>null</code>
 	 */
-	private void initialize(String filtersRoot, String componentID) {
-		if(fFilterMap != null) {
-			return;
+	static Map<String, CompiledFilters> load(File filterFile) {
+		if (!filterFile.isFile()) {
+			return Collections.emptyMap();
 		}
-		if(this.debug) {
-			System.out.println("null filter map, creating a new one"); //$NON-NLS-1$
-		}
-		fFilterMap = new HashMap(5);
-		String xml = null;
+		FilterFileHandler handler = new FilterFileHandler();
 		InputStream contents = null;
 		try {
-			File filterFileParent = new File(filtersRoot, componentID);
-			if (!filterFileParent.exists()) {
-				return;
-			}
-			contents = new BufferedInputStream(new FileInputStream(new File(filterFileParent, IApiCoreConstants.API_FILTERS_XML_NAME)));
-			xml = new String(Util.getInputStreamAsCharArray(contents, -1, IApiCoreConstants.UTF_8));
-		}
-		catch(IOException ioe) {}
-		finally {
+			contents = new BufferedInputStream(new FileInputStream(filterFile));
+			SAXParserFactory.newInstance().newSAXParser().parse(contents, handler);
+		} catch(IOException ioe) {
+			return Collections.emptyMap();
+		} catch(SAXException se) {
+			ApiPlugin.log(se);
+			return Collections.emptyMap();
+		} catch(ParserConfigurationException pce) {
+			ApiPlugin.log(pce);
+			return Collections.emptyMap();
+		} finally {
 			if (contents != null) {
 				try {
 					contents.close();
@@ -148,129 +168,224 @@ public class AntFilterStore implements IApiFilterStore {
 				}
 			}
 		}
-		if(xml == null) {
-			return;
-		}
-		Element root = null;
-		try {
-			root = Util.parseDocument(xml);
-		}
-		catch(CoreException ce) {
-			ApiPlugin.log(ce);
-		}
-		if (root == null) {
-			return;
-		}
-		if (!root.getNodeName().equals(IApiXmlConstants.ELEMENT_COMPONENT)) {
-			return;
-		}
-		String component = root.getAttribute(IApiXmlConstants.ATTR_ID);
-		if(component.length() == 0) {
-			return;
-		}
-		String versionValue = root.getAttribute(IApiXmlConstants.ATTR_VERSION);
-		int version = 0;
-		if(versionValue.length() != 0) {
-			try {
-				version = Integer.parseInt(versionValue);
-			} catch (NumberFormatException e) {
-				// ignore
-			}
-		}
-		if (version < 2) {
+		if (!handler.valid) {
 			// we discard all filters since there is no way to retrieve the type name
-			return;
+			return Collections.emptyMap();
 		}
-		NodeList resources = root.getElementsByTagName(IApiXmlConstants.ELEMENT_RESOURCE);
-		ArrayList newfilters = new ArrayList();
-		ArrayList comments = new ArrayList();
-		for(int i = 0; i < resources.getLength(); i++) {
-			Element element = (Element) resources.item(i);
-			String typeName = element.getAttribute(IApiXmlConstants.ATTR_TYPE);
-			if (typeName.length() == 0) {
-				// if there is no type attribute, an empty string is returned
-				typeName = null;
+		return compile(handler.filters);
+	}
+
+	/*
+	 * Collects the filters of a filter file of version 2 or higher
+	 */
+	private static class FilterFileHandler extends DefaultHandler {
+		private ArrayList<IApiProblem> filters = new ArrayList<IApiProblem>();
+		private boolean valid = false;
+		private int depth = 0;
+		private String typeName;
+		private String path;
+		private int id;
+		private boolean inFilter = false;
+		private boolean inMessageArguments = false;
+		private int messageArgumentsCount;
+		private ArrayList<String> messageArguments = new ArrayList<String>();
+
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			depth++;
+			if (depth == 1) {
+				valid = qName.equals(IApiXmlConstants.ELEMENT_COMPONENT)
+					&& !isEmpty(attributes.getValue(IApiXmlConstants.ATTR_ID))
+					&& Math.max(parseInteger(attributes.getValue(IApiXmlConstants.ATTR_VERSION)), 0) >= 2;
+				return;
 			}
-			String path = element.getAttribute(IApiXmlConstants.ATTR_PATH);
-			NodeList filters = element.getElementsByTagName(IApiXmlConstants.ELEMENT_FILTER);
-			for(int j = 0; j < filters.getLength(); j++) {
-				element = (Element) filters.item(j);
-				int id = loadIntegerAttribute(element, IApiXmlConstants.ATTR_ID);
-				if(id <= 0) {
-					continue;
+			if (!valid) {
+				return;
+			}
+			if (qName.equals(IApiXmlConstants.ELEMENT_RESOURCE)) {
+				typeName = attributes.getValue(IApiXmlConstants.ATTR_TYPE);
+				if (isEmpty(typeName)) {
+					// if there is no type attribute, an empty string is returned
+					typeName = null;
 				}
-				String[] messageargs = null;
-				NodeList elements = element.getElementsByTagName(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENTS);
-				if (elements.getLength() != 1) continue;
-				Element messageArguments = (Element) elements.item(0);
-				NodeList arguments = messageArguments.getElementsByTagName(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENT);
-				int length = arguments.getLength();
-				messageargs = new String[length];
-				String comment = element.getAttribute(IApiXmlConstants.ATTR_COMMENT);
-				comments.add((comment.length() < 1 ? null : comment));
-				for (int k = 0; k < length; k++) {
-					Element messageArgument = (Element) arguments.item(k);
-					messageargs[k] = messageArgument.getAttribute(IApiXmlConstants.ATTR_VALUE);
+				path = attributes.getValue(IApiXmlConstants.ATTR_PATH);
+				if (path == null) {
+					path = ""; //$NON-NLS-1$
 				}
-				newfilters.add(ApiProblemFactory.newApiProblem(path, typeName, messageargs, null, null, -1, -1, -1, id));
+			} else if (qName.equals(IApiXmlConstants.ELEMENT_FILTER)) {
+				inFilter = true;
+				id = parseInteger(attributes.getValue(IApiXmlConstants.ATTR_ID));
+				messageArgumentsCount = 0;
+				messageArguments.clear();
+			} else if (inFilter && qName.equals(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENTS)) {
+				messageArgumentsCount++;
+				inMessageArguments = true;
+			} else if (inMessageArguments && qName.equals(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENT)) {
+				String value = attributes.getValue(IApiXmlConstants.ATTR_VALUE);
+				messageArguments.add(value == null ? "" : value); //$NON-NLS-1$
 			}
 		}
-		internalAddFilters(componentID, (IApiProblem[]) newfilters.toArray(new IApiProblem[newfilters.size()]),
-				(String[]) comments.toArray(new String[comments.size()]));
-		newfilters.clear();
-	}
 
-	/**
-	 * Internal use method that allows auto-persisting of the filter file to be turned on or off
-	 * @param problems the problems to add the the store
-	 * @param persist if the filters should be auto-persisted after they are added
-	 */
-	private void internalAddFilters(String componentID, IApiProblem[] problems, String[] comments) {
-		if(problems == null) {
-			if(this.debug) {
-				System.out.println("null problems array not addding filters"); //$NON-NLS-1$
+		public void endElement(String uri, String localName, String qName) {
+			depth--;
+			if (!valid) {
+				return;
 			}
-			return;
+			if (qName.equals(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENTS)) {
+				inMessageArguments = false;
+			} else if (inFilter && qName.equals(IApiXmlConstants.ELEMENT_FILTER)) {
+				inFilter = false;
+				if (id > 0 && messageArgumentsCount == 1) {
+					String[] messageargs = (String[]) messageArguments.toArray(new String[messageArguments.size()]);
+					filters.add(ApiProblemFactory.newApiProblem(path, typeName, messageargs, null, null, -1, -1, -1, id));
+				}
+			}
+		}
+
+		private static boolean isEmpty(String value) {
+			return value == null || value.length() == 0;
 		}
-		for(int i = 0; i < problems.length; i++) {
-			IApiProblem problem = problems[i];
-			IApiProblemFilter filter = new ApiProblemFilter(componentID, problem, comments[i]);
+	}
+
+	/*
+	 * Group the filters by type name and index each group
+	 */
+	private static Map<String, CompiledFilters> compile(List<IApiProblem> problems) {
+		HashMap<String, ArrayList<IApiProblem>> byType = new HashMap<String, ArrayList<IApiProblem>>();
+		for(int i = 0; i < problems.size(); i++) {
+			IApiProblem problem = problems.get(i);
 			String typeName = problem.getTypeName();
 			if (typeName == null) {
 				typeName = GLOBAL;
 			}
-			Set filters = (Set) fFilterMap.get(typeName);
+			ArrayList<IApiProblem> filters = byType.get(typeName);
 			if(filters == null) {
-				filters = new HashSet();
-				fFilterMap.put(typeName, filters);
+				filters = new ArrayList<IApiProblem>();
+				byType.put(typeName, filters);
 			}
-			filters.add(filter);
+			filters.add(problem);
 		}
+		HashMap<String, CompiledFilters> compiled = new HashMap<String, CompiledFilters>(byType.size() * 2);
+		Iterator<String> it = byType.keySet().iterator();
+		while(it.hasNext()) {
+			String typeName = it.next();
+			ArrayList<IApiProblem> filters = byType.get(typeName);
+			compiled.put(typeName, new CompiledFilters(
+					(IApiProblem[]) filters.toArray(new IApiProblem[filters.size()])));
+		}
+		return Collections.unmodifiableMap(compiled);
 	}
 
 	public boolean isFiltered(IApiProblem problem) {
+		checks++;
 		if (this.fFilterMap == null || this.fFilterMap.isEmpty()) return false;
 		String typeName = problem.getTypeName();
 		if (typeName == null || typeName.length() == 0) {
 			typeName = GLOBAL;
 		}
-		Set filters = (Set) this.fFilterMap.get(typeName);
+		CompiledFilters filters = this.fFilterMap.get(typeName);
 		if (filters == null) {
 			return false;
 		}
-		for (Iterator iterator = filters.iterator(); iterator.hasNext();) {
-			IApiProblemFilter filter = (IApiProblemFilter) iterator.next();
-			if (problem.getCategory() == IApiProblem.CATEGORY_USAGE) {
-				// write our own matching implementation
-				return matchUsageProblem(filter.getUnderlyingProblem(), problem);
-			} else if (matchFilters(filter.getUnderlyingProblem(), problem)) {
-				return true;
-			}
+		if (filters.matches(problem)) {
+			hits++;
+			return true;
 		}
 		return false;
 	}
 
-	private boolean matchFilters(IApiProblem filterProblem, IApiProblem problem) {
+	/**
+	 * @return the number of problems checked against the filters of this store
+	 */
+	public int getFilterChecks() {
+		return checks;
+	}
+
+	/**
+	 * @return the number of problems filtered out by this store
+	 */
+	public int getFilterHits() {
+		return hits;
+	}
+
+	/*
+	 * Hash a problem id and its message arguments. Arguments are hashed
+	 * by their simple name only, since a simple name in a filter matches
+	 * a fully qualified name in a problem and the other way around. 
+	 */
+	private static int hash(int id, String[] arguments) {
+		int h = id;
+		if (arguments == null) {
+			return h;
+		}
+		h = 31 * h + arguments.length;
+		for (int i = 0; i < arguments.length; i++) {
+			String argument = arguments[i];
+			int argumentHash = 0;
+			if (argument != null) {
+				for (int j = argument.lastIndexOf('.') + 1; j < argument.length(); j++) {
+					argumentHash = 31 * argumentHash + argument.charAt(j);
+				}
+			}
+			h = 31 * h + argumentHash;
+		}
+		return h;
+	}
+
+	/*
+	 * The filters of one type name, in a chained hash table keyed 
+	 * by problem id and message arguments. Candidates found by a probe 
+	 * are confirmed with the exact matching rules, so a probe only
+	 * allocates when two resource paths need to be compared as paths.
+	 */
+	static class CompiledFilters {
+		private IApiProblem[] filters;
+		private int[] hashes;
+		private String[] paths;
+		private int[] heads;
+		private int[] next;
+		private int mask;
+
+		CompiledFilters(IApiProblem[] filters) {
+			this.filters = filters;
+			int size = Integer.highestOneBit(Math.max(filters.length, 1) * 2 - 1) << 1;
+			this.mask = size - 1;
+			this.heads = new int[size];
+			this.next = new int[filters.length];
+			this.hashes = new int[filters.length];
+			this.paths = new String[filters.length];
+			for (int i = 0; i < filters.length; i++) {
+				IApiProblem filter = filters[i];
+				hashes[i] = hash(filter.getId(), filter.getMessageArguments());
+				if (filter.getResourcePath() != null) {
+					paths[i] = new Path(filter.getResourcePath()).removeTrailingSeparator().toString();
+				}
+				int bucket = hashes[i] & mask;
+				next[i] = heads[bucket];
+				heads[bucket] = i + 1;
+			}
+		}
+
+		boolean matches(IApiProblem problem) {
+			boolean usage = problem.getCategory() == IApiProblem.CATEGORY_USAGE;
+			int h = hash(problem.getId(), problem.getMessageArguments());
+			for (int i = heads[h & mask]; i != 0; i = next[i - 1]) {
+				int index = i - 1;
+				if (hashes[index] != h) {
+					continue;
+				}
+				if (usage) {
+					if (matchUsageProblem(filters[index], paths[index], problem)) {
+						return true;
+					}
+				} else if (matchFilters(filters[index], problem)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static boolean matchFilters(IApiProblem filterProblem, IApiProblem problem) {
 		if (problem.getId() == filterProblem.getId() && argumentsEquals(problem.getMessageArguments(), filterProblem.getMessageArguments())) {
 			String typeName = problem.getTypeName();
 			String filteredProblemTypeName = filterProblem.getTypeName();
@@ -287,18 +402,19 @@ public class AntFilterStore implements IApiFilterStore {
 		return false;
 	}
 
-	private boolean matchUsageProblem(IApiProblem filterProblem, IApiProblem problem) {
+	private static boolean matchUsageProblem(IApiProblem filterProblem, String normalizedFilterPath, IApiProblem problem) {
 		if (problem.getId() == filterProblem.getId()) {
 			// check arguments
 			String problemPath = problem.getResourcePath();
-			String filterProblemPath = filterProblem.getResourcePath();
 			if (problemPath == null) {
-				if (filterProblemPath != null) {
+				if (normalizedFilterPath != null) {
 					return false;
 				}
-			} else if (filterProblemPath == null) {
+			} else if (normalizedFilterPath == null) {
 				return false;
-			} else if (!new Path(problemPath).equals(new Path(filterProblemPath))) {
+			} else if (!problemPath.equals(normalizedFilterPath) 
+					&& !problemPath.equals(filterProblem.getResourcePath())
+					&& !new Path(problemPath).removeTrailingSeparator().toString().equals(normalizedFilterPath)) {
 				return false;
 			}
 			String problemTypeName = problem.getTypeName();
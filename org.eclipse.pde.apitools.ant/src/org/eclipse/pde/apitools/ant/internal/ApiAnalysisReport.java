@@ -10,15 +10,20 @@
  *******************************************************************************/
 package org.eclipse.pde.apitools.ant.internal;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Properties;
 
-
 import org.eclipse.pde.api.tools.internal.IApiXmlConstants;
+import org.eclipse.pde.api.tools.internal.problems.ApiProblemFactory;
 import org.eclipse.pde.api.tools.internal.provisional.problems.IApiProblem;
 import org.eclipse.pde.apitools.ant.util.ApiToolsUtils;
 import org.eclipse.pde.apitools.ant.util.IMemento;
+import org.eclipse.pde.apitools.ant.util.IMementoWriter;
 import org.eclipse.pde.apitools.ant.util.IStyleSheetProvider;
 import org.eclipse.pde.apitools.ant.util.XMLMemento;
 import org.w3c.dom.Element;
@@ -34,6 +39,7 @@ public class ApiAnalysisReport extends RootReport implements IStyleSheetProvider
 		IApiProblem.CATEGORY_API_USE_SCAN_PROBLEM,
 		IApiProblem.CATEGORY_FATAL_PROBLEM,
 	};
+	private static final IApiProblem[] NO_PROBLEMS = new IApiProblem[0];
 	private static final HashMap<Integer, String> categoryToName = new HashMap<Integer, String>();
 	static {
 		categoryToName.put(CATEGORIES[0], "bundleVersion");
@@ -50,6 +56,15 @@ public class ApiAnalysisReport extends RootReport implements IStyleSheetProvider
 	protected IApiProblem[] problems;
 	protected Properties preferences;
 	protected String styleSheetLoc;
+	protected AnalysisFingerprint fingerprint;
+	
+	/*
+	 * The problems bucketed by category once, and each 
+	 * bucket sorted the first time it is written
+	 */
+	private HashMap<Integer, IApiProblem[]> problemsByCategory;
+	private HashMap<Integer, IApiProblem[]> sortedByCategory;
+	
 	public ApiAnalysisReport(String componentId, IApiProblem[] problems, Properties problemPreferences) {
 		this(componentId, problems, problemPreferences, null);
 	}
@@ -59,6 +74,30 @@ public class ApiAnalysisReport extends RootReport implements IStyleSheetProvider
 		this.problems = problems;
 		this.preferences = problemPreferences;
 		this.styleSheetLoc = (styleSheetLoc == null ? "analysis.xsl" : styleSheetLoc);
+		indexProblems();
+	}
+	
+	private void indexProblems() {
+		HashMap<Integer, ArrayList<IApiProblem>> buckets = new HashMap<Integer, ArrayList<IApiProblem>>();
+		if( problems != null ) {
+			for( int i = 0; i < problems.length; i++ ) {
+				Integer category = new Integer(problems[i].getCategory());
+				ArrayList<IApiProblem> bucket = buckets.get(category);
+				if( bucket == null ) {
+					bucket = new ArrayList<IApiProblem>();
+					buckets.put(category, bucket);
+				}
+				bucket.add(problems[i]);
+			}
+		}
+		problemsByCategory = new HashMap<Integer, IApiProblem[]>(buckets.size() * 2);
+		Iterator<Integer> it = buckets.keySet().iterator();
+		while(it.hasNext()) {
+			Integer category = it.next();
+			ArrayList<IApiProblem> bucket = buckets.get(category);
+			problemsByCategory.put(category, (IApiProblem[]) bucket.toArray(new IApiProblem[bucket.size()]));
+		}
+		sortedByCategory = new HashMap<Integer, IApiProblem[]>(buckets.size() * 2);
 	}
 	
 	private int[] mementoProblemTypes = null;
@@ -67,10 +106,15 @@ public class ApiAnalysisReport extends RootReport implements IStyleSheetProvider
 		return super.generateMemento();
 	}
 	
-	protected void fillMemento(IMemento parentContext) {
+	public void write(OutputStream os, int[] problemTypes) throws IOException {
+		mementoProblemTypes = problemTypes;
+		super.write(os);
+	}
+	
+	protected void fillMemento(IMementoWriter parentContext) {
 		fillMemento(parentContext, mementoProblemTypes == null ? CATEGORIES : mementoProblemTypes);
 	}
-	protected void fillMemento(IMemento parentContext, int[] problemTypes) {
+	protected void fillMemento(IMementoWriter parentContext, int[] problemTypes) {
 		parentContext.putString(IApiXmlConstants.ATTR_VERSION, IApiXmlConstants.API_REPORT_CURRENT_VERSION);
 		parentContext.putString(IApiXmlConstants.ATTR_COMPONENT_ID, id);
 		
@@ -79,22 +123,25 @@ public class ApiAnalysisReport extends RootReport implements IStyleSheetProvider
 		}
 	}
 	
-	protected void addCategory(IMemento parentContext, int type, String categoryValue) {
-		IMemento child = parentContext.createChild(IApiXmlConstants.ATTR_CATEGORY);
+	protected void addCategory(IMementoWriter parentContext, int type, String categoryValue) {
+		IMementoWriter child = parentContext.createChild(IApiXmlConstants.ATTR_CATEGORY);
 		child.putString(IApiXmlConstants.ATTR_KEY, Integer.toString(type));
 		child.putString(IApiXmlConstants.ATTR_VALUE, categoryValue);
-		insertProblems(child, getProblemsOfType(type));
+		insertSortedProblems(child, getSortedProblemsOfType(type));
+	}
+	
+	protected void insertProblems(IMementoWriter parent, IApiProblem[] problems) {
+		insertSortedProblems(parent, ApiToolsUtils.sortProblems(problems));
 	}
 	
-	protected void insertProblems(IMemento parent, IApiProblem[] problems) {
-		IApiProblem[] sorted = ApiToolsUtils.sortProblems(problems);
-		IMemento problemsElement = parent.createChild(IApiXmlConstants.ELEMENT_API_PROBLEMS);
+	protected void insertSortedProblems(IMementoWriter parent, IApiProblem[] sorted) {
+		IMementoWriter problemsElement = parent.createChild(IApiXmlConstants.ELEMENT_API_PROBLEMS);
 		for( int i = 0; i < sorted.length; i++ ) {
 			addSingleProblem(problemsElement, sorted[i]);
 		}
 	}
-	protected void addSingleProblem(IMemento problems, IApiProblem problem) {
-		IMemento problemEl = problems.createChild(IApiXmlConstants.ELEMENT_API_PROBLEM);
+	protected void addSingleProblem(IMementoWriter problems, IApiProblem problem) {
+		IMementoWriter problemEl = problems.createChild(IApiXmlConstants.ELEMENT_API_PROBLEM);
 		int severity = ApiToolsUtils.getSeverity(preferences, problem);
 
 		problemEl.putString(IApiXmlConstants.ATTR_TYPE_NAME, String.valueOf(problem.getTypeName()));
@@ -113,9 +160,9 @@ public class ApiAnalysisReport extends RootReport implements IStyleSheetProvider
 		if (extraMarkerAttributeIds != null && extraMarkerAttributeIds.length != 0) {
 			int length = extraMarkerAttributeIds.length;
 			Object[] extraMarkerAttributeValues = problem.getExtraMarkerAttributeValues();
-			IMemento extraArgumentsElement = problemEl.createChild(IApiXmlConstants.ELEMENT_PROBLEM_EXTRA_ARGUMENTS);
+			IMementoWriter extraArgumentsElement = problemEl.createChild(IApiXmlConstants.ELEMENT_PROBLEM_EXTRA_ARGUMENTS);
 			for (int j = 0; j < length; j++) {
-				IMemento extraArgumentElement = extraArgumentsElement.createChild(IApiXmlConstants.ELEMENT_PROBLEM_EXTRA_ARGUMENT);
+				IMementoWriter extraArgumentElement = extraArgumentsElement.createChild(IApiXmlConstants.ELEMENT_PROBLEM_EXTRA_ARGUMENT);
 				extraArgumentElement.putString(IApiXmlConstants.ATTR_ID, extraMarkerAttributeIds[j]);
 				extraArgumentElement.putString(IApiXmlConstants.ATTR_VALUE, String.valueOf(extraMarkerAttributeValues[j]));
 			}
@@ -123,9 +170,9 @@ public class ApiAnalysisReport extends RootReport implements IStyleSheetProvider
 		String[] messageArguments = problem.getMessageArguments();
 		if (messageArguments != null && messageArguments.length != 0) {
 			int length = messageArguments.length;
-			IMemento messageArgumentsElement = problemEl.createChild(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENTS);
+			IMementoWriter messageArgumentsElement = problemEl.createChild(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENTS);
 			for (int j = 0; j < length; j++) {
-				IMemento messageArgumentElement = messageArgumentsElement.createChild(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENT);
+				IMementoWriter messageArgumentElement = messageArgumentsElement.createChild(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENT);
 				messageArgumentElement.putString(IApiXmlConstants.ATTR_VALUE, String.valueOf(messageArguments[j]));
 			}
 		}
@@ -139,15 +186,129 @@ public class ApiAnalysisReport extends RootReport implements IStyleSheetProvider
 		return count;
 	}
 	
+	/*
+	 * The returned array is shared and must not be modified
+	 */
 	protected IApiProblem[] getProblemsOfType(int type) {
-		if( problems == null )
-			return new IApiProblem[]{};
-		ArrayList<IApiProblem> ret = new ArrayList<IApiProblem>();
-		for( int i = 0; i < problems.length; i++ ) {
-			if( problems[i].getCategory() == type)
-				ret.add(problems[i]);
+		IApiProblem[] ret = problemsByCategory.get(new Integer(type));
+		return ret == null ? NO_PROBLEMS : ret;
+	}
+	
+	protected synchronized IApiProblem[] getSortedProblemsOfType(int type) {
+		Integer key = new Integer(type);
+		IApiProblem[] sorted = sortedByCategory.get(key);
+		if( sorted == null ) {
+			sorted = ApiToolsUtils.sortProblems(getProblemsOfType(type));
+			sortedByCategory.put(key, sorted);
+		}
+		return sorted;
+	}
+	
+	/**
+	 * Returns the fingerprint of the analysis that produced this report, 
+	 * or <code>null</code> if the report should not be reused by later runs. 
+	 */
+	public AnalysisFingerprint getFingerprint() {
+		return fingerprint;
+	}
+	
+	public void setFingerprint(AnalysisFingerprint fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+	
+	/**
+	 * Read back a report saved by a previous run. The problems are 
+	 * recreated from their ids and arguments, so the report can be 
+	 * saved or aggregated exactly like a freshly computed one.  
+	 * 
+	 * @param componentId the id of the analyzed component
+	 * @param file the previously saved report
+	 * @param problemPreferences the problem preferences
+	 * @param styleSheetLoc the stylesheet location, or <code>null</code>
+	 * @return the report
+	 * @throws IOException if the file cannot be read or is not a report for the component
+	 */
+	public static PreviousReport readReport(String componentId, File file, 
+			Properties problemPreferences, String styleSheetLoc) throws IOException {
+		IMemento root = XMLMemento.loadMemento(file.getAbsolutePath());
+		if( root == null || !componentId.equals(root.getString(IApiXmlConstants.ATTR_COMPONENT_ID)))
+			throw new IOException("Not an analysis report for " + componentId + ": " + file.getAbsolutePath());
+		ArrayList<IApiProblem> problems = new ArrayList<IApiProblem>();
+		IMemento[] categories = root.getChildren(IApiXmlConstants.ATTR_CATEGORY);
+		for( int i = 0; i < categories.length; i++ ) {
+			IMemento problemsElement = categories[i].getChild(IApiXmlConstants.ELEMENT_API_PROBLEMS);
+			if( problemsElement == null )
+				continue;
+			IMemento[] problemElements = problemsElement.getChildren(IApiXmlConstants.ELEMENT_API_PROBLEM);
+			for( int j = 0; j < problemElements.length; j++ ) {
+				problems.add(readProblem(problemElements[j]));
+			}
+		}
+		return new PreviousReport(componentId, 
+				(IApiProblem[]) problems.toArray(new IApiProblem[problems.size()]), 
+				problemPreferences, styleSheetLoc, file);
+	}
+	
+	private static IApiProblem readProblem(IMemento problemEl) throws IOException {
+		String typeName = problemEl.getString(IApiXmlConstants.ATTR_TYPE_NAME);
+		if( "null".equals(typeName)) //$NON-NLS-1$
+			typeName = null;
+		String[] extraIds = null;
+		Object[] extraValues = null;
+		IMemento extra = problemEl.getChild(IApiXmlConstants.ELEMENT_PROBLEM_EXTRA_ARGUMENTS);
+		if( extra != null ) {
+			IMemento[] args = extra.getChildren(IApiXmlConstants.ELEMENT_PROBLEM_EXTRA_ARGUMENT);
+			extraIds = new String[args.length];
+			extraValues = new Object[args.length];
+			for( int i = 0; i < args.length; i++ ) {
+				extraIds[i] = args[i].getString(IApiXmlConstants.ATTR_ID);
+				extraValues[i] = args[i].getString(IApiXmlConstants.ATTR_VALUE);
+			}
+		}
+		String[] messageArgs = null;
+		IMemento message = problemEl.getChild(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENTS);
+		if( message != null ) {
+			IMemento[] args = message.getChildren(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENT);
+			messageArgs = new String[args.length];
+			for( int i = 0; i < args.length; i++ ) {
+				messageArgs[i] = args[i].getString(IApiXmlConstants.ATTR_VALUE);
+			}
+		}
+		try {
+			return ApiProblemFactory.newApiProblem(null, typeName, messageArgs, extraIds, extraValues,
+					Integer.parseInt(problemEl.getString(IApiXmlConstants.ATTR_LINE_NUMBER)),
+					Integer.parseInt(problemEl.getString(IApiXmlConstants.ATTR_CHAR_START)),
+					Integer.parseInt(problemEl.getString(IApiXmlConstants.ATTR_CHAR_END)),
+					Integer.parseInt(problemEl.getString(IApiXmlConstants.ATTR_ID)));
+		} catch(NumberFormatException nfe) {
+			throw new IOException("Malformed problem in analysis report: " + nfe.getMessage());
+		}
+	}
+	
+	/**
+	 * A report read back from a previous run whose 
+	 * analysis inputs did not change. 
+	 */
+	public static class PreviousReport extends ApiAnalysisReport {
+		private File file;
+		public PreviousReport(String componentId, IApiProblem[] problems, 
+				Properties problemPreferences, String styleSheetLoc, File file) {
+			super(componentId, problems, problemPreferences, styleSheetLoc);
+			this.file = file;
+		}
+		public File getFile() {
+			return file;
+		}
+	}
+	
+	/**
+	 * Stands for a report already written to disk and released 
+	 * from memory, in the streaming mode of the runners
+	 */
+	public static class WrittenReport extends ApiAnalysisReport {
+		public WrittenReport(String componentId) {
+			super(componentId, null, null);
 		}
-		return (IApiProblem[]) ret.toArray(new IApiProblem[ret.size()]);
 	}
 	
 	public static class AnalysisSkippedReport extends ApiAnalysisReport {
@@ -156,10 +317,10 @@ public class ApiAnalysisReport extends RootReport implements IStyleSheetProvider
 			super(componentId, null, null);
 			this.cause = cause;
 		}
-		protected void fillMemento(IMemento parentContext) {
+		protected void fillMemento(IMementoWriter parentContext) {
 			parentContext.putString(IApiXmlConstants.ATTR_VERSION, IApiXmlConstants.API_REPORT_CURRENT_VERSION);
 			parentContext.putString(IApiXmlConstants.ATTR_COMPONENT_ID, id);
-			IMemento mem = parentContext.createChild("analysisSkipped");
+			IMementoWriter mem = parentContext.createChild("analysisSkipped");
 			mem.putString("cause", cause);
 		}
 		public String getId() {
@@ -13,12 +13,16 @@ package org.eclipse.pde.apitools.ant.internal;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.apache.tools.ant.BuildException;
 import org.eclipse.pde.api.tools.internal.model.StubApiComponent;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
 import org.eclipse.pde.apitools.ant.util.BaselineUtils;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 public class ApiAnalysisRunner extends AbstractAnalysisRunner {
 	public static final String SUMMARY_REPORT_NAME = "ANALYSIS_SUMMARY";
@@ -32,6 +36,7 @@ public class ApiAnalysisRunner extends AbstractAnalysisRunner {
 	private File[] profileBaselineFiles = null;
 	private String includeListLocation;
 	private String excludeListLocation;
+	private BaselineRepository baselineRepository = null;
 	
 	
 	private IApiBaseline refBaseline, profileBaseline;
@@ -75,15 +80,35 @@ public class ApiAnalysisRunner extends AbstractAnalysisRunner {
 	}
 	
 
+	/**
+	 * Set a repository of baselines already loaded by an earlier analysis. 
+	 * Baselines given as a location are then taken from the repository, 
+	 * which keeps ownership of them.
+	 * 
+	 * @param repository a baseline repository, or <code>null</code>
+	 */
+	public void setBaselineRepository(BaselineRepository repository) {
+		this.baselineRepository = repository;
+	}
+	
 	public void disposeBaselines() {
-		long time = System.currentTimeMillis();
-		if( refBaseline != null )
-			refBaseline.dispose();
-		if( profileBaseline != null )
-			profileBaseline.dispose();
+		Metrics.Stopwatch watch = metrics.start(Metrics.CLEANUP);
+		if( baselineRepository != null ) {
+			// Only those loaded from a file array are ours
+			if( referenceBaselineFiles != null && refBaseline != null )
+				refBaseline.dispose();
+			if( profileBaselineFiles != null && profileBaseline != null )
+				profileBaseline.dispose();
+		} else {
+			if( refBaseline != null )
+				refBaseline.dispose();
+			if( profileBaseline != null )
+				profileBaseline.dispose();
+		}
 		StubApiComponent.disposeAllCaches();
+		long time = watch.stop();
 		if (this.debug) {
-			System.out.println("Cleanup : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+			System.out.println("Cleanup : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 
 	}
@@ -111,7 +136,7 @@ public class ApiAnalysisRunner extends AbstractAnalysisRunner {
 	}
 	
 	public void createInclusionArrays() {
-		long time = System.currentTimeMillis();
+		Metrics.Stopwatch watch = metrics.start(Metrics.INCLUSION);
 		if( debug )
 			System.out.println("Introspecting Inclusion and Exclusion patterns... ");
 
@@ -120,39 +145,132 @@ public class ApiAnalysisRunner extends AbstractAnalysisRunner {
 				refBaseline, includeListLocation, excludeListLocation);
 		profileIncluded = BaselineUtils.getFilteredElements(
 				profileBaseline, includeListLocation, excludeListLocation);
+		long time = watch.stop();
 		if( debug ) {
-			System.out.println("Filtering Api Elements Complete in " + (System.currentTimeMillis() - time) + "ms");
+			System.out.println("Filtering Api Elements Complete in " + time + "ms");
 		}
 	}
 	
+	/**
+	 * Create the reference and the profile baseline. They do not depend 
+	 * on each other, so the reference baseline is loaded on a separate 
+	 * thread while the profile baseline is loaded on the calling one.
+	 * Both are complete when this method returns. 
+	 */
 	public void createBaselines() {
-		long time = System.currentTimeMillis();
+		Metrics.Stopwatch watch = metrics.start(Metrics.BASELINES_LOAD);
 
 		if( debug )
-			System.out.println("Creating Reference Baseline...");
-
-		// Create two baselines
-		if( profileBaselineFiles == null ) {
-			profileBaseline = BaselineUtils.createBaseline(
-					REFERENCE_BASE, referenceBaselineLocation, null);
-		} else {
-			profileBaseline = BaselineUtils.createBaseline(
-					REFERENCE_BASE, referenceBaselineFiles);
-		}
+			System.out.println("Creating Reference and Profile Baselines...");
 
-		if( debug )
-			System.out.println("Creating Profile Baseline...");
+		FutureTask<IApiBaseline> reference = new FutureTask<IApiBaseline>(new Callable<IApiBaseline>() {
+			public IApiBaseline call() throws Exception {
+				Metrics.Stopwatch referenceWatch = metrics.start(Metrics.BASELINE_REFERENCE_LOAD);
+				try {
+					return loadBaseline(REFERENCE_BASE, referenceBaselineLocation, referenceBaselineFiles);
+				} finally {
+					referenceWatch.stop();
+				}
+			}
+		});
+		Thread referenceLoader = new Thread(reference, "Reference Baseline Loader"); //$NON-NLS-1$
+		referenceLoader.setDaemon(true);
+		referenceLoader.start();
 
 		// The profile baseline can be set either through a folder
 		// Or a java.io.File array
-		if( profileBaselineFiles == null ) {
-			profileBaseline = BaselineUtils.createBaseline(
-				CURRENT_BASE, profileBaselineLocation, null);
-		} else {
-			profileBaseline = BaselineUtils.createBaseline(CURRENT_BASE, profileBaselineFiles);
+		Metrics.Stopwatch profileWatch = metrics.start(Metrics.BASELINE_PROFILE_LOAD);
+		boolean profileLoaded = false;
+		try {
+			profileBaseline = loadBaseline(CURRENT_BASE, profileBaselineLocation, profileBaselineFiles);
+			profileLoaded = true;
+		} finally {
+			profileWatch.stop();
+			if( !profileLoaded )
+				disposeReference(reference);
 		}
 		
-		if( debug )
-			System.out.println("Finished Loading Baselines in " + (System.currentTimeMillis() - time) + "ms");
+		try {
+			refBaseline = reference.get();
+		} catch(InterruptedException ie) {
+			reference.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new BuildException(ie);
+		} catch(ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if( cause instanceof RuntimeException )
+				throw (RuntimeException)cause;
+			if( cause instanceof Error )
+				throw (Error)cause;
+			throw new BuildException(cause);
+		}
+		long time = watch.stop();
+		
+		if( debug ) {
+			System.out.println("Reference Baseline Loaded in " + getReferenceLoadTime() + "ms");
+			System.out.println("Profile Baseline Loaded in " + getProfileLoadTime() + "ms");
+			System.out.println("Finished Loading Baselines in " + time + "ms");
+		}
+	}
+	
+	/*
+	 * Wait for the reference baseline once the profile baseline failed 
+	 * to load, and dispose it, since no caller will ever get to see it
+	 */
+	private void disposeReference(FutureTask<IApiBaseline> reference) {
+		IApiBaseline baseline = null;
+		try {
+			baseline = reference.get();
+		} catch(InterruptedException ie) {
+			reference.cancel(true);
+			Thread.currentThread().interrupt();
+			return;
+		} catch(ExecutionException ee) {
+			// The failure of the profile baseline is the one reported
+			return;
+		}
+		// Baselines of the repository stay loaded for the next request
+		if( baseline != null && (baselineRepository == null || referenceBaselineFiles != null))
+			baseline.dispose();
+	}
+	
+	/*
+	 * Create one baseline either from a folder or from a list of files
+	 */
+	private IApiBaseline loadBaseline(String name, String location, File[] files) {
+		if( files == null ) {
+			if( baselineRepository != null )
+				return baselineRepository.getBaseline(name, location, threads);
+			return BaselineUtils.createBaseline(name, location, null, null, threads);
+		}
+		return BaselineUtils.createBaseline(name, files, threads);
+	}
+	
+	/**
+	 * @return the time spent loading the reference baseline, in milliseconds
+	 */
+	public long getReferenceLoadTime() {
+		return metrics.getTime(Metrics.BASELINE_REFERENCE_LOAD);
+	}
+	
+	/**
+	 * @return the time spent loading the profile baseline, in milliseconds
+	 */
+	public long getProfileLoadTime() {
+		return metrics.getTime(Metrics.BASELINE_PROFILE_LOAD);
+	}
+	
+	/**
+	 * @return the time until both baselines were loaded, in milliseconds
+	 */
+	public long getBaselinesLoadTime() {
+		return metrics.getTime(Metrics.BASELINES_LOAD);
+	}
+	
+	/**
+	 * @return the time spent applying the inclusion and exclusion lists, in milliseconds
+	 */
+	public long getInclusionTime() {
+		return metrics.getTime(Metrics.INCLUSION);
 	}
 }
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.internal;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
+import org.eclipse.pde.apitools.ant.util.BaselineUtils;
+import org.eclipse.pde.apitools.ant.util.BundleFingerprint;
+
+/**
+ * Keeps loaded baselines for reuse by later analyses in the same JVM.
+ *
+ * Baselines are keyed by their name, their location and a fingerprint
+ * of the location made of the total size and the most recent
+ * modification time of its files. A baseline whose location changed
+ * is loaded again. The least recently used baselines are disposed
+ * once more than the maximum number are held.
+ *
+ * Baselines handed out during a request are pinned until
+ * {@link #endRequest()} is called, since a request holds its reference
+ * and profile baselines at once. Pinned baselines are never disposed
+ * to make room, so the maximum may be exceeded while a request runs.
+ *
+ * Baselines handed out remain owned by the repository and must not
+ * be disposed by the caller.
+ */
+public class BaselineRepository {
+	public static final int DEFAULT_MAX_BASELINES = 4;
+
+	private static class Entry {
+		private String fingerprint;
+		private IApiBaseline baseline;
+		private boolean pinned = true;
+
+		private Entry(String fingerprint, IApiBaseline baseline) {
+			this.fingerprint = fingerprint;
+			this.baseline = baseline;
+		}
+	}
+
+	private final int maxBaselines;
+	private LinkedHashMap<String, Entry> entries;
+	private int hits = 0;
+	private int misses = 0;
+
+	public BaselineRepository(int maxBaselines) {
+		this.maxBaselines = maxBaselines;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	}
+
+	/**
+	 * Answer the baseline of the given location, loading it
+	 * if it is not held or its location changed since.
+	 *
+	 * @param name the name of the baseline
+	 * @param location the folder of bundles
+	 * @param threads the number of bundles to open at once
+	 * @return the baseline, or <code>null</code> if it could not be created
+	 */
+	public IApiBaseline getBaseline(String name, String location, int threads) {
+		File dir = new File(location).getAbsoluteFile();
+		String key = name + '@' + dir.getPath();
+		long[] stat = BundleFingerprint.stat(dir);
+		String fingerprint = stat[0] + ":" + stat[1]; //$NON-NLS-1$
+		synchronized(this) {
+			Entry entry = entries.get(key);
+			if( entry != null ) {
+				if( entry.fingerprint.equals(fingerprint)) {
+					hits++;
+					entry.pinned = true;
+					return entry.baseline;
+				}
+				entries.remove(key);
+				entry.baseline.dispose();
+			}
+			misses++;
+		}
+		// Load outside the lock, so that different baselines load at once
+		IApiBaseline baseline = BaselineUtils.createBaseline(name, location, null, null, threads);
+		if( baseline != null ) {
+			synchronized(this) {
+				Entry previous = entries.put(key, new Entry(fingerprint, baseline));
+				if( previous != null && previous.baseline != baseline )
+					previous.baseline.dispose();
+				evict();
+			}
+		}
+		return baseline;
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while( entries.size() > maxBaselines && it.hasNext()) {
+			Entry eldest = it.next().getValue();
+			if( eldest.pinned )
+				continue;
+			it.remove();
+			eldest.baseline.dispose();
+		}
+	}
+
+	/**
+	 * Unpin the baselines handed out since the previous request ended,
+	 * and dispose the least recently used ones beyond the maximum
+	 */
+	public synchronized void endRequest() {
+		Iterator<Entry> it = entries.values().iterator();
+		while(it.hasNext()) {
+			it.next().pinned = false;
+		}
+		evict();
+	}
+
+	/**
+	 * Dispose all baselines held
+	 */
+	public synchronized void dispose() {
+		Iterator<Entry> it = entries.values().iterator();
+		while(it.hasNext()) {
+			it.next().baseline.dispose();
+		}
+		entries.clear();
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+}
@@ -14,7 +14,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 
 
 import org.eclipse.core.runtime.CoreException;
@@ -23,7 +25,7 @@ import org.eclipse.pde.api.tools.internal.model.BundleComponent;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
 import org.eclipse.pde.apitools.ant.util.BaselineUtils;
-import org.eclipse.pde.apitools.ant.util.IMemento;
+import org.eclipse.pde.apitools.ant.util.IMementoWriter;
 import org.eclipse.pde.apitools.ant.util.StringUtils;
 import org.eclipse.pde.apitools.ant.util.XMLMemento;
 
@@ -38,89 +40,124 @@ public class BaselineResolutionDebugger {
 	}
 	
 	public RootReport debugBaseline(IApiBaseline baseline, String[] bundlesToVerify) {
-		IApiComponent[] allComponents = baseline.getApiComponents();
+		ResolutionWalk walk = new ResolutionWalk(baseline.getApiComponents());
 		RootResolutionReport main = new RootResolutionReport();
 		for( int i = 0; i < bundlesToVerify.length; i++ ) {
-			ResolutionReport report = debugBundleResolution(baseline, allComponents, bundlesToVerify[i]);
-			main.addChildReport(report);
+			main.addChildReport(walk.resolve(bundlesToVerify[i]));
 		}
 		return main;
 	}
 
 	public RootReport debugBaseline(IApiBaseline baseline, IApiComponent[] bundlesToVerify) {
-		IApiComponent[] allComponents = baseline.getApiComponents();
-		RootResolutionReport main = new RootResolutionReport();
+		String[] names = new String[bundlesToVerify.length];
 		for( int i = 0; i < bundlesToVerify.length; i++ ) {
-			ResolutionReport report = debugBundleResolution(baseline, allComponents, bundlesToVerify[i].getSymbolicName());
-			main.addChildReport(report);
+			names[i] = bundlesToVerify[i].getSymbolicName();
 		}
-		return main;
+		return debugBaseline(baseline, names);
 	}
 
 	protected ResolutionReport debugBundleResolution(IApiBaseline baseline, IApiComponent[] allComponents, String bundleName) {
+		return new ResolutionWalk(allComponents).resolve(bundleName);
+	}
+	
+	/*
+	 * Resolution reports of the bundles of one baseline. Each bundle is 
+	 * reported once; any later requirement on it refers to that report. 
+	 * Missing requirements are followed from a worklist rather than by 
+	 * recursion, so that long chains of requirements cannot overflow the stack.
+	 */
+	private class ResolutionWalk {
+		private HashMap<String, ArrayList<IApiComponent>> index = new HashMap<String, ArrayList<IApiComponent>>();
+		private HashMap<String, ResolutionReport> reported = new HashMap<String, ResolutionReport>();
+		private LinkedList<MissingRequirementReport> worklist = new LinkedList<MissingRequirementReport>();
 		
-		ArrayList<IApiComponent> matching = findMatchingComponents(allComponents, bundleName);
-		if( matching.size() == 0 ) {
-			return new MissingBundleReport(bundleName);
-		}
-		ResolutionReport main = new ResolutionReport(bundleName);
-		Iterator<IApiComponent> i = matching.iterator();
-		while(i.hasNext()) {
-			IApiComponent current = i.next();
-			
-			ResolverError[] errors = null;
-			boolean isResolved = false;
-			try {
-				isResolved = isResolved(current);
-				if( !isResolved) {
-					errors = getErrors(current);
+		private ResolutionWalk(IApiComponent[] allComponents) {
+			for( int i = 0; i < allComponents.length; i++ ) {
+				String name = allComponents[i].getSymbolicName();
+				ArrayList<IApiComponent> matching = index.get(name);
+				if( matching == null ) {
+					matching = new ArrayList<IApiComponent>(1);
+					index.put(name, matching);
 				}
-			} catch(CoreException ce ) {
-				ResolutionReport rep = new FrameworkResolutionFailedReport(bundleName, current, ce);
-				if( matching.size() == 1 )
-					return rep;
-				main.addChildReport(rep);
-				continue;
+				matching.add(allComponents[i]);
 			}
-			
-			if( isResolved ) {
-				ResolutionReport rep = new BundleResolvedReport(bundleName, current);
-				if( matching.size() == 1 )
-					return rep;
-				main.addChildReport(rep);
-				continue;
+		}
+		
+		/*
+		 * Report on the given bundle and, breadth first, on every 
+		 * missing requirement it leads to
+		 */
+		private ResolutionReport resolve(String bundleName) {
+			ResolutionReport report = getReport(bundleName);
+			while(!worklist.isEmpty()) {
+				MissingRequirementReport rep = worklist.removeFirst();
+				rep.addChildReport(getReport(rep.getRequiredPlugin()));
+			}
+			return report;
+		}
+		
+		private ResolutionReport getReport(String bundleName) {
+			if( reported.containsKey(bundleName))
+				return new ResolutionRefReport(bundleName);
+			ResolutionReport report = createReport(bundleName);
+			reported.put(bundleName, report);
+			return report;
+		}
+		
+		/*
+		 * Report on the bundle alone, queuing its missing requirements
+		 */
+		private ResolutionReport createReport(String bundleName) {
+			ArrayList<IApiComponent> matching = index.get(bundleName);
+			if( matching == null ) {
+				return new MissingBundleReport(bundleName);
 			}
-			
-			for( int j = 0; j < errors.length; j++ ) {
-				if( errors[j].getType() == ResolverError.MISSING_REQUIRE_BUNDLE) {
-					MissingRequirementReport rep = new MissingRequirementReport(bundleName, current, errors[j]);
-					
-					ResolutionReport rep2 = debugBundleResolution(baseline, allComponents, rep.getRequiredPlugin());
-					rep.addChildReport(rep2);
-					
-					if( matching.size() == 1 ) 
+			ResolutionReport main = new ResolutionReport(bundleName);
+			Iterator<IApiComponent> i = matching.iterator();
+			while(i.hasNext()) {
+				IApiComponent current = i.next();
+				
+				ResolverError[] errors = null;
+				boolean isResolved = false;
+				try {
+					isResolved = isResolved(current);
+					if( !isResolved) {
+						errors = getErrors(current);
+					}
+				} catch(CoreException ce ) {
+					ResolutionReport rep = new FrameworkResolutionFailedReport(bundleName, current, ce);
+					if( matching.size() == 1 )
 						return rep;
 					main.addChildReport(rep);
-				} else {
-					ResolutionReport rep = new ResolverErrorReport(bundleName, current, errors[j]); 
+					continue;
+				}
+				
+				if( isResolved ) {
+					ResolutionReport rep = new BundleResolvedReport(bundleName, current);
 					if( matching.size() == 1 )
 						return rep;
 					main.addChildReport(rep);
+					continue;
+				}
+				
+				for( int j = 0; j < errors.length; j++ ) {
+					if( errors[j].getType() == ResolverError.MISSING_REQUIRE_BUNDLE) {
+						MissingRequirementReport rep = new MissingRequirementReport(bundleName, current, errors[j]);
+						worklist.add(rep);
+						
+						if( matching.size() == 1 ) 
+							return rep;
+						main.addChildReport(rep);
+					} else {
+						ResolutionReport rep = new ResolverErrorReport(bundleName, current, errors[j]); 
+						if( matching.size() == 1 )
+							return rep;
+						main.addChildReport(rep);
+					}
 				}
 			}
+			return main;
 		}
-		return main;
-	} 
-	
-	protected ArrayList<IApiComponent> findMatchingComponents(IApiComponent[] allComponents, String bundleId) {
-		ArrayList<IApiComponent> matching = new ArrayList<IApiComponent>();
-		for( int i = 0; i < allComponents.length; i++ ) {
-			String name = allComponents[i].getSymbolicName();
-			if( name.equals(bundleId)) {
-				matching.add(allComponents[i]);
-			}
-		}
-		return matching;
 	}
 	
 	protected boolean isResolved(IApiComponent comp) throws CoreException {
@@ -160,8 +197,8 @@ public class BaselineResolutionDebugger {
 			super();
 			this.id = bundleId;
 		}
-		protected void fillMemento(IMemento parentContext) {
-			IMemento mem = parentContext.createChild("resolvingBundle");
+		protected void fillMemento(IMementoWriter parentContext) {
+			IMementoWriter mem = parentContext.createChild("resolvingBundle");
 			mem.putString("id", id);
 			fillChildren(mem);
 		}
@@ -175,14 +212,14 @@ public class BaselineResolutionDebugger {
 			this.comp = component;
 			this.ce = ce;
 		}
-		protected void fillMemento(IMemento parentContext) {
-			IMemento mem = parentContext.createChild("bundleFailure");
+		protected void fillMemento(IMementoWriter parentContext) {
+			IMementoWriter mem = parentContext.createChild("bundleFailure");
 			mem.putString("id", id);
 			mem.putString("version", comp.getVersion());
 			ByteArrayOutputStream os = new ByteArrayOutputStream();
 			PrintStream ps = new PrintStream(os);
 			ce.printStackTrace(ps);
-			((XMLMemento)mem).putTextData(new String(os.toByteArray()));
+			mem.putTextData(new String(os.toByteArray()));
 			fillChildren(mem);
 		}
 	}
@@ -196,8 +233,8 @@ public class BaselineResolutionDebugger {
 			super(id);
 			this.comp = component;
 		}
-		protected void fillMemento(IMemento parentContext) {
-			IMemento mem = parentContext.createChild("bundleResolved");
+		protected void fillMemento(IMementoWriter parentContext) {
+			IMementoWriter mem = parentContext.createChild("bundleResolved");
 			mem.putString("id",  id);
 			mem.putString("version", comp.getVersion());
 			fillChildren(mem);
@@ -205,14 +242,27 @@ public class BaselineResolutionDebugger {
 	}
 
 	/*
-	 * A successfully resolved bundle
+	 * A bundle whose resolution is reported elsewhere in the report
+	 */
+	public static class ResolutionRefReport extends ResolutionReport {
+		public ResolutionRefReport(String id) {
+			super(id);
+		}
+		protected void fillMemento(IMementoWriter parentContext) {
+			IMementoWriter mem = parentContext.createChild("resolutionRef");
+			mem.putString("id", id);
+		}
+	}
+
+	/*
+	 * A bundle missing from the baseline
 	 */
 	public static class MissingBundleReport extends ResolutionReport {
 		public MissingBundleReport(String id) {
 			super(id);
 		}
-		protected void fillMemento(IMemento parentContext) {
-			IMemento mem = parentContext.createChild("bundleMissing");
+		protected void fillMemento(IMementoWriter parentContext) {
+			IMementoWriter mem = parentContext.createChild("bundleMissing");
 			mem.putString("id", id);
 			fillChildren(mem);
 		}
@@ -229,8 +279,8 @@ public class BaselineResolutionDebugger {
 			this.comp = component;
 			this.error = error;
 		}
-		protected void fillMemento(IMemento parentContext) {
-			IMemento mem = parentContext.createChild("bundleResolveFailed");
+		protected void fillMemento(IMementoWriter parentContext) {
+			IMementoWriter mem = parentContext.createChild("bundleResolveFailed");
 			mem.putString("id", id);
 			mem.putString("version", comp.getVersion());
 			mem.putString("msg", error.toString());
@@ -254,8 +304,8 @@ public class BaselineResolutionDebugger {
 		public String getRequiredPlugin() {
 			return requiredPlugin;
 		}
-		protected void fillMemento(IMemento parentContext) {
-			IMemento mem = parentContext.createChild("missingDependency");
+		protected void fillMemento(IMementoWriter parentContext) {
+			IMementoWriter mem = parentContext.createChild("missingDependency");
 			mem.putString("bundleid", id);
 			mem.putString("bundleversion", comp.getVersion());
 			mem.putString("requiredid", requiredPlugin);
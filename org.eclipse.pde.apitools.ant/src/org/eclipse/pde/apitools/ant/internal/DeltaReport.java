@@ -1,58 +1,106 @@
 package org.eclipse.pde.apitools.ant.internal;
 
-import java.io.ByteArrayInputStream;
+import java.util.HashSet;
 
+import org.apache.tools.ant.BuildException;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.pde.api.tools.internal.IApiXmlConstants;
+import org.eclipse.pde.api.tools.internal.provisional.comparator.DeltaProcessor;
 import org.eclipse.pde.api.tools.internal.provisional.comparator.IDelta;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
+import org.eclipse.pde.api.tools.internal.util.Util;
 import org.eclipse.pde.apitools.ant.tasks.AbstractFilterListDeltaVisitor;
-import org.eclipse.pde.apitools.ant.tasks.FilterListDeltaVisitor;
-import org.eclipse.pde.apitools.ant.util.XMLMemento;
+import org.eclipse.pde.apitools.ant.util.IMementoWriter;
 
 public class DeltaReport extends RootReport {
 	public static final int DEPRECATION = AbstractFilterListDeltaVisitor.CHECK_DEPRECATION;
 	public static final int OTHER = AbstractFilterListDeltaVisitor.CHECK_OTHER;
 	public static final int ALL = AbstractFilterListDeltaVisitor.CHECK_ALL;
 
-	
+
 	private IDelta delta;
-	private IApiComponent[] included;
+	private HashSet<String> includedNames;
 	private int flags;
 	public DeltaReport(IDelta delta, IApiComponent[] included, int flags) {
 		super("deltas");
 		this.delta = delta;
-		this.included = included;
 		this.flags = flags;
-	}
-	
-	public XMLMemento generateMemento() {
-		try {
-			String xml = getXML();
-			XMLMemento mem = XMLMemento.createReadRoot(new ByteArrayInputStream(xml.getBytes()));
-			addStylesheetInstructions(mem);
-			return mem;
-		} catch(CoreException ce) {
-			System.out.println("Error Generating report");
-			ce.printStackTrace();
+		this.includedNames = new HashSet<String>(included.length * 2);
+		for( int i = 0; i < included.length; i++ ) {
+			String symName = included[i].getSymbolicName();
+			if( symName != null )
+				includedNames.add(symName);
 		}
-		return null;
 	}
-	
-	protected String getXML() throws CoreException {
-		AbstractFilterListDeltaVisitor visitor = new AbstractFilterListDeltaVisitor(flags) {
-			@Override
-			protected boolean isExcluded(IDelta delta) {
-				String symName = null;
-				for( int i = 0; i < included.length; i++ ) {
-					symName = included[i].getSymbolicName();
-					if( symName != null && symName.equals(delta.getComponentId())) {
+
+	/*
+	 * Visit the delta tree once, writing each reported delta
+	 * as a child of the root as soon as it is found
+	 */
+	protected void fillMemento(final IMementoWriter parentContext) {
+		try {
+			AbstractFilterListDeltaVisitor visitor = new AbstractFilterListDeltaVisitor(flags) {
+				private String lastComponentId = null;
+				private boolean lastExcluded = true;
+				
+				@Override
+				protected boolean isExcluded(IDelta delta) {
+					// Deltas arrive grouped by component, remember the last answer
+					String componentId = delta.getComponentId();
+					if( componentId == null )
+						return true;
+					if( !componentId.equals(lastComponentId)) {
+						lastComponentId = componentId;
+						lastExcluded = !includedNames.contains(componentId);
+					}
+					return lastExcluded;
+				}
+				
+				@Override
+				public boolean visit(IDelta delta) {
+					// Only the component decides, so every leaf below a component
+					// gets the same answer. Skip subtrees whose leaves would all be dropped
+					if( delta.getComponentId() != null && delta.getChildren().length > 0 
+							&& !isExcluded(delta)) {
 						return false;
 					}
+					return super.visit(delta);
+				}
+				@Override
+				protected void acceptDelta(IDelta delta) {
+					addDelta(parentContext, delta);
 				}
-				return true;
+			};
+			delta.accept(visitor);
+		} catch(CoreException ce) {
+			// A partial report would look complete, fail instead
+			throw new BuildException(ce);
+		}
+	}
+
+	/*
+	 * The same element DeltaXmlVisitor creates for a leaf delta
+	 */
+	protected void addDelta(IMementoWriter parentContext, IDelta delta) {
+		IMementoWriter deltaElement = parentContext.createChild(IApiXmlConstants.DELTA_ELEMENT_NAME);
+		deltaElement.putString(IApiXmlConstants.ATTR_NAME_ELEMENT_TYPE, Util.getDeltaElementType(delta));
+		deltaElement.putString(IApiXmlConstants.ATTR_FLAGS, Integer.toString(delta.getFlags()));
+		deltaElement.putString(IApiXmlConstants.ATTR_KIND, Util.getDeltaKindName(delta));
+		deltaElement.putString(IApiXmlConstants.ATTR_NAME_NEW_MODIFIERS, Integer.toString(delta.getNewModifiers()));
+		deltaElement.putString(IApiXmlConstants.ATTR_NAME_OLD_MODIFIERS, Integer.toString(delta.getOldModifiers()));
+		deltaElement.putString(IApiXmlConstants.ATTR_RESTRICTIONS, Integer.toString(delta.getCurrentRestrictions()));
+		deltaElement.putString(IApiXmlConstants.ATTR_KEY, delta.getKey());
+		deltaElement.putString(IApiXmlConstants.ATTR_NAME_TYPE_NAME, delta.getTypeName());
+		deltaElement.putString(IApiXmlConstants.ATTR_NAME_COMPATIBLE, Boolean.toString(DeltaProcessor.isCompatible(delta)));
+		deltaElement.putString(IApiXmlConstants.ATTR_MESSAGE, delta.getMessage());
+		deltaElement.putString(IApiXmlConstants.ATTR_NAME_COMPONENT_ID, delta.getComponentVersionId());
+		String[] messageArguments = delta.getArguments();
+		if (messageArguments != null && messageArguments.length > 0) {
+			IMementoWriter messageArgumentsElement = deltaElement.createChild(IApiXmlConstants.ELEMENT_DELTA_MESSAGE_ARGUMENTS);
+			for (int j = 0; j < messageArguments.length; j++) {
+				IMementoWriter messageArgumentElement = messageArgumentsElement.createChild(IApiXmlConstants.ELEMENT_DELTA_MESSAGE_ARGUMENT);
+				messageArgumentElement.putString(IApiXmlConstants.ATTR_VALUE, String.valueOf(messageArguments[j]));
 			}
-		};
-		delta.accept(visitor);
-		return visitor.getXML();
+		}
 	}
 }
@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.apache.tools.ant.BuildException;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.tasks.Messages;
+import org.eclipse.pde.apitools.ant.util.BaselineUtils;
+import org.eclipse.pde.apitools.ant.util.BundleFingerprint;
+
+/**
+ * A directory of extracted baseline archives shared by all tasks of a build.
+ *
+ * Each archive is extracted once into a folder named after the digest and
+ * size of the archive, so that every task given the same archive, under
+ * any name, reuses the same tree. Trees in use are reference counted.
+ * When the trees on disk exceed the maximum size, the least recently
+ * used trees that are not in use are deleted.
+ *
+ * A tree is only reused once its extraction completed, which is recorded
+ * in a marker file along with the size of the tree. Trees therefore also
+ * survive from one build to the next.
+ *
+ * Builds running at the same time may share the directory. Each tree
+ * has a lock file next to it: a process holds a shared lock on it while
+ * its tasks use the tree, and extracting or deleting a tree requires an
+ * exclusive lock. Lock files are never deleted, so that all processes
+ * always lock the same file.
+ */
+public class ExtractionCache {
+	public static final long DEFAULT_MAX_SIZE = 4L * 1024 * 1024 * 1024;
+	private static final String MARKER_FILE_NAME = ".extracted"; //$NON-NLS-1$
+	private static final String KEY_SIZE = "size"; //$NON-NLS-1$
+	private static final String KEY_ARCHIVE = "archive"; //$NON-NLS-1$
+	private static final String TEMP_SUFFIX = ".tmp"; //$NON-NLS-1$
+	private static final String BUNDLES_SUFFIX = "-bundles"; //$NON-NLS-1$
+	private static final String LOCK_SUFFIX = ".lock"; //$NON-NLS-1$
+
+	private static final HashMap<File, ExtractionCache> caches = new HashMap<File, ExtractionCache>();
+
+	/**
+	 * Get the shared cache stored in the given directory
+	 *
+	 * @param cacheDir the cache directory, or <code>null</code>
+	 * @return the cache, or <code>null</code> if no directory was given
+	 */
+	public static ExtractionCache getCache(String cacheDir) {
+		if( cacheDir == null )
+			return null;
+		File dir = new File(cacheDir).getAbsoluteFile();
+		synchronized(caches) {
+			ExtractionCache cache = caches.get(dir);
+			if( cache == null ) {
+				cache = new ExtractionCache(dir);
+				caches.put(dir, cache);
+			}
+			return cache;
+		}
+	}
+
+	private File cacheDir;
+	private long maxSize = DEFAULT_MAX_SIZE;
+	private HashMap<String, Hold> holds = new HashMap<String, Hold>();
+	private HashMap<String, BundleFingerprint> fingerprints = new HashMap<String, BundleFingerprint>();
+
+	/*
+	 * A tree used by tasks of this process, and the shared lock
+	 * keeping other processes from deleting it
+	 */
+	private static class Hold {
+		private int count = 0;
+		private RandomAccessFile file;
+		private FileLock lock;
+	}
+
+	public ExtractionCache(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Set the size above which unused trees are deleted
+	 *
+	 * @param maxSize a size in bytes
+	 */
+	public synchronized void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Answer the installation folder of the given archive, extracting
+	 * it if no complete tree exists for its contents yet. The tree stays
+	 * on disk at least until {@link #release(File)} is called with the
+	 * returned folder.
+	 *
+	 * @param archive a zip or tar.gz archive
+	 * @param bundlesOnly whether to only extract the bundles of a zip archive
+	 * @return the installation folder within the extracted tree
+	 */
+	public synchronized File acquire(File archive, boolean bundlesOnly) {
+		String key = getKey(archive, bundlesOnly);
+		File entryDir = new File(cacheDir, key);
+		Hold hold = holds.get(key);
+		if( hold == null ) {
+			hold = lock(archive, entryDir, bundlesOnly);
+			holds.put(key, hold);
+		}
+		hold.count++;
+		new File(entryDir, MARKER_FILE_NAME).setLastModified(System.currentTimeMillis());
+		evict();
+		return new File(entryDir, BaselineUtils.ECLIPSE_FOLDER_NAME);
+	}
+
+	/*
+	 * Take a shared lock on a complete tree, first extracting it
+	 * under an exclusive lock if no process completed it yet
+	 */
+	private Hold lock(File archive, File entryDir, boolean bundlesOnly) {
+		File marker = new File(entryDir, MARKER_FILE_NAME);
+		File lockFile = new File(cacheDir, entryDir.getName() + LOCK_SUFFIX);
+		if( !cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+			throw new BuildException(NLS.bind(Messages.couldNotCreate, cacheDir.getAbsolutePath()));
+		}
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(lockFile, "rw"); //$NON-NLS-1$
+			FileChannel channel = file.getChannel();
+			while( true ) {
+				FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+				if( marker.isFile()) {
+					Hold hold = new Hold();
+					hold.file = file;
+					hold.lock = lock;
+					file = null;
+					return hold;
+				}
+				lock.release();
+				lock = channel.lock();
+				try {
+					// Another process may have completed it meanwhile
+					if( !marker.isFile())
+						extract(archive, entryDir, bundlesOnly);
+				} finally {
+					lock.release();
+				}
+			}
+		} catch(IOException ioe) {
+			throw new BuildException(NLS.bind(Messages.couldNotCreate, lockFile.getAbsolutePath()), ioe);
+		} finally {
+			close(file);
+		}
+	}
+
+	private static void close(RandomAccessFile file) {
+		if( file != null ) {
+			try {
+				file.close();
+			} catch(IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Release a folder answered by {@link #acquire(File, boolean)}.
+	 * The tree may be deleted once no task uses it anymore.
+	 *
+	 * @param installDir the installation folder
+	 */
+	public synchronized void release(File installDir) {
+		String key = installDir.getParentFile().getName();
+		Hold hold = holds.get(key);
+		if( hold == null )
+			return;
+		if( --hold.count == 0 ) {
+			holds.remove(key);
+			try {
+				hold.lock.release();
+			} catch(IOException ioe) {
+				// closing the file releases it as well
+			}
+			close(hold.file);
+		}
+		evict();
+	}
+
+	/*
+	 * Key a tree by the contents of the archive it was extracted from.
+	 * The digest is only computed again if the archive changed on disk.
+	 */
+	private String getKey(File archive, boolean bundlesOnly) {
+		String path = archive.getAbsolutePath();
+		BundleFingerprint fingerprint = fingerprints.get(path);
+		if( fingerprint == null || !fingerprint.matchesStat(archive)) {
+			try {
+				fingerprint = BundleFingerprint.create(archive);
+			} catch(IOException ioe) {
+				throw new BuildException(NLS.bind(Messages.fileDoesnotExist, path), ioe);
+			}
+			fingerprints.put(path, fingerprint);
+		}
+		return fingerprint.getDigest() + '-' + fingerprint.getSize() + (bundlesOnly ? BUNDLES_SUFFIX : ""); //$NON-NLS-1$
+	}
+
+	/*
+	 * Extract next to the final folder, and only move the tree
+	 * in place once it is complete
+	 */
+	private void extract(File archive, File entryDir, boolean bundlesOnly) {
+		File tempDir = new File(cacheDir, entryDir.getName() + TEMP_SUFFIX);
+		delete(tempDir);
+		delete(entryDir);
+		if( !tempDir.mkdirs()) {
+			throw new BuildException(NLS.bind(Messages.couldNotCreate, tempDir.getAbsolutePath()));
+		}
+		BaselineUtils.extractArchive(archive, tempDir, bundlesOnly);
+		Properties values = new Properties();
+		values.setProperty(KEY_SIZE, Long.toString(BundleFingerprint.stat(tempDir)[0]));
+		values.setProperty(KEY_ARCHIVE, archive.getAbsolutePath());
+		try {
+			writeMarker(new File(tempDir, MARKER_FILE_NAME), values);
+		} catch(IOException ioe) {
+			throw new BuildException(NLS.bind(Messages.couldNotCreate, tempDir.getAbsolutePath()), ioe);
+		}
+		if( !tempDir.renameTo(entryDir)) {
+			throw new BuildException(NLS.bind(Messages.couldNotCreate, entryDir.getAbsolutePath()));
+		}
+	}
+
+	private static void delete(File dir) {
+		if( dir.exists() && !Util.delete(dir)) {
+			throw new BuildException(NLS.bind(Messages.couldNotDelete, dir.getAbsolutePath()));
+		}
+	}
+
+	/*
+	 * Delete the least recently used trees nobody holds
+	 * until the cache fits its maximum size
+	 */
+	private void evict() {
+		File[] children = cacheDir.listFiles();
+		if( children == null )
+			return;
+		ArrayList<File> markers = new ArrayList<File>();
+		long total = 0;
+		for( int i = 0; i < children.length; i++ ) {
+			File marker = new File(children[i], MARKER_FILE_NAME);
+			if( marker.isFile()) {
+				markers.add(marker);
+				total += getTreeSize(marker);
+			}
+		}
+		if( total <= maxSize )
+			return;
+		Collections.sort(markers, new Comparator<File>() {
+			public int compare(File o1, File o2) {
+				long l1 = o1.lastModified();
+				long l2 = o2.lastModified();
+				return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+			}
+		});
+		for( int i = 0; i < markers.size() && total > maxSize; i++ ) {
+			File marker = markers.get(i);
+			File entryDir = marker.getParentFile();
+			if( holds.containsKey(entryDir.getName()))
+				continue;
+			long size = getTreeSize(marker);
+			if( deleteUnused(entryDir, marker))
+				total -= size;
+		}
+	}
+
+	/*
+	 * Delete a tree unless a task of another process holds it
+	 */
+	private boolean deleteUnused(File entryDir, File marker) {
+		File lockFile = new File(cacheDir, entryDir.getName() + LOCK_SUFFIX);
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(lockFile, "rw"); //$NON-NLS-1$
+			FileLock lock = file.getChannel().tryLock();
+			if( lock == null )
+				return false;
+			try {
+				// Drop the marker first, a partly deleted tree must not be reused
+				return marker.delete() && Util.delete(entryDir);
+			} finally {
+				lock.release();
+			}
+		} catch(IOException ioe) {
+			return false;
+		} finally {
+			close(file);
+		}
+	}
+
+	private static long getTreeSize(File marker) {
+		Properties values = readMarker(marker);
+		try {
+			return Long.parseLong(values.getProperty(KEY_SIZE, "0")); //$NON-NLS-1$
+		} catch(NumberFormatException nfe) {
+			return 0;
+		}
+	}
+
+	private static Properties readMarker(File marker) {
+		Properties values = new Properties();
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(marker));
+			values.load(in);
+		} catch(IOException ioe) {
+			// an unreadable marker counts as an empty tree
+		} finally {
+			if( in != null ) {
+				try {
+					in.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+		}
+		return values;
+	}
+
+	private static void writeMarker(File marker, Properties values) throws IOException {
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(marker));
+			values.store(out, null);
+			out.close();
+			out = null;
+		} finally {
+			if( out != null ) {
+				try {
+					out.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+}
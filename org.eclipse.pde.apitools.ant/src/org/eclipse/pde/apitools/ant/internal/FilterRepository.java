@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.internal;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.pde.api.tools.internal.IApiCoreConstants;
+import org.eclipse.pde.apitools.ant.internal.AntFilterStore.CompiledFilters;
+
+/**
+ * Holds the compiled filters of the .api_filters files read in this
+ * process, so that every file is parsed once no matter how many filter
+ * stores or tasks ask for it.
+ *
+ * Entries are keyed by the path of the filter file and are parsed again
+ * when its modification time or size changed. The number of entries is
+ * bounded, the least recently used file is dropped first.
+ */
+public class FilterRepository {
+	private static final int DEFAULT_CAPACITY = 512;
+
+	private static FilterRepository instance;
+
+	public static synchronized FilterRepository getDefault() {
+		if( instance == null )
+			instance = new FilterRepository(DEFAULT_CAPACITY);
+		return instance;
+	}
+
+	private static class Entry {
+		private long lastModified;
+		private long length;
+		private Map<String, CompiledFilters> filters;
+
+		private Entry(long lastModified, long length, Map<String, CompiledFilters> filters) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.filters = filters;
+		}
+	}
+
+	private final int capacity;
+	private LinkedHashMap<String, Entry> entries;
+
+	public FilterRepository(final int capacity) {
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > FilterRepository.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Answer the compiled filters of a component. The returned map
+	 * is shared and cannot be modified.
+	 *
+	 * @param filtersRoot the root of the filter files
+	 * @param componentID the component
+	 * @return the filters per type name, never <code>null</code>
+	 */
+	Map<String, CompiledFilters> getFilters(String filtersRoot, String componentID) {
+		File filterFile = new File(new File(filtersRoot, componentID), IApiCoreConstants.API_FILTERS_XML_NAME);
+		String key = filterFile.getAbsolutePath();
+		long lastModified = filterFile.lastModified();
+		long length = filterFile.length();
+		if( lastModified == 0 ) {
+			// No filter file, or it cannot be read
+			synchronized(this) {
+				entries.remove(key);
+			}
+			return Collections.emptyMap();
+		}
+		synchronized(this) {
+			Entry e = entries.get(key);
+			if( e != null && e.lastModified == lastModified && e.length == length )
+				return e.filters;
+		}
+		// Parse outside the lock, at worst two threads parse the same file once
+		Map<String, CompiledFilters> filters = AntFilterStore.load(filterFile);
+		synchronized(this) {
+			entries.put(key, new Entry(lastModified, length, filters));
+		}
+		return filters;
+	}
+
+	/**
+	 * Forget all filters read so far
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+}
@@ -14,7 +14,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 
 import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport.AnalysisSkippedReport;
-import org.eclipse.pde.apitools.ant.util.IMemento;
+import org.eclipse.pde.apitools.ant.util.IMementoWriter;
 
 public class IgnoredReport extends RootReport {
 	public static final String ROOT_ELEMENT = "report";
@@ -28,11 +28,11 @@ public class IgnoredReport extends RootReport {
 		super("report");
 		this.list = ignored;
 	}
-	protected void fillMemento(IMemento parentContext) {
+	protected void fillMemento(IMementoWriter parentContext) {
 		Iterator<AnalysisSkippedReport> i = list.iterator();
 		while(i.hasNext()) {
 			AnalysisSkippedReport asr = i.next();
-			IMemento next = parentContext.createChild(BUNDLE_ELEMENT);
+			IMementoWriter next = parentContext.createChild(BUNDLE_ELEMENT);
 			next.putString(BUNDLE_NAME_ATTR, asr.getId());
 			next.putString(BUNDLE_CAUSE_ATTR, asr.getCause());
 		}
@@ -23,6 +23,10 @@ import org.eclipse.pde.apitools.ant.util.BaselineUtils;
 /*
  * This class is not fully tested at this time and is not advised
  * to be used until further notice. 
+ * 
+ * It never reuses previous reports: those are only reused by the 
+ * apiAnalysis task with its incremental attribute set, which writes 
+ * the fingerprints a later run compares against.
  */
 public class IncrementalBaselineAnalysisRunner extends AbstractAnalysisRunner {
 	public static final String SUMMARY_REPORT_NAME = "ANALYSIS_SUMMARY";
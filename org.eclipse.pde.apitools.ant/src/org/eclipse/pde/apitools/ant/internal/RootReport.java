@@ -10,7 +10,11 @@
  *******************************************************************************/
 package org.eclipse.pde.apitools.ant.internal;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import org.eclipse.pde.apitools.ant.util.IStyleSheetProvider;
+import org.eclipse.pde.apitools.ant.util.StreamingMemento;
 import org.eclipse.pde.apitools.ant.util.XMLMemento;
 
 public abstract class RootReport extends AbstractReport implements IStyleSheetProvider {
@@ -32,14 +36,41 @@ public abstract class RootReport extends AbstractReport implements IStyleSheetPr
 		return xml;
 	}
 	
+	/**
+	 * Write this report to the given stream as it is filled, 
+	 * without building the whole document in memory. 
+	 * The output is the same document as saving {@link #generateMemento()}.
+	 * 
+	 * @param os the stream to write to, which is left open
+	 * @throws IOException if the report cannot be written
+	 */
+	public void write(OutputStream os) throws IOException {
+		StreamingMemento xml = StreamingMemento.createWriteRoot(entityName, os);
+		addStylesheetInstructions(xml);
+		fillMemento(xml);
+		xml.close();
+	}
+	
 	protected void addStylesheetInstructions(XMLMemento memento) {
+		String data = getStylesheetInstruction();
+		if( data != null )
+			memento.addProcessingInstruction("xml-stylesheet", data);
+	}
+	
+	protected void addStylesheetInstructions(StreamingMemento memento) {
+		String data = getStylesheetInstruction();
+		if( data != null )
+			memento.addProcessingInstruction("xml-stylesheet", data);
+	}
+	
+	private String getStylesheetInstruction() {
 		if( this instanceof IStyleSheetProvider) {
 			String s = ((IStyleSheetProvider)this).getStyleSheetPath();
 			if( s != null ) {
-				memento.addProcessingInstruction("xml-stylesheet",
-						"type=\"text/xsl\" href=\"" + s + "\"");
+				return "type=\"text/xsl\" href=\"" + s + "\"";
 			}
 		}
+		return null;
 	}
 	
 	public String getStyleSheetPath() {
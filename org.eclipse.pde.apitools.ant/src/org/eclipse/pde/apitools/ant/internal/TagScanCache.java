@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.eclipse.pde.api.tools.internal.ApiDescription;
+import org.eclipse.pde.api.tools.internal.provisional.ApiDescriptionVisitor;
+import org.eclipse.pde.api.tools.internal.provisional.Factory;
+import org.eclipse.pde.api.tools.internal.provisional.IApiAnnotations;
+import org.eclipse.pde.api.tools.internal.provisional.RestrictionModifiers;
+import org.eclipse.pde.api.tools.internal.provisional.descriptors.IElementDescriptor;
+import org.eclipse.pde.api.tools.internal.provisional.descriptors.IFieldDescriptor;
+import org.eclipse.pde.api.tools.internal.provisional.descriptors.IMethodDescriptor;
+import org.eclipse.pde.api.tools.internal.provisional.descriptors.IReferenceTypeDescriptor;
+import org.eclipse.pde.apitools.ant.util.BundleFingerprint;
+import org.eclipse.pde.apitools.ant.util.IMemento;
+import org.eclipse.pde.apitools.ant.util.XMLMemento;
+
+/**
+ * Remembers the restrictions the tag scanner found in each source file,
+ * keyed by the digest of the file contents, the compiler compliance and
+ * the digest of the dependencies the file was scanned against, so that
+ * an unchanged file does not need to be parsed again.
+ *
+ * The cache also remembers the fingerprints of the dependency binaries,
+ * so that their digests are only computed again once their size or
+ * modification time changed.
+ *
+ * Several projects may share one cache file. Entries are only dropped
+ * once their file no longer exists.
+ */
+public class TagScanCache {
+	private static final String ELEMENT_CACHE = "tagScanCache"; //$NON-NLS-1$
+	private static final String ELEMENT_UNIT = "unit"; //$NON-NLS-1$
+	private static final String ELEMENT_RESTRICTION = "restriction"; //$NON-NLS-1$
+	private static final String ELEMENT_BINARY = "binary"; //$NON-NLS-1$
+	private static final String ATTR_VERSION = "version"; //$NON-NLS-1$
+	private static final String ATTR_PATH = "path"; //$NON-NLS-1$
+	private static final String ATTR_DIGEST = "digest"; //$NON-NLS-1$
+	private static final String ATTR_COMPLIANCE = "compliance"; //$NON-NLS-1$
+	private static final String ATTR_DEPENDENCIES = "dependencies"; //$NON-NLS-1$
+	private static final String ATTR_SIZE = "size"; //$NON-NLS-1$
+	private static final String ATTR_MODIFIED = "modified"; //$NON-NLS-1$
+	private static final String ATTR_KIND = "kind"; //$NON-NLS-1$
+	private static final String ATTR_TYPE = "type"; //$NON-NLS-1$
+	private static final String ATTR_NAME = "name"; //$NON-NLS-1$
+	private static final String ATTR_SIGNATURE = "signature"; //$NON-NLS-1$
+	private static final String ATTR_RESTRICTIONS = "restrictions"; //$NON-NLS-1$
+	private static final String VERSION = "3"; //$NON-NLS-1$
+
+	/**
+	 * A restriction set on a type, method or field
+	 */
+	public static class Restriction {
+		private int kind;
+		private String type;
+		private String name;
+		private String signature;
+		private int restrictions;
+
+		private Restriction(int kind, String type, String name, String signature, int restrictions) {
+			this.kind = kind;
+			this.type = type;
+			this.name = name;
+			this.signature = signature;
+			this.restrictions = restrictions;
+		}
+
+		private IElementDescriptor getElement() {
+			switch(kind) {
+				case IElementDescriptor.METHOD:
+					return Factory.methodDescriptor(type, name, signature);
+				case IElementDescriptor.FIELD:
+					return Factory.fieldDescriptor(type, name);
+				default:
+					return Factory.typeDescriptor(type);
+			}
+		}
+	}
+
+	private static class Unit {
+		private String digest;
+		private String compliance;
+		private String dependencies;
+		private Restriction[] restrictions;
+
+		private Unit(String digest, String compliance, String dependencies, Restriction[] restrictions) {
+			this.digest = digest;
+			this.compliance = compliance;
+			this.dependencies = dependencies;
+			this.restrictions = restrictions;
+		}
+	}
+
+	private HashMap<String, Unit> units = new HashMap<String, Unit>();
+	private HashMap<String, BundleFingerprint> binaries = new HashMap<String, BundleFingerprint>();
+	private boolean dirty = false;
+
+	private TagScanCache() {
+	}
+
+	/**
+	 * Load a cache written by {@link #save(File)}
+	 *
+	 * @param file the cache file
+	 * @return the cache, empty if the file is missing or cannot be read
+	 */
+	public static TagScanCache load(File file) {
+		TagScanCache cache = new TagScanCache();
+		if( !file.isFile())
+			return cache;
+		IMemento root = null;
+		try {
+			root = XMLMemento.loadMemento(file.getAbsolutePath());
+		} catch(IOException ioe) {
+			return cache;
+		}
+		if( root == null || !VERSION.equals(root.getString(ATTR_VERSION))) {
+			// Drop the file on the next save
+			cache.dirty = true;
+			return cache;
+		}
+		IMemento[] binaries = root.getChildren(ELEMENT_BINARY);
+		for( int i = 0; i < binaries.length; i++ ) {
+			String path = binaries[i].getString(ATTR_PATH);
+			try {
+				cache.binaries.put(path, new BundleFingerprint(path, Long.parseLong(binaries[i].getString(ATTR_SIZE)),
+						Long.parseLong(binaries[i].getString(ATTR_MODIFIED)), binaries[i].getString(ATTR_DIGEST)));
+			} catch(NumberFormatException nfe) {
+				cache.dirty = true;
+			}
+		}
+		IMemento[] units = root.getChildren(ELEMENT_UNIT);
+		for( int i = 0; i < units.length; i++ ) {
+			IMemento[] children = units[i].getChildren(ELEMENT_RESTRICTION);
+			Restriction[] restrictions = new Restriction[children.length];
+			for( int j = 0; j < children.length; j++ ) {
+				restrictions[j] = new Restriction(children[j].getInteger(ATTR_KIND).intValue(),
+						children[j].getString(ATTR_TYPE), children[j].getString(ATTR_NAME),
+						children[j].getString(ATTR_SIGNATURE), children[j].getInteger(ATTR_RESTRICTIONS).intValue());
+			}
+			cache.units.put(units[i].getString(ATTR_PATH), new Unit(units[i].getString(ATTR_DIGEST),
+					units[i].getString(ATTR_COMPLIANCE), units[i].getString(ATTR_DEPENDENCIES), restrictions));
+		}
+		return cache;
+	}
+
+	/**
+	 * Answer the digest of the contents of a dependency binary, computing
+	 * it again only if its size or modification time changed since
+	 *
+	 * @param file a jar file or a class folder
+	 * @return the digest of its contents
+	 * @throws IOException if the file cannot be read
+	 */
+	public synchronized String getBinaryDigest(File file) throws IOException {
+		String path = file.getAbsolutePath();
+		BundleFingerprint fingerprint = binaries.get(path);
+		if( fingerprint == null || !fingerprint.matchesStat(file)) {
+			fingerprint = BundleFingerprint.getFingerprint(file);
+			binaries.put(path, fingerprint);
+			dirty = true;
+		}
+		return fingerprint.getDigest();
+	}
+
+	/**
+	 * @param path the absolute path of a source file
+	 * @param digest the digest of its contents
+	 * @param compliance the compiler compliance it is scanned with
+	 * @param dependencies the digest of the binaries it is scanned against
+	 * @return the restrictions found by the last scan of the same contents, or <code>null</code>
+	 */
+	public synchronized Restriction[] get(String path, String digest, String compliance, String dependencies) {
+		Unit unit = units.get(path);
+		if( unit == null || !unit.digest.equals(digest) || !String.valueOf(unit.compliance).equals(compliance)
+				|| !String.valueOf(unit.dependencies).equals(dependencies))
+			return null;
+		return unit.restrictions;
+	}
+
+	public synchronized void put(String path, String digest, String compliance, String dependencies, Restriction[] restrictions) {
+		units.put(path, new Unit(digest, compliance, dependencies, restrictions));
+		dirty = true;
+	}
+
+	/**
+	 * Write the cache if it changed during this run
+	 *
+	 * @param file the cache file
+	 * @throws IOException if the file cannot be written
+	 */
+	public synchronized void save(File file) throws IOException {
+		if( removeMissing(units.keySet()) | removeMissing(binaries.keySet()))
+			dirty = true;
+		if( !dirty )
+			return;
+		XMLMemento root = XMLMemento.createWriteRoot(ELEMENT_CACHE);
+		root.putString(ATTR_VERSION, VERSION);
+		Iterator<BundleFingerprint> fingerprints = binaries.values().iterator();
+		while(fingerprints.hasNext()) {
+			BundleFingerprint fingerprint = fingerprints.next();
+			IMemento child = root.createChild(ELEMENT_BINARY);
+			child.putString(ATTR_PATH, fingerprint.getPath());
+			child.putString(ATTR_SIZE, String.valueOf(fingerprint.getSize()));
+			child.putString(ATTR_MODIFIED, String.valueOf(fingerprint.getLastModified()));
+			child.putString(ATTR_DIGEST, fingerprint.getDigest());
+		}
+		Iterator<String> it = units.keySet().iterator();
+		while(it.hasNext()) {
+			String path = it.next();
+			Unit unit = units.get(path);
+			IMemento child = root.createChild(ELEMENT_UNIT);
+			child.putString(ATTR_PATH, path);
+			child.putString(ATTR_DIGEST, unit.digest);
+			child.putString(ATTR_COMPLIANCE, unit.compliance);
+			if( unit.dependencies != null )
+				child.putString(ATTR_DEPENDENCIES, unit.dependencies);
+			for( int i = 0; i < unit.restrictions.length; i++ ) {
+				Restriction r = unit.restrictions[i];
+				IMemento restriction = child.createChild(ELEMENT_RESTRICTION);
+				restriction.putInteger(ATTR_KIND, r.kind);
+				restriction.putString(ATTR_TYPE, r.type);
+				if( r.name != null )
+					restriction.putString(ATTR_NAME, r.name);
+				if( r.signature != null )
+					restriction.putString(ATTR_SIGNATURE, r.signature);
+				restriction.putInteger(ATTR_RESTRICTIONS, r.restrictions);
+			}
+		}
+		File parent = file.getParentFile();
+		if( parent != null && !parent.exists())
+			parent.mkdirs();
+		root.saveToFile(file.getAbsolutePath());
+		dirty = false;
+	}
+
+	/*
+	 * Drop the paths of files that no longer exist, answering whether any was dropped
+	 */
+	private static boolean removeMissing(Set<String> paths) {
+		boolean removed = false;
+		Iterator<String> it = paths.iterator();
+		while(it.hasNext()) {
+			if( !new File(it.next()).exists()) {
+				it.remove();
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Collect the restrictions a scan left in the given description
+	 *
+	 * @param description the description of a single scanned file
+	 * @return the restrictions
+	 */
+	public static Restriction[] collect(ApiDescription description) {
+		final ArrayList<Restriction> restrictions = new ArrayList<Restriction>();
+		description.accept(new ApiDescriptionVisitor() {
+			public boolean visitElement(IElementDescriptor element, IApiAnnotations annotations) {
+				int modifiers = annotations.getRestrictions();
+				if( modifiers == RestrictionModifiers.NO_RESTRICTIONS )
+					return true;
+				switch(element.getElementType()) {
+					case IElementDescriptor.TYPE:
+						restrictions.add(new Restriction(IElementDescriptor.TYPE,
+								((IReferenceTypeDescriptor)element).getQualifiedName(), null, null, modifiers));
+						break;
+					case IElementDescriptor.METHOD:
+						IMethodDescriptor method = (IMethodDescriptor)element;
+						restrictions.add(new Restriction(IElementDescriptor.METHOD,
+								method.getEnclosingType().getQualifiedName(), method.getName(),
+								method.getSignature(), modifiers));
+						break;
+					case IElementDescriptor.FIELD:
+						IFieldDescriptor field = (IFieldDescriptor)element;
+						restrictions.add(new Restriction(IElementDescriptor.FIELD,
+								field.getEnclosingType().getQualifiedName(), field.getName(), null, modifiers));
+						break;
+				}
+				return true;
+			}
+		}, null);
+		return restrictions.toArray(new Restriction[restrictions.size()]);
+	}
+
+	/**
+	 * Set the given restrictions on a description, as the scan that found them did
+	 *
+	 * @param restrictions restrictions found by a scan
+	 * @param description the description to update
+	 */
+	public static void apply(Restriction[] restrictions, ApiDescription description) {
+		for( int i = 0; i < restrictions.length; i++ ) {
+			description.setRestrictions(restrictions[i].getElement(), restrictions[i].restrictions);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.pde.api.tools.internal.model.ArchiveApiTypeContainer;
+import org.eclipse.pde.api.tools.internal.provisional.ApiPlugin;
+import org.eclipse.pde.api.tools.internal.provisional.model.ApiTypeContainerVisitor;
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiTypeContainer;
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiTypeRoot;
+
+/**
+ * Class file containers of archives shared by all tasks of a build.
+ *
+ * Archives are keyed by their canonical path, and opened again once
+ * their size or modification time changed. A container handed out
+ * keeps the index of its archive for the next task that asks for the
+ * same archive, so the archive is not listed again.
+ *
+ * Containers are leased: each {@link #acquire(String)} must be matched
+ * by a {@link #release(IApiTypeContainer)} once the caller is done with
+ * the container. Once more than the maximum number of archives are held,
+ * the least recently used ones that nobody leases are closed and dropped.
+ * Leased archives are never closed, so the pool only holds more than the
+ * maximum while more archives are leased at once.
+ *
+ * Containers handed out may be used from several threads at once.
+ * They must not be closed by the callers.
+ */
+public class TypeContainerPool {
+	public static final int DEFAULT_MAX_ARCHIVES = 64;
+
+	private static final TypeContainerPool pool = new TypeContainerPool(DEFAULT_MAX_ARCHIVES);
+
+	/**
+	 * @return the pool shared by all tasks of this process
+	 */
+	public static TypeContainerPool getDefault() {
+		return pool;
+	}
+
+	/*
+	 * An archive container safe to share between threads
+	 */
+	private static class SharedArchiveTypeContainer extends ArchiveApiTypeContainer {
+		private Entry entry;
+
+		private SharedArchiveTypeContainer(String path) {
+			super(null, path);
+		}
+
+		public synchronized void accept(ApiTypeContainerVisitor visitor) throws CoreException {
+			super.accept(visitor);
+		}
+
+		public synchronized IApiTypeRoot findTypeRoot(String qualifiedName) throws CoreException {
+			return super.findTypeRoot(qualifiedName);
+		}
+
+		public synchronized String[] getPackageNames() throws CoreException {
+			return super.getPackageNames();
+		}
+
+		public synchronized void close() throws CoreException {
+			super.close();
+		}
+	}
+
+	private static class Entry {
+		private long size;
+		private long modified;
+		private SharedArchiveTypeContainer container;
+		private int leases = 0;
+		private boolean dropped = false;
+
+		private Entry(long size, long modified, SharedArchiveTypeContainer container) {
+			this.size = size;
+			this.modified = modified;
+			this.container = container;
+			container.entry = this;
+		}
+	}
+
+	private final int maxArchives;
+	private LinkedHashMap<String, Entry> entries;
+	private int hits = 0;
+	private int misses = 0;
+
+	public TypeContainerPool(int maxArchives) {
+		this.maxArchives = maxArchives;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	}
+
+	/**
+	 * Lease the container of the given archive, creating it if it
+	 * is not held or the archive changed since.
+	 *
+	 * @param location the path of a jar or zip file
+	 * @return the container of the archive, to be given back to {@link #release(IApiTypeContainer)}
+	 */
+	public synchronized IApiTypeContainer acquire(String location) {
+		File file = new File(location);
+		String key;
+		try {
+			key = file.getCanonicalPath();
+		} catch(IOException ioe) {
+			key = file.getAbsolutePath();
+		}
+		long size = file.length();
+		long modified = file.lastModified();
+		Entry entry = entries.get(key);
+		if( entry != null ) {
+			if( entry.size == size && entry.modified == modified ) {
+				hits++;
+				entry.leases++;
+				return entry.container;
+			}
+			// The previous archive is closed once its last lease is released
+			entries.remove(key);
+			drop(entry);
+		}
+		misses++;
+		entry = new Entry(size, modified, new SharedArchiveTypeContainer(key));
+		entry.leases++;
+		entries.put(key, entry);
+		evict();
+		return entry.container;
+	}
+
+	/**
+	 * Give back a container leased from this pool. The archive
+	 * stays open for the next lease, unless it has to be evicted.
+	 *
+	 * @param container a container answered by {@link #acquire(String)}
+	 */
+	public synchronized void release(IApiTypeContainer container) {
+		Entry entry = ((SharedArchiveTypeContainer) container).entry;
+		if( entry.leases == 0 )
+			throw new IllegalStateException("Archive container released more often than acquired"); //$NON-NLS-1$
+		entry.leases--;
+		if( entry.dropped ) {
+			if( entry.leases == 0 )
+				close(entry);
+		} else {
+			evict();
+		}
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while( entries.size() > maxArchives && it.hasNext()) {
+			Entry eldest = it.next().getValue();
+			if( eldest.leases > 0 )
+				continue;
+			it.remove();
+			drop(eldest);
+		}
+	}
+
+	private static void drop(Entry entry) {
+		entry.dropped = true;
+		if( entry.leases == 0 )
+			close(entry);
+	}
+
+	private static void close(Entry entry) {
+		try {
+			entry.container.close();
+		} catch(CoreException ce) {
+			ApiPlugin.log(ce);
+		}
+	}
+
+	/**
+	 * Close and drop all archives nobody leases
+	 */
+	public synchronized void dispose() {
+		Iterator<Entry> it = entries.values().iterator();
+		while(it.hasNext()) {
+			Entry entry = it.next();
+			if( entry.leases > 0 )
+				continue;
+			it.remove();
+			drop(entry);
+		}
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+}
@@ -15,7 +15,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 
-import org.eclipse.pde.apitools.ant.util.IMemento;
+import org.eclipse.pde.apitools.ant.util.IMementoWriter;
 
 
 public class WrapperReport extends RootReport {
@@ -25,7 +25,7 @@ public class WrapperReport extends RootReport {
 		super(entityName);
 		this.problemTypes = problemTypes;
 	}
-	protected void fillChildren(IMemento xml) {
+	protected void fillChildren(IMementoWriter xml) {
 		ArrayList<AbstractReport> tmp = new ArrayList<AbstractReport>();
 		tmp.addAll(children);
 		Collections.sort(tmp, new Comparator<AbstractReport>(){
@@ -46,7 +46,7 @@ public class WrapperReport extends RootReport {
 		Collections.reverse(tmp);
 		Iterator<AbstractReport> cIt = tmp.iterator();
 		while(cIt.hasNext()) {
-			IMemento bundle = xml.createChild("bundle");
+			IMementoWriter bundle = xml.createChild("bundle");
 			ApiAnalysisReport next = (ApiAnalysisReport)cIt.next();
 			next.fillMemento(bundle, problemTypes);
 		}
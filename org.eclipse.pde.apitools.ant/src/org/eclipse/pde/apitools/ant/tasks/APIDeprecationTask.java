@@ -27,6 +27,7 @@ import org.eclipse.pde.api.tools.internal.provisional.comparator.ApiComparator;
 import org.eclipse.pde.api.tools.internal.provisional.comparator.IDelta;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
 import org.eclipse.pde.api.tools.internal.util.FilteredElements;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 /**
  * Ant task to retrieve all deprecation changes (addition or removal) between two api baselines
@@ -73,18 +74,17 @@ public class APIDeprecationTask extends CommonUtilsTask {
 				System.out.println("No include list location"); //$NON-NLS-1$
 			}
 		}
+		Metrics.Stopwatch total = metrics.start(Metrics.TOTAL);
 		// unzip reference
-		long time = 0;
-		if (this.debug) {
-			time = System.currentTimeMillis();
-		}
+		Metrics.Stopwatch watch = metrics.start(Metrics.EXTRACTION);
 		File referenceInstallDir = extractSDK(REFERENCE, this.referenceBaselineLocation);
 
 		File baselineInstallDir = extractSDK(CURRENT, this.currentBaselineLocation);
+		long time = watch.stop();
 		if (this.debug) {
-			System.out.println("Extraction of both archives : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-			time = System.currentTimeMillis();
+			System.out.println("Extraction of both archives : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		watch = metrics.start(Metrics.BASELINES_LOAD);
 		// run the comparison
 		// create baseline for the reference
 		IApiBaseline referenceBaseline = createBaseline(REFERENCE_BASELINE_NAME, referenceInstallDir.getAbsolutePath(), this.eeFileLocation);
@@ -107,25 +107,27 @@ public class APIDeprecationTask extends CommonUtilsTask {
 		}
 		
 		IDelta delta = null;
+		time = watch.stop();
 		if (this.debug) {
-			System.out.println("Creation of both baselines : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-			time = System.currentTimeMillis();
+			System.out.println("Creation of both baselines : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		watch = metrics.start(Metrics.DELTA);
 		try {
 			delta = ApiComparator.compare(referenceBaseline, currentBaseline, VisibilityModifiers.API, true, null);
 		} finally {
+			time = watch.stop();
 			if (this.debug) {
-				System.out.println("API deprecation check : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-				time = System.currentTimeMillis();
+				System.out.println("API deprecation check : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
+			watch = metrics.start(Metrics.CLEANUP);
 			referenceBaseline.dispose();
 			currentBaseline.dispose();
 			StubApiComponent.disposeAllCaches();
 			deleteBaseline(this.referenceBaselineLocation, referenceInstallDir);
 			deleteBaseline(this.currentBaselineLocation, baselineInstallDir);
+			time = watch.stop();
 			if (this.debug) {
-				System.out.println("Cleanup : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-				time = System.currentTimeMillis();
+				System.out.println("Cleanup : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
 		}
 		if (delta == null) {
@@ -152,6 +154,7 @@ public class APIDeprecationTask extends CommonUtilsTask {
 				}
 			}
 			
+			watch = metrics.start(Metrics.REPORT_SERIALIZATION);
 			BufferedWriter writer = null;
 			try {
 				writer = new BufferedWriter(new FileWriter(outputFile));
@@ -179,10 +182,14 @@ public class APIDeprecationTask extends CommonUtilsTask {
 					// ignore
 				}
 			}
+			time = watch.stop();
 			if (this.debug) {
-				System.out.println("Report generation : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+				System.out.println("Report generation : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
 		}
+		total.stop();
+		File reportFolder = new File(this.reportLocation);
+		saveMetrics(reportFolder.isDirectory() ? reportFolder.getPath() : reportFolder.getParent());
 	}
 	/**
 	 * Set the debug value.
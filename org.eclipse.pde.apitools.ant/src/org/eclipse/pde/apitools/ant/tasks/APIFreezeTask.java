@@ -32,6 +32,7 @@ import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiScope;
 import org.eclipse.pde.api.tools.internal.util.FilteredElements;
 import org.eclipse.pde.apitools.ant.util.ApiToolsUtils;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 /**
  * Ant task to run the API freeze check during Eclipse build.
@@ -98,18 +99,17 @@ public class APIFreezeTask extends CommonUtilsTask {
 				|| !this.reportLocation.substring(index).toLowerCase().equals(".xml")) { //$NON-NLS-1$
 			throw new BuildException(Messages.deltaReportTask_xmlFileLocationShouldHaveAnXMLExtension);
 		}
+		Metrics.Stopwatch total = metrics.start(Metrics.TOTAL);
 		// unzip reference
-		long time = 0;
-		if (this.debug) {
-			time = System.currentTimeMillis();
-		}
+		Metrics.Stopwatch watch = metrics.start(Metrics.EXTRACTION);
 		File referenceInstallDir = extractSDK(REFERENCE, this.referenceBaselineLocation);
 
 		File baselineInstallDir = extractSDK(CURRENT, this.currentBaselineLocation);
+		long time = watch.stop();
 		if (this.debug) {
-			System.out.println("Extraction of both archives : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-			time = System.currentTimeMillis();
+			System.out.println("Extraction of both archives : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		watch = metrics.start(Metrics.BASELINES_LOAD);
 		// run the comparison
 		// create baseline for the reference
 		IApiBaseline referenceBaseline = createBaseline(REFERENCE_BASELINE_NAME, referenceInstallDir.getAbsolutePath(), this.eeFileLocation);
@@ -132,27 +132,29 @@ public class APIFreezeTask extends CommonUtilsTask {
 		}
 		
 		IDelta delta = null;
+		time = watch.stop();
 		if (this.debug) {
-			System.out.println("Creation of both baselines : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-			time = System.currentTimeMillis();
+			System.out.println("Creation of both baselines : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		watch = metrics.start(Metrics.DELTA);
 		try {
 			delta = ApiComparator.compare(getScope(currentBaseline), referenceBaseline, VisibilityModifiers.API, true, null);
 		} catch (CoreException e) {
 			// ignore
 		} finally {
+			time = watch.stop();
 			if (this.debug) {
-				System.out.println("API freeze check : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-				time = System.currentTimeMillis();
+				System.out.println("API freeze check : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
+			watch = metrics.start(Metrics.CLEANUP);
 			referenceBaseline.dispose();
 			currentBaseline.dispose();
 			StubApiComponent.disposeAllCaches();
 			deleteBaseline(this.referenceBaselineLocation, referenceInstallDir);
 			deleteBaseline(this.currentBaselineLocation, baselineInstallDir);
+			time = watch.stop();
 			if (this.debug) {
-				System.out.println("Cleanup : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-				time = System.currentTimeMillis();
+				System.out.println("Cleanup : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
 		}
 		if (delta == null) {
@@ -161,6 +163,7 @@ public class APIFreezeTask extends CommonUtilsTask {
 		}
 		if (delta != ApiComparator.NO_DELTA) {
 			// dump the report in the appropriate folder
+			watch = metrics.start(Metrics.REPORT_SERIALIZATION);
 			BufferedWriter writer = null;
 			try {
 				writer = new BufferedWriter(new FileWriter(outputFile));
@@ -188,10 +191,13 @@ public class APIFreezeTask extends CommonUtilsTask {
 					// ignore
 				}
 			}
+			time = watch.stop();
 			if (this.debug) {
-				System.out.println("Report generation : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+				System.out.println("Report generation : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
 		}
+		total.stop();
+		saveMetrics(new File(this.reportLocation).getParent());
 	}
 	private IApiScope getScope(IApiBaseline currentBaseline) {
 		return ApiToolsUtils.getResolvableScope(currentBaseline, debug);
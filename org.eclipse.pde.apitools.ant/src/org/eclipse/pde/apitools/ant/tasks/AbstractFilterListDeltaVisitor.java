@@ -97,13 +97,23 @@ public abstract class AbstractFilterListDeltaVisitor extends DeltaXmlVisitor {
 		return (this.flags & CHECK_OTHER) != 0;
 	}
 	
+	/**
+	 * Called for each leaf delta that passes the filters. By default 
+	 * the delta is added to the document built by {@link DeltaXmlVisitor}.
+	 * 
+	 * @param delta the delta to report
+	 */
+	protected void acceptDelta(IDelta delta) {
+		super.processLeafDelta(delta);
+	}
+	
 	protected void processLeafDelta(IDelta delta) {
 		if( !isExcluded(delta))
 			return;
 		
 		// IF we're handling deprecations, and this is a dep. delta, process it
 		if (shouldProcessDeprecations() && isDeprecationDelta(delta)) {
-			super.processLeafDelta(delta);
+			acceptDelta(delta);
 		}
 		
 		// We're not processing other events, so exit early
@@ -117,17 +127,17 @@ public abstract class AbstractFilterListDeltaVisitor extends DeltaXmlVisitor {
 				case IDelta.ADDED :
 					if (Flags.isPublic(delta.getNewModifiers()) && shouldProcessPublicCompatibleAddition(delta)) {
 						// public compatible additions
-						super.processLeafDelta(delta);
+						acceptDelta(delta);
 					} else if (Flags.isProtected(delta.getNewModifiers()) && !RestrictionModifiers.isExtendRestriction(delta.getCurrentRestrictions())) {
 						// Protected compatible additions
 						if( shouldProcessProtectedCompatibleAddition(delta))
-							super.processLeafDelta(delta);
+							acceptDelta(delta);
 					}
 					if (delta.getElementType() == IDelta.API_BASELINE_ELEMENT_TYPE) {
 						switch(delta.getKind()) {
 							case IDelta.ADDED :
 								if (delta.getFlags() == IDelta.API_COMPONENT) {
-									super.processLeafDelta(delta);
+									acceptDelta(delta);
 								}
 						}
 					}
@@ -136,7 +146,7 @@ public abstract class AbstractFilterListDeltaVisitor extends DeltaXmlVisitor {
 						switch(delta.getFlags()) {
 							case IDelta.MAJOR_VERSION :
 							case IDelta.MINOR_VERSION :
-								super.processLeafDelta(delta);
+								acceptDelta(delta);
 						}
 					break;
 			}
@@ -145,11 +155,11 @@ public abstract class AbstractFilterListDeltaVisitor extends DeltaXmlVisitor {
 			switch(delta.getKind()) {
 				case IDelta.ADDED :
 					if( shouldProcessIncompatibleAddition(delta))
-						super.processLeafDelta(delta);
+						acceptDelta(delta);
 					break;
 				case IDelta.REMOVED :
 					if( shouldProcessIncompatibleRemoval(delta))
-						super.processLeafDelta(delta);
+						acceptDelta(delta);
 				break;
 			}
 		}
@@ -24,6 +24,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -37,15 +44,17 @@ import org.eclipse.pde.api.tools.internal.ApiDescription;
 import org.eclipse.pde.api.tools.internal.ApiDescriptionXmlCreator;
 import org.eclipse.pde.api.tools.internal.CompilationUnit;
 import org.eclipse.pde.api.tools.internal.IApiCoreConstants;
-import org.eclipse.pde.api.tools.internal.model.ArchiveApiTypeContainer;
 import org.eclipse.pde.api.tools.internal.model.CompositeApiTypeContainer;
 import org.eclipse.pde.api.tools.internal.model.DirectoryApiTypeContainer;
 import org.eclipse.pde.api.tools.internal.provisional.ApiPlugin;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiTypeContainer;
 import org.eclipse.pde.api.tools.internal.provisional.scanner.TagScanner;
 import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.internal.TagScanCache;
+import org.eclipse.pde.apitools.ant.internal.TypeContainerPool;
 import org.eclipse.pde.apitools.ant.tasks.slim.AbstractComparisonTask;
 import org.eclipse.pde.apitools.ant.util.ApiToolsUtils;
+import org.eclipse.pde.apitools.ant.util.BundleFingerprint;
 import org.eclipse.pde.apitools.ant.util.IOUtil;
 import org.osgi.framework.BundleException;
 import org.osgi.framework.Constants;
@@ -65,6 +74,41 @@ public class ApiFileGenerationTask extends Task {
 	String sourceLocations;
 	boolean allowNonApiProject = false;
 	Set apiPackages = new HashSet(0);
+	int threads = 1;
+	String scanCacheLocation;
+	String inputsDigestLocation;
+	String[] sourceDigests;
+	String dependenciesDigest;
+	IApiTypeContainer classFileContainer;
+
+	/*
+	 * The class file container of a project. Archives are leased from the pool,
+	 * and closing this container gives them back instead of closing them.
+	 */
+	private static class ProjectClassFileContainer extends CompositeApiTypeContainer {
+		private List<IApiTypeContainer> archives;
+		private List<IApiTypeContainer> folders;
+		private boolean closed = false;
+
+		ProjectClassFileContainer(List<IApiTypeContainer> containers, List<IApiTypeContainer> archives, List<IApiTypeContainer> folders) {
+			super(null, containers);
+			this.archives = archives;
+			this.folders = folders;
+		}
+
+		public synchronized void close() throws CoreException {
+			if (this.closed) {
+				return;
+			}
+			this.closed = true;
+			for (Iterator<IApiTypeContainer> iter = this.archives.iterator(); iter.hasNext();) {
+				TypeContainerPool.getDefault().release(iter.next());
+			}
+			for (Iterator<IApiTypeContainer> iter = this.folders.iterator(); iter.hasNext();) {
+				iter.next().close();
+			}
+		}
+	}
 
 	/**
 	 * Set the project name.
@@ -156,6 +200,51 @@ public class ApiFileGenerationTask extends Task {
 	public void setExtraSourceLocations(String sourceLocations) {
 		this.sourceLocations = sourceLocations;
 	}
+	/**
+	 * Set the number of threads scanning source files.
+	 * 
+	 * <p>Archives among the binary locations are shared by all threads, and by
+	 * all projects of the build. The result does not depend on the number of threads.</p>
+	 * <p>Default is <code>1</code>.</p>
+	 * 
+	 * @param threads the number of threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	/**
+	 * Set the location of the tag scan cache.
+	 * 
+	 * <p>The restrictions found in each source file are kept in this file, 
+	 * keyed by the digest of the source file. Unchanged source files are not 
+	 * parsed again. The location should survive a clean of the build output.</p>
+	 * <p>Since signatures are resolved against the binary locations, entries are 
+	 * also keyed by the digest of the dependencies among them: the archives and 
+	 * the class folders outside of the project. The project's own class folders 
+	 * are compiled from its sources, and are left out. Several projects may share 
+	 * the same cache file.</p>
+	 * <p>Default is no cache.</p>
+	 * 
+	 * @param scanCacheLocation the absolute path of the cache file
+	 */
+	public void setScanCache(String scanCacheLocation) {
+		this.scanCacheLocation = scanCacheLocation;
+	}
+	/**
+	 * Set the location of the inputs digest.
+	 * 
+	 * <p>When set, a digest of the project name, the manifests, the source files 
+	 * and their contents, the binary locations, the contents of the dependencies 
+	 * among them and the compiler compliance is kept in this file. The tag scan is skipped when the digest did not change 
+	 * and the .api_description file exists. Otherwise the .api_description file 
+	 * is generated again, and only written if its contents changed.</p>
+	 * <p>When not set, an existing .api_description file is never generated again.</p>
+	 * 
+	 * @param inputsDigestLocation the absolute path of the digest file
+	 */
+	public void setInputsDigest(String inputsDigestLocation) {
+		this.inputsDigestLocation = inputsDigestLocation;
+	}
 	
 	/* Check that the required arguments are present */
 	private void checkArgs() throws BuildException {
@@ -178,6 +267,10 @@ public class ApiFileGenerationTask extends Task {
 			if (this.sourceLocations != null) {
 				System.out.println("Extra source locations entries : " + this.sourceLocations); //$NON-NLS-1$
 			}
+			System.out.println("Scanning threads : " + this.threads); //$NON-NLS-1$
+			if (this.scanCacheLocation != null) {
+				System.out.println("Scan cache : " + this.scanCacheLocation); //$NON-NLS-1$
+			}
 		}
 	}
 	
@@ -214,7 +307,7 @@ public class ApiFileGenerationTask extends Task {
 				NLS.bind(Messages.api_generation_targetFolderNotADirectory, this.targetFolder));
 		}
 		File apiDescriptionFile = new File(targetProjectFolder, IApiCoreConstants.API_DESCRIPTION_XML_NAME);
-		if (apiDescriptionFile.exists()) {
+		if (apiDescriptionFile.exists() && this.inputsDigestLocation == null) {
 			System.out.println("An .api_description file already exists for this project.");
 			// Already exists, so ignore, but print no error
 			return false;
@@ -237,14 +330,24 @@ public class ApiFileGenerationTask extends Task {
 		boolean isValid = validateProject();
 		if( !isValid )
 			return;
+		try {
+			generateApiDescription();
+		} finally {
+			closeClassFileContainer(this.classFileContainer);
+			this.classFileContainer = null;
+		}
+	}
 
+	/*
+	 * Generate the .api_description file of a valid project
+	 */
+	private void generateApiDescription() {
 		File root = new File(this.projectLocation);
 		File targetProjectFolder = new File(this.targetFolder);
 		File apiDescriptionFile = new File(targetProjectFolder, IApiCoreConstants.API_DESCRIPTION_XML_NAME);
 		
 		
 		ArrayList<File> allFiles = new ArrayList<File>();
-		IApiTypeContainer classFileContainer = null;
 		String complianceString = null;
 		this.apiPackages = new HashSet<String>();
 
@@ -252,7 +355,7 @@ public class ApiFileGenerationTask extends Task {
 		// to not call this task on this project?
 		if (!isForbiddenProject()) {
 			Map manifestMap = null;
-			classFileContainer = createClassFileContainer();
+			this.classFileContainer = createClassFileContainer();
 			manifestMap = createRootManifestMap(root);
 			complianceString = resolveCompliance(manifestMap);
 			try {
@@ -303,37 +406,227 @@ public class ApiFileGenerationTask extends Task {
 			}
 		}
 
-		// Save the .api_description file
+		File[] allFileArray = (File[]) allFiles.toArray(new File[allFiles.size()]);
+		String inputsDigest = null;
+		this.sourceDigests = null;
+		this.dependenciesDigest = null;
+		TagScanCache cache = null;
+		if (this.scanCacheLocation != null) {
+			cache = TagScanCache.load(new File(this.scanCacheLocation));
+		}
 		try {
+			if (cache != null || this.inputsDigestLocation != null) {
+				this.dependenciesDigest = computeDependenciesDigest(cache);
+			}
+			if (this.inputsDigestLocation != null) {
+				inputsDigest = computeInputsDigest(root, allFileArray, complianceString);
+				if (inputsDigest != null && apiDescriptionFile.exists() 
+						&& inputsDigest.equals(readFile(new File(this.inputsDigestLocation)))) {
+					if (this.debug) {
+						System.out.println("The .api_description file is up to date"); //$NON-NLS-1$
+					}
+					// keep the fingerprints of the dependencies for the next run
+					saveScanCache(cache);
+					return;
+				}
+			}
+
+			// Save the .api_description file
 			ApiDescription apiDescription = new ApiDescription(this.projectName);
-			if( allFiles.size() > 0 ) { 
-				File[] allFileArray = (File[]) allFiles.toArray(new File[allFiles.size()]);
-				fillApiDescription(apiDescription, allFileArray, classFileContainer, complianceString);
+			if( allFileArray.length > 0 ) { 
+				fillApiDescription(apiDescription, allFileArray, this.classFileContainer, complianceString,
+						this.dependenciesDigest != null ? cache : null);
 			}
 			ApiDescriptionXmlCreator xmlVisitor = new ApiDescriptionXmlCreator(this.projectName, this.projectName);
 			apiDescription.accept(xmlVisitor, null);
 			String xml = xmlVisitor.getXML();
-			Util.saveFile(apiDescriptionFile, xml);
+			// Keep the file untouched if nothing changed, so that its time stamp does not either
+			if (!xml.equals(readFile(apiDescriptionFile))) {
+				Util.saveFile(apiDescriptionFile, xml);
+			} else if (this.debug) {
+				System.out.println("The .api_description file did not change"); //$NON-NLS-1$
+			}
+			if (inputsDigest != null) {
+				File digestFile = new File(this.inputsDigestLocation);
+				if (digestFile.getParentFile() != null) {
+					digestFile.getParentFile().mkdirs();
+				}
+				Util.saveFile(digestFile, inputsDigest);
+			}
 		} catch (CoreException e) {
 			ApiPlugin.log(e);
 		} catch (IOException e) {
 			ApiPlugin.log(e);
+		} finally {
+			this.sourceDigests = null;
+			this.dependenciesDigest = null;
+		}
+	}
+	
+	/*
+	 * Digest everything the .api_description file is generated from. The digests 
+	 * of the source files are kept for the scan cache. Answers null if an input 
+	 * cannot be read.
+	 */
+	private String computeInputsDigest(File root, File[] allFiles, String compilerCompliance) {
+		StringBuffer inputs = new StringBuffer();
+		try {
+			inputs.append("name=").append(this.projectName).append('\n'); //$NON-NLS-1$
+			inputs.append("allowNonApiProject=").append(this.allowNonApiProject).append('\n'); //$NON-NLS-1$
+			inputs.append("compliance=").append(compilerCompliance).append('\n'); //$NON-NLS-1$
+			inputs.append("binary=").append(this.binaryLocations).append('\n'); //$NON-NLS-1$
+			if (this.dependenciesDigest == null) {
+				return null;
+			}
+			inputs.append("dependencies=").append(this.dependenciesDigest).append('\n'); //$NON-NLS-1$
+			File manifestFile = new File(new File(root, "META-INF"), "MANIFEST.MF"); //$NON-NLS-1$ //$NON-NLS-2$
+			appendFileDigest(inputs, "manifest=", manifestFile); //$NON-NLS-1$
+			if (this.manifests != null) {
+				String[] allManifestFiles = this.manifests.split(File.pathSeparator);
+				for (int i = 0, max = allManifestFiles.length; i < max; i++) {
+					appendFileDigest(inputs, "manifest=", new File(allManifestFiles[i])); //$NON-NLS-1$
+				}
+			}
+			String[] digests = new String[allFiles.length];
+			for (int i = 0, max = allFiles.length; i < max; i++) {
+				digests[i] = BundleFingerprint.computeDigest(allFiles[i]);
+				inputs.append("source=").append(allFiles[i].getAbsolutePath()).append(':').append(digests[i]).append('\n'); //$NON-NLS-1$
+			}
+			this.sourceDigests = digests;
+		} catch (IOException e) {
+			ApiPlugin.log(e);
+			return null;
+		}
+		return BundleFingerprint.computeDigest(inputs.toString());
+	}
+	
+	/*
+	 * Digest the contents of the dependencies the scanner resolves signatures 
+	 * against, reusing the fingerprints kept by the cache, or those seen by 
+	 * this process. Answers null if one of them cannot be read.
+	 */
+	private String computeDependenciesDigest(TagScanCache cache) {
+		StringBuffer inputs = new StringBuffer();
+		if (this.binaryLocations != null) {
+			try {
+				String[] allBinaryLocations = this.binaryLocations.split(File.pathSeparator);
+				for (int i = 0, max = allBinaryLocations.length; i < max; i++) {
+					File location = new File(allBinaryLocations[i]).getAbsoluteFile();
+					if (!location.exists() || isProjectOutput(location)) {
+						continue;
+					}
+					inputs.append("binary=").append(location.getPath()).append(':'); //$NON-NLS-1$
+					inputs.append(cache != null ? cache.getBinaryDigest(location) : BundleFingerprint.getContentDigest(location)).append('\n');
+				}
+			} catch (IOException e) {
+				ApiPlugin.log(e);
+				return null;
+			}
+		}
+		return BundleFingerprint.computeDigest(inputs.toString());
+	}
+	
+	/*
+	 * Whether a binary location holds what the build of this project writes: 
+	 * a class folder within the project, or a folder the description, the 
+	 * scan cache or the inputs digest are written to
+	 */
+	private boolean isProjectOutput(File location) {
+		if (!location.isDirectory()) {
+			return false;
+		}
+		return isWithin(new File(this.projectLocation), location)
+				|| isWithin(location, new File(this.targetFolder))
+				|| (this.scanCacheLocation != null && isWithin(location, new File(this.scanCacheLocation)))
+				|| (this.inputsDigestLocation != null && isWithin(location, new File(this.inputsDigestLocation)));
+	}
+	
+	/*
+	 * Whether the given file is the given folder or below it
+	 */
+	private static boolean isWithin(File folder, File file) {
+		String folderPath = folder.getAbsoluteFile().toURI().normalize().getPath();
+		String filePath = file.getAbsoluteFile().toURI().normalize().getPath();
+		if (!folderPath.endsWith("/")) { //$NON-NLS-1$
+			folderPath = folderPath + '/';
+		}
+		if (!filePath.endsWith("/")) { //$NON-NLS-1$
+			filePath = filePath + '/';
+		}
+		return filePath.startsWith(folderPath);
+	}
+	
+	private void appendFileDigest(StringBuffer inputs, String key, File file) throws IOException {
+		inputs.append(key).append(file.getAbsolutePath()).append(':');
+		inputs.append(file.isFile() ? BundleFingerprint.computeDigest(file) : "none").append('\n'); //$NON-NLS-1$
+	}
+	
+	/*
+	 * The contents of a file written by Util#saveFile, or null if there is none
+	 */
+	private String readFile(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		BufferedInputStream stream = null;
+		try {
+			stream = new BufferedInputStream(new FileInputStream(file));
+			return new String(Util.getInputStreamAsCharArray(stream, -1, "UTF-8")); //$NON-NLS-1$
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
 		}
 	}
 	
 	private IApiTypeContainer createClassFileContainer() {
 		// create the directory class file container used to resolve signatures during tag scanning
 		String[] allBinaryLocations = this.binaryLocations.split(File.pathSeparator);
-		List allContainers = new ArrayList();
-		IApiTypeContainer container = null;
-		for (int i = 0; i < allBinaryLocations.length; i++) {
-			container = getContainer(allBinaryLocations[i]);
-			if (container == null) {
-				throw new BuildException(NLS.bind(Messages.api_generation_invalidBinaryLocation, allBinaryLocations[i]));
+		List<IApiTypeContainer> allContainers = new ArrayList<IApiTypeContainer>();
+		List<IApiTypeContainer> archives = new ArrayList<IApiTypeContainer>();
+		List<IApiTypeContainer> folders = new ArrayList<IApiTypeContainer>();
+		boolean created = false;
+		try {
+			for (int i = 0; i < allBinaryLocations.length; i++) {
+				String location = allBinaryLocations[i];
+				if (!new File(location).exists()) {
+					throw new BuildException(NLS.bind(Messages.api_generation_invalidBinaryLocation, location));
+				}
+				if (IOUtil.isZipJarFile(location)) {
+					// shared with other projects, and given back to the pool on close
+					IApiTypeContainer archive = TypeContainerPool.getDefault().acquire(location);
+					archives.add(archive);
+					allContainers.add(archive);
+				} else {
+					IApiTypeContainer folder = new DirectoryApiTypeContainer(null, location);
+					folders.add(folder);
+					allContainers.add(folder);
+				}
+			}
+			created = true;
+		} finally {
+			if (!created) {
+				// give back what was leased so far
+				closeClassFileContainer(new ProjectClassFileContainer(allContainers, archives, folders));
+			}
+		}
+		return new ProjectClassFileContainer(allContainers, archives, folders);
+	}
+	
+	private void closeClassFileContainer(IApiTypeContainer container) {
+		if (container != null) {
+			try {
+				container.close();
+			} catch (CoreException e) {
+				ApiPlugin.log(e);
 			}
-			allContainers.add(container);
 		}
-		return new CompositeApiTypeContainer(null, allContainers);
 	}
 	
 	
@@ -389,27 +682,131 @@ public class ApiFileGenerationTask extends Task {
 	}
 	
 	private void fillApiDescription(ApiDescription apiDescription, File[] allFiles, 
-			IApiTypeContainer classFileContainer, String compilerCompliance) {
-		TagScanner tagScanner = TagScanner.newScanner();
+			IApiTypeContainer classFileContainer, String compilerCompliance, TagScanCache cache) {
 		Map options = JavaCore.getOptions();
 		options.put(JavaCore.COMPILER_COMPLIANCE, compilerCompliance);
-		CompilationUnit unit = null;
-		for (int i = 0, max = allFiles.length; i < max; i++) {
-			unit = new CompilationUnit(allFiles[i].getAbsolutePath());
+		TagScanCache.Restriction[][] results = new TagScanCache.Restriction[allFiles.length][];
+		int workers = Math.min(this.threads, allFiles.length);
+		if (workers > 1) {
+			scanParallel(allFiles, results, workers, classFileContainer, options, cache);
+		} else {
+			scanFiles(allFiles, results, new AtomicInteger(), classFileContainer, options, cache);
+		}
+		// merge in file order, so that the description does not depend on the threads
+		for (int i = 0, max = results.length; i < max; i++) {
+			if (results[i] != null) {
+				TagScanCache.apply(results[i], apiDescription);
+			}
+		}
+		saveScanCache(cache);
+	}
+	
+	private void saveScanCache(TagScanCache cache) {
+		if (cache != null) {
+			try {
+				cache.save(new File(this.scanCacheLocation));
+			} catch (IOException e) {
+				ApiPlugin.log(e);
+			}
+		}
+	}
+	
+	/*
+	 * Scan the files on a fixed pool of workers. Each worker has its own 
+	 * scanner and view of the class files, and takes the next file to scan 
+	 * until none is left. The views are all created before any worker starts, 
+	 * and the extra ones closed once all workers are done.
+	 */
+	private void scanParallel(final File[] allFiles, final TagScanCache.Restriction[][] results, int workers,
+			IApiTypeContainer classFileContainer, final Map options, final TagScanCache cache) {
+		if (this.debug) {
+			System.out.println("Scanning " + allFiles.length + " units with " + workers + " threads"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		final AtomicInteger next = new AtomicInteger();
+		IApiTypeContainer[] containers = new IApiTypeContainer[workers];
+		containers[0] = classFileContainer;
+		ExecutorService executor = null;
+		try {
+			for (int i = 1; i < workers; i++) {
+				containers[i] = createClassFileContainer();
+			}
+			executor = Executors.newFixedThreadPool(workers);
+			List<Future<Object>> futures = new ArrayList<Future<Object>>(workers);
+			for (int i = 0; i < workers; i++) {
+				final IApiTypeContainer container = containers[i];
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						scanFiles(allFiles, results, next, container, options, cache);
+						return null;
+					}
+				}));
+			}
+			for (int i = 0; i < workers; i++) {
+				futures.get(i).get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BuildException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new BuildException(cause);
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+				try {
+					// do not close the views while a worker may still read them
+					executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			for (int i = 1; i < workers; i++) {
+				closeClassFileContainer(containers[i]);
+			}
+		}
+	}
+	
+	/*
+	 * Scan files until none is left, storing the restrictions 
+	 * found in each file at the index of that file
+	 */
+	private void scanFiles(File[] allFiles, TagScanCache.Restriction[][] results, AtomicInteger next, 
+			IApiTypeContainer classFileContainer, Map options, TagScanCache cache) {
+		TagScanner tagScanner = TagScanner.newScanner();
+		String compilerCompliance = (String) options.get(JavaCore.COMPILER_COMPLIANCE);
+		for (int i = next.getAndIncrement(), max = allFiles.length; i < max; i = next.getAndIncrement()) {
+			String path = allFiles[i].getAbsolutePath();
+			String digest = null;
+			if (cache != null) {
+				try {
+					digest = this.sourceDigests != null ? this.sourceDigests[i] : BundleFingerprint.computeDigest(allFiles[i]);
+					results[i] = cache.get(path, digest, compilerCompliance, this.dependenciesDigest);
+				} catch (IOException e) {
+					// scan it again
+				}
+				if (results[i] != null) {
+					continue;
+				}
+			}
+			CompilationUnit unit = new CompilationUnit(path);
 			if (this.debug) {
 				System.out.println("Unit name[" + i + "] : " + unit.getName()); //$NON-NLS-1$ //$NON-NLS-2$
 			}
 			try {
-				tagScanner.scan(unit, apiDescription, classFileContainer, options, null);
+				ApiDescription unitDescription = new ApiDescription(this.projectName);
+				tagScanner.scan(unit, unitDescription, classFileContainer, options, null);
+				results[i] = TagScanCache.collect(unitDescription);
+				if (digest != null) {
+					cache.put(path, digest, compilerCompliance, this.dependenciesDigest, results[i]);
+				}
 			} catch (CoreException e) {
 				ApiPlugin.log(e);
-			} finally {
-				try {
-					if (classFileContainer != null) {
-						classFileContainer.close();
-					}
-				} 
-				catch (CoreException e) {}
 			}
 		}
 	}
@@ -470,17 +867,6 @@ public class ApiFileGenerationTask extends Task {
 		return set;
 	}
 	
-	private IApiTypeContainer getContainer(String location) {
-		boolean exists = new File(location).exists();
-		if (exists) {
-			if (IOUtil.isZipJarFile(location)) {
-				return new ArchiveApiTypeContainer(null, location);
-			} else {
-				return new DirectoryApiTypeContainer(null, location);
-			}
-		}
-		return null;
-	}
 	/**
 	 * Resolves the compiler compliance based on the BREE entry in the MANIFEST.MF file
 	 * @param manifestmap
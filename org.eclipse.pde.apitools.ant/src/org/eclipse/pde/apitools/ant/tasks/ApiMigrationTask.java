@@ -29,6 +29,7 @@ import org.eclipse.pde.api.tools.internal.search.SkippedComponent;
 import org.eclipse.pde.api.tools.internal.search.UseScanParser;
 import org.eclipse.pde.api.tools.internal.util.FilteredElements;
 import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 /**
  * Ant task for performing analysis of an API use scan against an alterante target (migration candidate)
@@ -222,7 +223,11 @@ public final class ApiMigrationTask extends CommonUtilsTask {
 		// TODO
 		cleanReportLocation();
 		
+		Metrics.Stopwatch total = metrics.start(Metrics.TOTAL);
+		Metrics.Stopwatch watch = metrics.start(Metrics.BASELINES_LOAD);
 		IApiBaseline baseline = getBaseline(CURRENT_BASELINE_NAME, this.currentBaselineLocation);
+		watch.stop();
+		watch = metrics.start(Metrics.ANALYSIS);
 		try {
 			String xmlLocation = scanLocation;
 			File file = new File(xmlLocation);
@@ -260,11 +265,16 @@ public final class ApiMigrationTask extends CommonUtilsTask {
 			throw new BuildException(e.getMessage(), e);
 		}
 		finally {
+			watch.stop();
+			watch = metrics.start(Metrics.CLEANUP);
 			if(baseline != null) {
 				baseline.dispose();
 				deleteBaseline(this.currentBaselineLocation, this.baselinedir);
 			}
+			watch.stop();
 		}
+		total.stop();
+		saveMetrics();
 	}
 	
 	/**
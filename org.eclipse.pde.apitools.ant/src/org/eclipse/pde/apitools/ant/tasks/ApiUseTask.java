@@ -36,8 +36,9 @@ import org.eclipse.pde.api.tools.internal.search.SkippedComponent;
 import org.eclipse.pde.api.tools.internal.search.UseMetadata;
 import org.eclipse.pde.api.tools.internal.search.UseSearchRequestor;
 import org.eclipse.pde.api.tools.internal.search.XmlSearchReporter;
-import org.eclipse.pde.api.tools.internal.util.FilteredElements;
 import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.util.ComponentMatcher;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 import com.ibm.icu.text.DateFormat;
 
@@ -101,12 +102,12 @@ public final class ApiUseTask extends CommonUtilsTask {
 	/**
 	 * List of elements excluded from the scope
 	 */
-	private FilteredElements excludedElements = null;
+	private ComponentMatcher excludedElements = null;
 	
 	/**
 	 * List of elements explicitly limiting the scope
 	 */
-	private FilteredElements includedElements = null;
+	private ComponentMatcher includedElements = null;
 	
 	/**
 	 * Set the location of the current product you want to search.
@@ -274,6 +275,7 @@ public final class ApiUseTask extends CommonUtilsTask {
 		assertParameters();
 		writeDebugHeader();
 		cleanReportLocation();
+		Metrics.Stopwatch total = metrics.start(Metrics.TOTAL);
 		UseMetadata data = new UseMetadata(
 				getSearchFlags(), 
 				this.scopepattern, 
@@ -285,9 +287,12 @@ public final class ApiUseTask extends CommonUtilsTask {
 				this.archivePatterns,
 				DateFormat.getDateTimeInstance().format(Calendar.getInstance().getTime()), 
 				getDescription());
+		Metrics.Stopwatch watch = metrics.start(Metrics.BASELINES_LOAD);
 		IApiBaseline baseline = getBaseline(CURRENT_BASELINE_NAME, this.currentBaselineLocation);
+		watch.stop();
 		IApiSearchReporter reporter = new XmlSearchReporter(this.reportLocation, this.debug);
 		
+		watch = metrics.start(Metrics.ANALYSIS);
 		try {
 			Set ids = new HashSet();
 			TreeSet scope = new TreeSet(Util.componentsorter);
@@ -319,14 +324,21 @@ public final class ApiUseTask extends CommonUtilsTask {
 			throw new BuildException(Messages.ApiUseTask_search_engine_problem, ce);
 		}
 		finally {
+			watch.stop();
+			watch = metrics.start(Metrics.CLEANUP);
 			if(baseline != null) {
 				baseline.dispose();
 				deleteBaseline(this.currentBaselineLocation, this.baselinedir);
 			}
+			watch.stop();
+			watch = metrics.start(Metrics.REPORT_SERIALIZATION);
 			reporter.reportNotSearched((IApiElement[]) this.notsearched.toArray(new IApiElement[this.notsearched.size()]));
 			reporter.reportMetadata(data);
 			reporter.reportCounts();
+			watch.stop();
 		}
+		total.stop();
+		saveMetrics();
 	}
 	
 	/**
@@ -363,14 +375,14 @@ public final class ApiUseTask extends CommonUtilsTask {
 	 */
 	private void getContext(IApiBaseline baseline, Set ids, Set scope) throws CoreException {
 
-		excludedElements = CommonUtilsTask.initializeFilteredElements(this.excludeListLocation, baseline, this.debug);
+		excludedElements = ComponentMatcher.getMatcher(this.excludeListLocation, baseline, this.debug);
 		if (this.debug) {
 			System.out.println("===================================================================================="); //$NON-NLS-1$
 			System.out.println("Excluded elements list:"); //$NON-NLS-1$
 			System.out.println(excludedElements);
 		}
 
-		includedElements = CommonUtilsTask.initializeFilteredElements(this.includeListLocation, baseline, this.debug);
+		includedElements = ComponentMatcher.getMatcher(this.includeListLocation, baseline, this.debug);
 		if (this.debug) {
 			System.out.println("===================================================================================="); //$NON-NLS-1$
 			System.out.println("Included elements list:"); //$NON-NLS-1$
@@ -389,10 +401,10 @@ public final class ApiUseTask extends CommonUtilsTask {
 		for (int i = 0; i < components.length; i++) {
 			String symbolicName = components[i].getSymbolicName();
 			boolean skip = false;
-			if (!includedElements.isEmpty() && !(includedElements.containsExactMatch(symbolicName) || includedElements.containsPartialMatch(symbolicName))){
+			if (!includedElements.isEmpty() && !includedElements.matches(symbolicName)){
 				skip = true;
 			}
-			if (!skip && (excludedElements.containsExactMatch(symbolicName) || excludedElements.containsPartialMatch(symbolicName))) {
+			if (!skip && excludedElements.matches(symbolicName)) {
 				skip = true;
 			}
 			if (!skip){
@@ -11,14 +11,19 @@
 package org.eclipse.pde.apitools.ant.tasks;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
 import java.util.Set;
 
+import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Task;
 import org.eclipse.pde.api.tools.internal.provisional.ApiPlugin;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
 import org.eclipse.pde.api.tools.internal.util.FilteredElements;
 import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.internal.ExtractionCache;
 import org.eclipse.pde.apitools.ant.util.BaselineUtils;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 import org.eclipse.pde.apitools.ant.util.ReportUtils;
 import org.eclipse.pde.apitools.ant.util.ToolingException;
 
@@ -37,6 +42,9 @@ public abstract class CommonUtilsTask extends Task {
 	protected static final String REFERENCE_BASELINE_NAME = "reference_baseline"; //$NON-NLS-1$
 
 	protected boolean debug;
+	protected boolean extractBundlesOnly;
+	protected String extractionCacheLocation;
+	protected long extractionCacheSize = ExtractionCache.DEFAULT_MAX_SIZE;
 	protected String eeFileLocation;
 	protected String currentBaselineLocation;
 	protected String referenceBaselineLocation;
@@ -45,6 +53,17 @@ public abstract class CommonUtilsTask extends Task {
 	
 	protected String reportLocation;
 	
+	/*
+	 * Installation folders handed out by the extraction cache,
+	 * which are released to it instead of being deleted
+	 */
+	private Set<File> cachedInstallDirs = new HashSet<File>();
+	
+	/*
+	 * Timers and counters of this run, saved next to the reports
+	 */
+	protected Metrics metrics = new Metrics();
+	
 	/**
 	 * Creates a baseline with the given name and EE file location in the given directory.  The installLocation
 	 * will be searched for bundles to add as API components.
@@ -64,6 +83,12 @@ public abstract class CommonUtilsTask extends Task {
 	 * @param folder
 	 */
 	protected void deleteBaseline(String referenceLocation, File folder) {
+		ExtractionCache cache = getExtractionCache();
+		if (cache != null && cachedInstallDirs.remove(folder)) {
+			// keep the tree for the next task using the same archive
+			cache.release(folder);
+			return;
+		}
 		BaselineUtils.deleteBaseline(referenceLocation, folder);
 	}
 	
@@ -74,7 +99,62 @@ public abstract class CommonUtilsTask extends Task {
 	 * @return the {@link File} handle to the extracted SDK
 	 */
 	protected File extractSDK(String installDirName, String location) {
-		return BaselineUtils.extractSDK(installDirName, location);
+		ExtractionCache cache = getExtractionCache();
+		if (cache != null && Util.isArchive(location) && new File(location).isFile()) {
+			File installDir = cache.acquire(new File(location), this.extractBundlesOnly);
+			cachedInstallDirs.add(installDir);
+			return installDir;
+		}
+		return BaselineUtils.extractSDK(installDirName, location, this.extractBundlesOnly);
+	}
+	
+	private ExtractionCache getExtractionCache() {
+		ExtractionCache cache = ExtractionCache.getCache(this.extractionCacheLocation);
+		if (cache != null) {
+			cache.setMaxSize(this.extractionCacheSize);
+		}
+		return cache;
+	}
+	
+	/**
+	 * Set a directory in which extracted baseline archives are kept.
+	 * <p>Tasks given the same archive then share a single extracted tree 
+	 * instead of extracting and deleting the archive each time.</p>
+	 * <p>By default, archives are extracted to the temp directory and deleted 
+	 * once the task is done.</p>
+	 *
+	 * @param cacheLocation the given directory
+	 */
+	public void setExtractionCache(String cacheLocation) {
+		this.extractionCacheLocation = cacheLocation;
+	}
+	
+	/**
+	 * Set the size, in megabytes, above which the least recently used 
+	 * extracted trees that no task holds are deleted.
+	 * <p>The default value is 4096.</p>
+	 *
+	 * @param megabytes the given size
+	 */
+	public void setExtractionCacheSize(String megabytes) {
+		try {
+			this.extractionCacheSize = Long.parseLong(megabytes) * 1024 * 1024;
+		} catch (NumberFormatException e) {
+			throw new BuildException(e);
+		}
+	}
+	
+	/**
+	 * Set whether only the bundles of a zip archive baseline are extracted.
+	 * <p>When set to true, the plugins of the archive are extracted one by one 
+	 * through the archive's directory, jar bundles are not expanded and all 
+	 * other files of the archive are skipped.</p>
+	 * <p>The default value is false.</p>
+	 *
+	 * @param bundlesOnly the given value
+	 */
+	public void setExtractBundlesOnly(String bundlesOnly) {
+		this.extractBundlesOnly = Boolean.toString(true).equals(bundlesOnly);
 	}
 	
 	/**
@@ -96,10 +176,39 @@ public abstract class CommonUtilsTask extends Task {
 	 * @param reportname name of the file to output to
 	 */
 	protected void saveReport(String componentID, String contents, String reportname) {
+		Metrics.Stopwatch watch = metrics.start(Metrics.REPORT_SERIALIZATION);
 		try {
 			ReportUtils.saveReport(componentID, contents, reportname, reportname);
+			metrics.count(Metrics.REPORT_FILES, 1);
+			metrics.count(Metrics.REPORT_BYTES, contents.length());
 		} catch(ToolingException te) {
 			ApiPlugin.log(te);
+		} finally {
+			watch.stop();
+		}
+	}
+	
+	/**
+	 * Write the metrics of this run as {@link Metrics#FILE_NAME} in the report location
+	 */
+	protected void saveMetrics() {
+		saveMetrics(this.reportLocation);
+	}
+
+	/**
+	 * Write the metrics of this run as {@link Metrics#FILE_NAME} in the given folder,
+	 * for the tasks whose report location is a file
+	 *
+	 * @param folder the folder to write to or <code>null</code> to skip writing
+	 */
+	protected void saveMetrics(String folder) {
+		if (folder == null) {
+			return;
+		}
+		try {
+			metrics.save(folder);
+		} catch(IOException ioe) {
+			ApiPlugin.log(ioe);
 		}
 	}
 	
@@ -35,6 +35,7 @@ import org.eclipse.pde.api.tools.internal.util.FilteredElements;
 import org.eclipse.pde.api.tools.internal.util.Util;
 import org.eclipse.pde.api.tools.internal.util.UtilMessages;
 import org.eclipse.pde.apitools.ant.tasks.slim.AbstractComparisonTask;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 /**
  * Ant task to compare API scopes.
@@ -93,11 +94,15 @@ public class CompareTask extends CommonUtilsTask {
 	public void execute() throws BuildException {
 		checkArgs();
 		printArgs();
+		Metrics.Stopwatch total = metrics.start(Metrics.TOTAL);
 		
 		// Extract baselines if required
+		Metrics.Stopwatch watch = metrics.start(Metrics.EXTRACTION);
 		File referenceInstallDir = extractSDK(REFERENCE, this.referenceBaselineLocation);
 		File baselineInstallDir = extractSDK(CURRENT, this.currentBaselineLocation);
+		watch.stop();
 
+		watch = metrics.start(Metrics.BASELINES_LOAD);
 		// create baseline for the reference
 		IApiBaseline referenceBaseline = createBaseline(REFERENCE_BASELINE_NAME, referenceInstallDir.getAbsolutePath(), this.eeFileLocation);
 		IApiBaseline currentBaseline = createBaseline(CURRENT_BASELINE_NAME, baselineInstallDir.getAbsolutePath(), this.eeFileLocation);
@@ -120,8 +125,10 @@ public class CompareTask extends CommonUtilsTask {
 		// Set up our scope
 		ApiScope scope = new ApiScope();
 		configureScope(currentBaseline, scope);
+		watch.stop();
 		
 		// Get our delta
+		watch = metrics.start(Metrics.DELTA);
 		IDelta delta = null;
 		try {
 			delta = ApiComparator.compare(scope, referenceBaseline, this.visibilityModifiers, false, null);
@@ -129,12 +136,15 @@ public class CompareTask extends CommonUtilsTask {
 			// an error occurred during the comparison
 			throw new BuildException(NLS.bind(Messages.illegalElementInScope, e.getMessage()));
 		} finally {
+			watch.stop();
 			// Cleanup
+			watch = metrics.start(Metrics.CLEANUP);
 			referenceBaseline.dispose();
 			currentBaseline.dispose();
 			StubApiComponent.disposeAllCaches();
 			deleteBaseline(this.referenceBaselineLocation, referenceInstallDir);
 			deleteBaseline(this.currentBaselineLocation, baselineInstallDir);
+			watch.stop();
 		}
 		if (delta == null) {
 			// an error occurred during the comparison
@@ -142,7 +152,11 @@ public class CompareTask extends CommonUtilsTask {
 		}
 		// dump the report in the appropriate folder
 		File outputFile = new File(this.reportLocation, REPORT_XML_FILE_NAME);
+		watch = metrics.start(Metrics.REPORT_SERIALIZATION);
 		writeReport(outputFile, includedElements, excludedElements, delta);
+		watch.stop();
+		total.stop();
+		saveMetrics();
 	}
 	
 	protected void writeReport(File outputFile, FilteredElements includedElements, FilteredElements excludedElements, IDelta delta) {
@@ -52,8 +52,9 @@ import org.eclipse.pde.api.tools.internal.provisional.problems.IApiProblemTypes;
 import org.eclipse.pde.api.tools.internal.search.MissingRefMetadata;
 import org.eclipse.pde.api.tools.internal.search.SkippedComponent;
 import org.eclipse.pde.api.tools.internal.search.UseScanManager;
-import org.eclipse.pde.api.tools.internal.util.FilteredElements;
 import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.util.ComponentMatcher;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 import org.osgi.framework.Version;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
@@ -65,8 +66,8 @@ import org.w3c.dom.Element;
  */
 public class MissingRefProblemsTask extends CommonUtilsTask {
 
-	private FilteredElements excludedElements;
-	private FilteredElements includedElements;
+	private ComponentMatcher excludedElements;
+	private ComponentMatcher includedElements;
 	private String apiUseScans;
 	private String[] usescans;
 	private Properties properties = new Properties();
@@ -128,29 +129,28 @@ public class MissingRefProblemsTask extends CommonUtilsTask {
 				System.out.println("No include list location"); //$NON-NLS-1$
 			}
 		}
+		Metrics.Stopwatch total = metrics.start(Metrics.TOTAL);
 		// unzip profile
-		long time = 0;
-		if (super.debug) {
-			time = System.currentTimeMillis();
-		}
-
+		Metrics.Stopwatch watch = metrics.start(Metrics.EXTRACTION);
 		File baselineInstallDir = extractSDK(CURRENT, super.currentBaselineLocation);
+		long time = watch.stop();
 		if (super.debug) {
-			System.out.println("Preparation of profile installation : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-			time = System.currentTimeMillis();
+			System.out.println("Preparation of profile installation : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 
 		// create baseline = profile
+		watch = metrics.start(Metrics.BASELINE_PROFILE_LOAD);
 		IApiBaseline profile = createBaseline(CURRENT_BASELINE_NAME, baselineInstallDir.getAbsolutePath(), null);
+		time = watch.stop();
 		if (super.debug) {
-			System.out.println("Creation of baseline : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-			time = System.currentTimeMillis();
+			System.out.println("Creation of baseline : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
+		watch = metrics.start(Metrics.ANALYSIS);
 		if (this.excludeListLocation != null) {
-			this.excludedElements = CommonUtilsTask.initializeFilteredElements(this.excludeListLocation, profile, super.debug);
+			this.excludedElements = ComponentMatcher.getMatcher(this.excludeListLocation, profile, super.debug);
 		}
 		if (this.includeListLocation != null) {
-			this.includedElements = CommonUtilsTask.initializeFilteredElements(this.includeListLocation, profile, super.debug);
+			this.includedElements = ComponentMatcher.getMatcher(this.includeListLocation, profile, super.debug);
 		}
 		UseScanManager.getInstance().setReportLocations(usescans);
 		if (super.debug) {
@@ -179,8 +179,13 @@ public class MissingRefProblemsTask extends CommonUtilsTask {
 					if (this.properties.isEmpty()) {
 						addDefaultProperties();
 					}
+					long start = System.nanoTime();
 					analyzer.checkExternalDependencies(apiComponent, new BuildContext(), this.properties, new NullProgressMonitor());
 					IApiProblem[] problems = analyzer.getProblems();
+					metrics.record(Metrics.BUNDLE_ANALYSIS_TIME, (System.nanoTime() - start) / 1000000);
+					metrics.record(Metrics.BUNDLE_PROBLEMS, problems.length);
+					metrics.count(Metrics.BUNDLES_ANALYZED, 1);
+					metrics.count(Metrics.PROBLEMS, problems.length);
 					if (problems.length != 0) {
 						allProblems.put(name +" ("+new Version(version).toString()+")", problems); //$NON-NLS-1$ //$NON-NLS-2$
 					}
@@ -194,13 +199,15 @@ public class MissingRefProblemsTask extends CommonUtilsTask {
 				}
 			}
 		} finally {
+			time = watch.stop();
 			if (super.debug) {
-				System.out.println("Use scan reference check completed in: " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
-				time = System.currentTimeMillis();
+				System.out.println("Use scan reference check completed in: " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
+			watch = metrics.start(Metrics.CLEANUP);
 			profile.dispose();
 			StubApiComponent.disposeAllCaches();
 			deleteBaseline(super.currentBaselineLocation, baselineInstallDir);
+			watch.stop();
 			writeMetaData(new File(this.reportLocation, "meta.xml")); //$NON-NLS-1$
 		}
 		Summary[] summaries = createAllSummaries(allProblems);
@@ -212,6 +219,9 @@ public class MissingRefProblemsTask extends CommonUtilsTask {
 			ApiPlugin.log(e);
 			throw e;
 		}
+		metrics.count(Metrics.BUNDLES_SKIPPED, notsearched.size());
+		total.stop();
+		saveMetrics();
 	}
 
 	/**
@@ -229,11 +239,11 @@ public class MissingRefProblemsTask extends CommonUtilsTask {
 				notsearched.add(new SkippedComponent(name, version, errors));
 				return false;
 			}
-			if (this.excludedElements != null && (this.excludedElements.containsExactMatch(name) || this.excludedElements.containsPartialMatch(name))) {
+			if (this.excludedElements != null && this.excludedElements.matches(name)) {
 				notsearched.add(new SkippedComponent(name, version, errors));
 				return false;
 			}
-			if (this.includedElements != null && !this.includedElements.isEmpty() && !(this.includedElements.containsExactMatch(name) || this.includedElements.containsPartialMatch(name))) {
+			if (this.includedElements != null && !this.includedElements.isEmpty() && !this.includedElements.matches(name)) {
 				notsearched.add(new SkippedComponent(name, version, errors));
 				return false;
 			}
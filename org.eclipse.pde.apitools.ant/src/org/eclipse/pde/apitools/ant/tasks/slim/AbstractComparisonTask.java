@@ -11,6 +11,7 @@
 package org.eclipse.pde.apitools.ant.tasks.slim;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
@@ -21,11 +22,17 @@ import java.util.Properties;
 import org.apache.tools.ant.BuildException;
 import org.eclipse.ant.core.Task;
 import org.eclipse.osgi.util.NLS;
+import org.eclipse.pde.apitools.ant.internal.AnalysisDaemon;
 import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport;
 import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport.AnalysisSkippedReport;
 import org.eclipse.pde.apitools.ant.internal.ApiAnalysisRunner;
+import org.eclipse.pde.apitools.ant.internal.BaselineRepository;
+import org.eclipse.pde.apitools.ant.internal.RootReport;
 import org.eclipse.pde.apitools.ant.tasks.Messages;
 import org.eclipse.pde.apitools.ant.util.IOUtil;
+import org.eclipse.pde.apitools.ant.util.Metrics;
+import org.eclipse.pde.apitools.ant.util.ReportUtils;
+import org.eclipse.pde.apitools.ant.util.ToolingException;
 
 /**
  * This abstract superclass is intended for any API Tools
@@ -43,6 +50,9 @@ import org.eclipse.pde.apitools.ant.util.IOUtil;
  *     A style sheet, such that the generated reports can reference it
  *     A boolean flag indicating to skip non-api bundles
  *     A boolean flag indicating debug output is requested
+ *     The number of threads used to analyze bundles
+ *     A directory to keep a cache of bundle fingerprints between runs
+ *     The port of an analysis daemon to run the task in
  */
 public abstract class AbstractComparisonTask extends Task {
 	protected String referenceBaseline;
@@ -55,6 +65,18 @@ public abstract class AbstractComparisonTask extends Task {
 	protected String styleSheet;
 	protected boolean skipNonApi = false;
 	protected boolean debug;
+	protected int threads = 1;
+	protected int daemonPort = 0;
+	
+	/*
+	 * Set when the task runs inside an analysis daemon
+	 */
+	protected BaselineRepository baselineRepository = null;
+	
+	/*
+	 * Timers and counters of this run, saved next to the reports
+	 */
+	protected Metrics metrics = new Metrics();
 	
 	
 	/*
@@ -153,6 +175,7 @@ public abstract class AbstractComparisonTask extends Task {
 		} else {
 			System.out.println("No stylesheet set.");
 		}
+		System.out.println("Analysis threads: " + this.threads);
 	}
 	
 	/*
@@ -162,20 +185,177 @@ public abstract class AbstractComparisonTask extends Task {
 	protected ApiAnalysisRunner createAnalysisRunner() {
 		// Our profileBaseline may be either a string representing a folder
 		// or a java.io.File array. 
+		ApiAnalysisRunner runner = null;
 		if( profileBaseline != null )
 			// String folder
-			return new ApiAnalysisRunner(referenceBaseline, profileBaseline, 
+			runner = new ApiAnalysisRunner(referenceBaseline, profileBaseline, 
 					reports, filters,  properties, 
 					skipNonApi, styleSheet,
 					includeListLocation, excludeListLocation, debug);
 		else {
 			// java.io.File array
-			return new ApiAnalysisRunner(referenceBaseline, 
+			runner = new ApiAnalysisRunner(referenceBaseline, 
 					profileBaselineAsFileArray, 
 					reports, filters,  properties, 
 					skipNonApi, styleSheet,
 					includeListLocation, excludeListLocation, debug);
 		}
+		runner.setThreads(threads);
+		runner.setBaselineRepository(baselineRepository);
+		runner.setMetrics(metrics);
+		return runner;
+	}
+	
+	/**
+	 * Save a report, recording the time it took and its size
+	 * 
+	 * @param report the report
+	 * @param file the file to save it to
+	 * @throws BuildException if the report cannot be saved
+	 */
+	protected void saveReport(RootReport report, File file) throws BuildException {
+		Metrics.Stopwatch watch = metrics.start(Metrics.REPORT_SERIALIZATION);
+		try {
+			ReportUtils.saveReport(report, file);
+		} catch(ToolingException ioe) {
+			throw new BuildException(ioe);
+		}
+		watch.stop();
+		metrics.count(Metrics.REPORT_FILES, 1);
+		metrics.count(Metrics.REPORT_BYTES, file.length());
+	}
+	
+	/**
+	 * Write the metrics of this run as {@link Metrics#FILE_NAME} in the reports folder
+	 * 
+	 * @throws BuildException if the metrics cannot be written
+	 */
+	protected void saveMetrics() throws BuildException {
+		try {
+			metrics.save(reports);
+		} catch(IOException ioe) {
+			throw new BuildException(ioe);
+		}
+	}
+	
+	private static final String KEY_BASELINE = "baseline"; //$NON-NLS-1$
+	private static final String KEY_PROFILE = "profile"; //$NON-NLS-1$
+	private static final String KEY_REPORT = "report"; //$NON-NLS-1$
+	private static final String KEY_INCLUDE_LIST = "includeList"; //$NON-NLS-1$
+	private static final String KEY_EXCLUDE_LIST = "excludeList"; //$NON-NLS-1$
+	private static final String KEY_FILTERS = "filters"; //$NON-NLS-1$
+	private static final String KEY_STYLE_SHEET = "styleSheet"; //$NON-NLS-1$
+	private static final String KEY_SKIP_NON_API = "skipNonApi"; //$NON-NLS-1$
+	private static final String KEY_DEBUG = "debug"; //$NON-NLS-1$
+	private static final String KEY_THREADS = "threads"; //$NON-NLS-1$
+	private static final String PREFERENCE_PREFIX = "preference."; //$NON-NLS-1$
+	
+	/**
+	 * Run this task in the analysis daemon listening on the daemon port, 
+	 * if one is set and a daemon answers.
+	 * 
+	 * @return true if the daemon ran the task, false if it must run here
+	 * @throws BuildException if the daemon ran the task and it failed
+	 */
+	protected boolean submitToDaemon() throws BuildException {
+		if( daemonPort <= 0 || profileBaseline == null )
+			return false;
+		Properties request = new Properties();
+		request.setProperty(AnalysisDaemon.KEY_COMMAND, AnalysisDaemon.COMMAND_RUN);
+		request.setProperty(AnalysisDaemon.KEY_TASK, getClass().getName());
+		writeDaemonRequest(request);
+		Properties response = null;
+		try {
+			response = AnalysisDaemon.submit(daemonPort, request);
+		} catch(IOException ioe) {
+			if( debug )
+				System.out.println("No analysis daemon on port " + daemonPort + ", running locally");
+			return false;
+		}
+		// What the task printed in the daemon belongs to this build
+		String output = response.getProperty(AnalysisDaemon.KEY_OUTPUT);
+		if( output != null )
+			System.out.print(output);
+		if( !AnalysisDaemon.STATUS_OK.equals(response.getProperty(AnalysisDaemon.KEY_STATUS)))
+			throw new BuildException(response.getProperty(AnalysisDaemon.KEY_MESSAGE));
+		return true;
+	}
+	
+	/**
+	 * Store the settings of this task in a daemon request. 
+	 * Subclasses with settings of their own must extend this 
+	 * and {@link #readDaemonRequest(Properties)}.
+	 * 
+	 * @param request the request
+	 */
+	protected void writeDaemonRequest(Properties request) {
+		putPath(request, KEY_BASELINE, referenceBaseline);
+		putPath(request, KEY_PROFILE, profileBaseline);
+		putPath(request, KEY_REPORT, reports);
+		putPath(request, KEY_INCLUDE_LIST, includeListLocation);
+		putPath(request, KEY_EXCLUDE_LIST, excludeListLocation);
+		putPath(request, KEY_FILTERS, filters);
+		if( styleSheet != null )
+			request.setProperty(KEY_STYLE_SHEET, styleSheet);
+		request.setProperty(KEY_SKIP_NON_API, Boolean.toString(skipNonApi));
+		request.setProperty(KEY_DEBUG, Boolean.toString(debug));
+		request.setProperty(KEY_THREADS, Integer.toString(threads));
+		if( properties != null ) {
+			Iterator<Object> keys = properties.keySet().iterator();
+			while(keys.hasNext()) {
+				Object key = keys.next();
+				request.setProperty(PREFERENCE_PREFIX + key, String.valueOf(properties.get(key)));
+			}
+		}
+	}
+	
+	/*
+	 * The daemon does not share our working directory
+	 */
+	private static void putPath(Properties request, String key, String path) {
+		if( path != null )
+			request.setProperty(key, new File(path).getAbsolutePath());
+	}
+	
+	/**
+	 * Apply the settings of a request written by {@link #writeDaemonRequest(Properties)}
+	 * 
+	 * @param request the request
+	 */
+	public void readDaemonRequest(Properties request) {
+		referenceBaseline = request.getProperty(KEY_BASELINE);
+		profileBaseline = request.getProperty(KEY_PROFILE);
+		reports = request.getProperty(KEY_REPORT);
+		includeListLocation = request.getProperty(KEY_INCLUDE_LIST);
+		excludeListLocation = request.getProperty(KEY_EXCLUDE_LIST);
+		filters = request.getProperty(KEY_FILTERS);
+		styleSheet = request.getProperty(KEY_STYLE_SHEET);
+		skipNonApi = Boolean.valueOf(request.getProperty(KEY_SKIP_NON_API)).booleanValue();
+		debug = Boolean.valueOf(request.getProperty(KEY_DEBUG)).booleanValue();
+		threads = Integer.parseInt(request.getProperty(KEY_THREADS, "1")); //$NON-NLS-1$
+		Properties preferences = null;
+		Iterator<Object> keys = request.keySet().iterator();
+		while(keys.hasNext()) {
+			String key = (String)keys.next();
+			if( key.startsWith(PREFERENCE_PREFIX)) {
+				if( preferences == null )
+					preferences = new Properties();
+				preferences.setProperty(key.substring(PREFERENCE_PREFIX.length()), request.getProperty(key));
+			}
+		}
+		properties = preferences;
+		// Never forward again
+		daemonPort = 0;
+	}
+	
+	/**
+	 * Take baselines given as a location from the given repository 
+	 * instead of loading them. Used when running inside a daemon.
+	 * 
+	 * @param repository the repository
+	 */
+	public void useBaselineRepository(BaselineRepository repository) {
+		this.baselineRepository = repository;
 	}
 
 	
@@ -360,4 +540,42 @@ public abstract class AbstractComparisonTask extends Task {
 	public void setSkipNonApi(boolean b) {
 		this.skipNonApi = b;
 	}
+	
+	/**
+	 * Set the number of threads used to load baselines, analyze bundles 
+	 * and compare them. 
+	 * 
+	 * <p>Each bundle is analyzed on its own with a dedicated analyzer, 
+	 * build context and filter store, and compared on its own with its 
+	 * counterpart in the reference baseline. Reports and deltas are merged 
+	 * in the same order regardless of the number of threads.</p>
+	 * <p>Baselines are only loaded in parallel when they are a plain folder 
+	 * of bundles, or an installation without a <code>configuration</code> 
+	 * folder, so that the number of threads never changes which bundles a 
+	 * baseline holds.</p>
+	 * <p>Default is <code>1</code>, which analyzes bundles one after another.</p>
+	 * 
+	 * @param threads the number of worker threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	/**
+	 * Set the loopback port of an analysis daemon to run this task in. 
+	 * 
+	 * <p>The daemon keeps baselines loaded between builds, so that only 
+	 * baselines whose contents changed are loaded again. It is started with 
+	 * <code>java org.eclipse.pde.apitools.ant.internal.AnalysisDaemon &lt;port&gt;</code> 
+	 * and the same classpath as this task, by the same user as the build, since 
+	 * requests must carry the token the daemon writes to 
+	 * <code>~/.apitools/daemon-&lt;port&gt;.token</code>. If no daemon answers on 
+	 * the port, the task runs in the build as usual.</p>
+	 * <p>Default is <code>0</code>, which always runs the task in the build.</p>
+	 * 
+	 * @param daemonPort the port of the daemon
+	 */
+	public void setDaemonPort(int daemonPort) {
+		this.daemonPort = daemonPort;
+	}
 }
@@ -11,8 +11,7 @@ import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
 import org.eclipse.pde.apitools.ant.internal.ApiAnalysisRunner;
 import org.eclipse.pde.apitools.ant.internal.RootReport;
 import org.eclipse.pde.apitools.ant.tasks.Messages;
-import org.eclipse.pde.apitools.ant.util.ReportUtils;
-import org.eclipse.pde.apitools.ant.util.ToolingException;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 public abstract class AbstractDeltaComparisonTask extends AbstractComparisonTask {
 
@@ -24,12 +23,15 @@ public abstract class AbstractDeltaComparisonTask extends AbstractComparisonTask
 	
 	public void execute() throws BuildException {
 		checkArgs();
+		if( submitToDaemon())
+			return;
 		if( debug ) {
 			printArgs();
 			System.out.println("\nRunning " + getTaskName() + " Analysis");
 		}
+		Metrics.Stopwatch total = metrics.start(Metrics.TOTAL);
 
-		// Generate the reports
+		// Load both baselines at once, then apply the inclusion lists
 		ApiAnalysisRunner runner = createAnalysisRunner();
 		runner.createBaselines();
 		runner.createInclusionArrays();
@@ -41,7 +43,7 @@ public abstract class AbstractDeltaComparisonTask extends AbstractComparisonTask
 		/*
 		 * Calculate our delta
 		 */
-		long time = System.currentTimeMillis();
+		Metrics.Stopwatch watch = metrics.start(Metrics.DELTA);
 		if (this.debug) {
 			System.out.println("Beginning Delta Calculation");
 		}
@@ -51,8 +53,9 @@ public abstract class AbstractDeltaComparisonTask extends AbstractComparisonTask
 		} catch(CoreException ce) {
 		}
 
+		long time = watch.stop();
 		if (this.debug) {
-			System.out.println("Delta Calculation Complete : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+			System.out.println("Delta Calculation Complete : " + time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 		runner.disposeBaselines();
 		
@@ -68,15 +71,13 @@ public abstract class AbstractDeltaComparisonTask extends AbstractComparisonTask
 			File outputFile = new File(this.reports, getReportFileName());
 			RootReport report = createReport(delta, runner.getProfileComponents());
 			report.setStyleSheetPath(styleSheet);
-			try {
-				ReportUtils.saveReport(report, outputFile);
-			} catch(ToolingException ioe) {
-				throw new BuildException(ioe);
-			}
+			saveReport(report, outputFile);
 			
 			if (this.debug) {
-				System.out.println("Report generation : " + (System.currentTimeMillis() - time) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+				System.out.println("Report generation : " + metrics.getTime(Metrics.REPORT_SERIALIZATION) + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
 			}
 		}
+		total.stop();
+		saveMetrics();
 	}
 }
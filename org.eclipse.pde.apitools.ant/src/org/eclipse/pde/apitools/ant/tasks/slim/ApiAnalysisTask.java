@@ -11,34 +11,72 @@
 package org.eclipse.pde.apitools.ant.tasks.slim;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Properties;
 
 import org.apache.tools.ant.BuildException;
 import org.eclipse.osgi.util.NLS;
+import org.eclipse.pde.apitools.ant.internal.AbstractAnalysisRunner;
+import org.eclipse.pde.apitools.ant.internal.AnalysisFingerprint;
+import org.eclipse.pde.apitools.ant.internal.AnalysisProfile;
 import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport;
 import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport.AnalysisSkippedReport;
+import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport.PreviousReport;
+import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport.WrittenReport;
 import org.eclipse.pde.apitools.ant.internal.ApiAnalysisRunner;
 import org.eclipse.pde.apitools.ant.internal.IgnoredReport;
-import org.eclipse.pde.apitools.ant.util.ReportUtils;
-import org.eclipse.pde.apitools.ant.util.ToolingException;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 public class ApiAnalysisTask extends AbstractComparisonTask {
-	public static final String REPORT_NAME = "analysisReport.xml";
+	public static final String REPORT_NAME = AbstractAnalysisRunner.REPORT_NAME;
 	public static final String ANALYSIS_SKIPPED_REPORT_NAME = "apiAnalysisSkippedBundles.xml";
+	
+	private static final String KEY_INCREMENTAL = "incremental"; //$NON-NLS-1$
+	private static final String KEY_STREAMING = "streaming"; //$NON-NLS-1$
+	private static final String KEY_ANALYSIS_PROFILE = "analysisProfile"; //$NON-NLS-1$
+	private static final String KEY_PREVIOUS_ANALYSIS_PROFILE = "previousAnalysisProfile"; //$NON-NLS-1$
+	private static final String KEY_ANALYSIS_PROFILE_THRESHOLD = "analysisProfileThreshold"; //$NON-NLS-1$
+	
+	protected boolean incremental = false;
+	protected boolean streaming = false;
+	protected boolean analysisProfile = false;
+	protected String previousAnalysisProfile = null;
+	protected int analysisProfileThreshold = -1;
 
 	public void execute() throws BuildException {
 		checkArgs();
+		if( submitToDaemon())
+			return;
 		if( debug ) {
 			printArgs();
 			System.out.println("\nRunning API Analysis");
 		}
+		Metrics.Stopwatch total = metrics.start(Metrics.TOTAL);
 		
 		// Generate the reports
 		ApiAnalysisRunner runner = createAnalysisRunner();
+		runner.setIncremental(incremental);
+		if( streaming ) {
+			runner.setReportHandler(new AbstractAnalysisRunner.ReportHandler() {
+				public void handleReport(String id, ApiAnalysisReport report) throws BuildException {
+					saveBundleReport(id, report);
+				}
+			});
+		}
+		AnalysisProfile profile = null;
+		AnalysisProfile previousProfile = null;
+		if( analysisProfile || analysisProfileThreshold >= 0 ) {
+			profile = new AnalysisProfile();
+			runner.setProfile(profile);
+			// Read it before this run replaces it
+			previousProfile = AnalysisProfile.load(previousAnalysisProfile == null 
+					? new File(this.reports, AnalysisProfile.XML_FILE_NAME) : new File(previousAnalysisProfile));
+		}
 		HashMap<String, ApiAnalysisReport> reports = runner.generateReports();
 		
 		if( debug )
@@ -47,29 +85,164 @@ public class ApiAnalysisTask extends AbstractComparisonTask {
 		// Iterate and save the reports for each bundle
 		Iterator<String> i = reports.keySet().iterator();
 		while(i.hasNext()) {
-			try {
-				String id = i.next();
-				ApiAnalysisReport report = reports.get(id);
-				if( !(report instanceof AnalysisSkippedReport)) {
-					File file = new File(this.reports, id);
-					File file2 = new File(file, REPORT_NAME);
-					if( debug ) 
-						System.out.println("Saving report for bundle " + id);
-					ReportUtils.saveReport(report, file2);
-				}
-			} catch(ToolingException ioe) {
-				throw new BuildException(ioe);
+			String id = i.next();
+			ApiAnalysisReport report = reports.get(id);
+			if( report instanceof PreviousReport || report instanceof WrittenReport ) {
+				// Still in place from the previous run, or already written
+				continue;
+			}
+			if( !(report instanceof AnalysisSkippedReport)) {
+				saveBundleReport(id, report);
 			}
 		}
 		
 		// Add any skipped / not-analyzed bundle to a file
+		IgnoredReport report = new IgnoredReport(findSkippedReports(reports));
+		saveReport(report, new File(this.reports, ANALYSIS_SKIPPED_REPORT_NAME));
+		if( profile != null )
+			saveProfile(profile, previousProfile);
+		
+		runner.disposeBaselines();
+		total.stop();
+		saveMetrics();
+	}
+	
+	private void saveBundleReport(String id, ApiAnalysisReport report) throws BuildException {
+		if( report instanceof PreviousReport ) {
+			return;
+		}
+		File file = new File(this.reports, id);
+		File file2 = new File(file, REPORT_NAME);
+		if( debug ) 
+			System.out.println("Saving report for bundle " + id);
+		saveReport(report, file2);
+		saveFingerprint(report, new File(file, AnalysisFingerprint.FILE_NAME));
+	}
+	
+	/*
+	 * Flag the bundles whose analysis got slower than allowed, 
+	 * then write the profile next to the reports
+	 */
+	private void saveProfile(AnalysisProfile profile, AnalysisProfile previousProfile) throws BuildException {
+		if( analysisProfileThreshold >= 0 && previousProfile != null ) {
+			AnalysisProfile.Entry[] regressed = profile.compare(previousProfile, analysisProfileThreshold);
+			for( int i = 0; i < regressed.length; i++ ) {
+				System.out.println("Analysis of " + regressed[i].getId() + " took " + regressed[i].getWallTime() 
+						+ "ms, " + regressed[i].getGrowth() + "% more than the " + regressed[i].getPreviousWallTime() 
+						+ "ms of the previous run");
+			}
+		}
 		try {
-			IgnoredReport report = new IgnoredReport(findSkippedReports(reports));
-			ReportUtils.saveReport(report, new File(this.reports, ANALYSIS_SKIPPED_REPORT_NAME));
-		} catch(ToolingException ioe) {
+			profile.save(new File(this.reports));
+		} catch(IOException ioe) {
 			throw new BuildException(ioe);
 		}
-		
-		runner.disposeBaselines();
+	}
+	
+	/*
+	 * Store the fingerprint only once the report itself is saved, 
+	 * and drop any stale one left for a report that cannot be reused
+	 */
+	private void saveFingerprint(ApiAnalysisReport report, File fingerprintFile) {
+		AnalysisFingerprint fingerprint = report.getFingerprint();
+		if( fingerprint == null ) {
+			if( fingerprintFile.exists())
+				fingerprintFile.delete();
+			return;
+		}
+		try {
+			fingerprint.save(fingerprintFile);
+		} catch(IOException ioe) {
+			// The bundle is analyzed again next time
+			fingerprintFile.delete();
+		}
+	}
+	
+	/**
+	 * Set whether bundles whose contents, dependencies, filters and 
+	 * preferences did not change since the previous run should keep 
+	 * their existing report instead of being analyzed again.
+	 * 
+	 * <p>A fingerprint of the analysis inputs is stored next to the report 
+	 * of each bundle in the reports directory.</p>
+	 * <p>Default is <code>false</code>.</p>
+	 * 
+	 * @param incremental true to only analyze bundles whose inputs changed
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+	
+	/**
+	 * Set whether the report of each bundle is written as soon as the bundle 
+	 * is analyzed, instead of once all bundles are analyzed.
+	 * 
+	 * <p>Problems are released once written and, when bundles are analyzed 
+	 * one after another, each bundle is closed once analyzed. Memory use is 
+	 * then bound by the largest bundle rather than by the number of bundles.</p>
+	 * <p>Default is <code>false</code>.</p>
+	 * 
+	 * @param streaming true to write each report as soon as it is generated
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+	
+	/**
+	 * Set whether the wall time, CPU time, allocated bytes and problem count 
+	 * of each bundle's analysis are written to <code>analysisProfile.xml</code> 
+	 * and <code>analysisProfile.csv</code> in the reports directory, slowest 
+	 * bundle first.
+	 * 
+	 * <p>Default is <code>false</code>.</p>
+	 * 
+	 * @param analysisProfile true to profile the analysis of each bundle
+	 */
+	public void setAnalysisProfile(boolean analysisProfile) {
+		this.analysisProfile = analysisProfile;
+	}
+	
+	/**
+	 * Set the profile to compare this run with. 
+	 * 
+	 * <p>Default is the <code>analysisProfile.xml</code> left in the 
+	 * reports directory by the previous run.</p>
+	 * 
+	 * @param previousAnalysisProfile the location of an <code>analysisProfile.xml</code> file
+	 */
+	public void setPreviousAnalysisProfile(String previousAnalysisProfile) {
+		this.previousAnalysisProfile = previousAnalysisProfile;
+	}
+	
+	/**
+	 * Set the growth of a bundle's analysis time, in percent, above which 
+	 * the bundle is flagged as regressed against the previous profile. 
+	 * Setting a threshold turns on the analysis profile.
+	 * 
+	 * <p>Default is no threshold.</p>
+	 * 
+	 * @param analysisProfileThreshold the allowed growth in percent
+	 */
+	public void setAnalysisProfileThreshold(int analysisProfileThreshold) {
+		this.analysisProfileThreshold = analysisProfileThreshold;
+	}
+	
+	protected void writeDaemonRequest(Properties request) {
+		super.writeDaemonRequest(request);
+		request.setProperty(KEY_INCREMENTAL, Boolean.toString(incremental));
+		request.setProperty(KEY_STREAMING, Boolean.toString(streaming));
+		request.setProperty(KEY_ANALYSIS_PROFILE, Boolean.toString(analysisProfile));
+		if( previousAnalysisProfile != null )
+			request.setProperty(KEY_PREVIOUS_ANALYSIS_PROFILE, new File(previousAnalysisProfile).getAbsolutePath());
+		request.setProperty(KEY_ANALYSIS_PROFILE_THRESHOLD, Integer.toString(analysisProfileThreshold));
+	}
+	
+	public void readDaemonRequest(Properties request) {
+		super.readDaemonRequest(request);
+		incremental = Boolean.valueOf(request.getProperty(KEY_INCREMENTAL)).booleanValue();
+		streaming = Boolean.valueOf(request.getProperty(KEY_STREAMING)).booleanValue();
+		analysisProfile = Boolean.valueOf(request.getProperty(KEY_ANALYSIS_PROFILE)).booleanValue();
+		previousAnalysisProfile = request.getProperty(KEY_PREVIOUS_ANALYSIS_PROFILE);
+		analysisProfileThreshold = Integer.parseInt(request.getProperty(KEY_ANALYSIS_PROFILE_THRESHOLD, "-1")); //$NON-NLS-1$
 	}
 }
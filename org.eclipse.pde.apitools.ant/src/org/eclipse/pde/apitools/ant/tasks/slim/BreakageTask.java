@@ -21,8 +21,7 @@ import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport.AnalysisSkippedRe
 import org.eclipse.pde.apitools.ant.internal.ApiAnalysisRunner;
 import org.eclipse.pde.apitools.ant.internal.IgnoredReport;
 import org.eclipse.pde.apitools.ant.internal.WrapperReport;
-import org.eclipse.pde.apitools.ant.util.ReportUtils;
-import org.eclipse.pde.apitools.ant.util.ToolingException;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 /**
  * This class requires two folders:
@@ -50,7 +49,10 @@ public class BreakageTask extends AbstractComparisonTask {
 
 	public void execute() throws BuildException {
 		checkArgs();
+		if( submitToDaemon())
+			return;
 		printArgs();
+		Metrics.Stopwatch total = metrics.start(Metrics.TOTAL);
 		
 		// Generate the reports
 		if( debug ) {
@@ -72,6 +74,8 @@ public class BreakageTask extends AbstractComparisonTask {
 		}
 		
 		runner.disposeBaselines();
+		total.stop();
+		saveMetrics();
 	}
 
 	protected void saveBreakageReport(HashMap<String, ApiAnalysisReport> reportMap) {
@@ -87,13 +91,7 @@ public class BreakageTask extends AbstractComparisonTask {
 			}
 		}
 		
-		try {
-			File file = new File(this.reports);
-			File file2 = new File(file, BREAKAGE_REPORT);
-			ReportUtils.saveReport(main, file2);
-		} catch(ToolingException ioe) {
-			throw new BuildException(ioe);
-		}
+		saveReport(main, new File(this.reports, BREAKAGE_REPORT));
 	}
 	
 	protected int[] getApiBreakageKeys() {
@@ -107,12 +105,8 @@ public class BreakageTask extends AbstractComparisonTask {
 	}
 		
 	protected void saveIgnoredBundlesReport(HashMap<String, ApiAnalysisReport> reportMap) {
-		try {
-			IgnoredReport report = new IgnoredReport(findSkippedReports(reportMap));
-			ReportUtils.saveReport(report, new File(this.reports, BUNDLES_SKIPPED_REPORT));
-		} catch(ToolingException ioe) {
-			throw new BuildException(ioe);
-		}
+		IgnoredReport report = new IgnoredReport(findSkippedReports(reportMap));
+		saveReport(report, new File(this.reports, BUNDLES_SKIPPED_REPORT));
 
 	}
 }
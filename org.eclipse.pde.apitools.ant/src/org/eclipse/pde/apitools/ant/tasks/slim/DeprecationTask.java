@@ -12,12 +12,12 @@ package org.eclipse.pde.apitools.ant.tasks.slim;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.pde.api.tools.internal.provisional.VisibilityModifiers;
-import org.eclipse.pde.api.tools.internal.provisional.comparator.ApiComparator;
 import org.eclipse.pde.api.tools.internal.provisional.comparator.IDelta;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
 import org.eclipse.pde.apitools.ant.internal.DeltaReport;
 import org.eclipse.pde.apitools.ant.internal.RootReport;
+import org.eclipse.pde.apitools.ant.util.ComponentComparator;
 
 /**
  * Ant task to retrieve all deprecation changes (addition or removal) between two api baselines
@@ -34,7 +34,8 @@ public class DeprecationTask extends AbstractDeltaComparisonTask {
 	@Override
 	public IDelta createDelta(IApiBaseline referenceBaseline,
 			IApiBaseline profileBaseline) throws CoreException {
-		return ApiComparator.compare(referenceBaseline, profileBaseline, VisibilityModifiers.API, true, null);
+		// Each pair of components is compared on its own, possibly at the same time
+		return ComponentComparator.compare(referenceBaseline, profileBaseline, VisibilityModifiers.API, threads);
 	}
 
 	@Override
@@ -12,13 +12,14 @@ package org.eclipse.pde.apitools.ant.tasks.slim;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.pde.api.tools.internal.provisional.VisibilityModifiers;
-import org.eclipse.pde.api.tools.internal.provisional.comparator.ApiComparator;
 import org.eclipse.pde.api.tools.internal.provisional.comparator.IDelta;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
 import org.eclipse.pde.apitools.ant.internal.DeltaReport;
 import org.eclipse.pde.apitools.ant.internal.RootReport;
 import org.eclipse.pde.apitools.ant.util.ApiToolsUtils;
+import org.eclipse.pde.apitools.ant.util.ComponentComparator;
+import org.eclipse.pde.apitools.ant.util.Metrics;
 
 /**
  * Ant task to retrieve all deprecation changes (addition or removal) between two api baselines
@@ -35,8 +36,12 @@ public class FreezeTask extends AbstractDeltaComparisonTask {
 	@Override
 	public IDelta createDelta(IApiBaseline referenceBaseline,
 			IApiBaseline profileBaseline) throws CoreException {
-		return ApiComparator.compare(ApiToolsUtils.getResolvableScope(profileBaseline, debug), 
-				referenceBaseline, VisibilityModifiers.API, true, null);
+		Metrics.Stopwatch watch = metrics.start(Metrics.BASELINE_RESOLUTION);
+		IApiComponent[] resolvable = ApiToolsUtils.getResolvableComponents(profileBaseline, debug);
+		watch.stop();
+		// Each resolved component is compared on its own, possibly at the same time
+		return ComponentComparator.compare(resolvable, 
+				referenceBaseline, profileBaseline, VisibilityModifiers.API, threads);
 	}
 
 	@Override
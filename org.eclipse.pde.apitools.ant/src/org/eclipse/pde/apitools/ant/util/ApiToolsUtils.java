@@ -222,8 +222,24 @@ public class ApiToolsUtils {
 	}
 	
 	public static IApiScope getResolvableScope(IApiBaseline currentBaseline, boolean debug) {
-		IApiComponent[] apiComponents = currentBaseline.getApiComponents();
+		IApiComponent[] apiComponents = getResolvableComponents(currentBaseline, debug);
 		ApiScope scope = new ApiScope();
+		for (int i = 0, max = apiComponents.length; i < max; i++) {
+			scope.addElement(apiComponents[i]);
+		}
+		return scope;
+	}
+	
+	/**
+	 * Answer the components of the baseline that resolved without errors
+	 * 
+	 * @param currentBaseline the baseline
+	 * @param debug whether to print the errors of the other components
+	 * @return the resolved components
+	 */
+	public static IApiComponent[] getResolvableComponents(IApiBaseline currentBaseline, boolean debug) {
+		IApiComponent[] apiComponents = currentBaseline.getApiComponents();
+		ArrayList<IApiComponent> resolvable = new ArrayList<IApiComponent>(apiComponents.length);
 		for (int i = 0, max = apiComponents.length; i < max; i++) {
 			IApiComponent apiComponent = apiComponents[i];
 			try {
@@ -237,12 +253,11 @@ public class ApiToolsUtils {
 					}
 					continue;
 				}
-				scope.addElement(apiComponent);
+				resolvable.add(apiComponent);
 			} catch (CoreException e) {
 				// ignore
 			}
 		}
-		return scope;
-
+		return (IApiComponent[]) resolvable.toArray(new IApiComponent[resolvable.size()]);
 	}
 }
@@ -10,18 +10,25 @@
  *******************************************************************************/
 package org.eclipse.pde.apitools.ant.util;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.LineNumberReader;
-import java.io.StringReader;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.tools.ant.BuildException;
 import org.eclipse.core.runtime.CoreException;
@@ -32,13 +39,12 @@ import org.eclipse.pde.api.tools.internal.model.ApiModelFactory;
 import org.eclipse.pde.api.tools.internal.provisional.ApiPlugin;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
 import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
-import org.eclipse.pde.api.tools.internal.util.FilteredElements;
 import org.eclipse.pde.api.tools.internal.util.TarException;
 import org.eclipse.pde.api.tools.internal.util.Util;
 import org.eclipse.pde.apitools.ant.tasks.Messages;
 
 public class BaselineUtils {
-	private static final String ECLIPSE_FOLDER_NAME = "eclipse"; //$NON-NLS-1$
+	public static final String ECLIPSE_FOLDER_NAME = "eclipse"; //$NON-NLS-1$
 
 	
 	/**
@@ -55,6 +61,26 @@ public class BaselineUtils {
 	}
 	
 	public static IApiBaseline createBaseline(String baselineName, String installLocation, String updates, String eeFileLocation) {
+		return createBaseline(baselineName, installLocation, updates, eeFileLocation, 1);
+	}
+	
+	/**
+	 * Creates a baseline, opening up to the given number of bundles at once.
+	 * 
+	 * <p>Bundles are only opened at once in plain bundle folders, where listing 
+	 * the folder finds the same bundles as {@link ApiModelFactory#addComponents}. 
+	 * An installation with a <code>configuration</code> folder is resolved 
+	 * by {@link ApiModelFactory} one bundle after another.</p>
+	 * 
+	 * @param baselineName Name to use for the new baseline
+	 * @param installLocation Location of an installation or directory of bundles to add as API components
+	 * @param updates location of newer bundles to override those from installLocation, or <code>null</code>
+	 * @param eeFileLocation execution environment location or <code>null</code> to have the EE determined from API components
+	 * @param threads the number of bundles to open at once
+	 * @return a new {@link IApiBaseline}
+	 */
+	public static IApiBaseline createBaseline(String baselineName, String installLocation, 
+			String updates, String eeFileLocation, int threads) {
 
 		try {
 			IApiBaseline baseline = null;
@@ -67,10 +93,13 @@ public class BaselineUtils {
 			}
 			
 			IApiComponent[] components = null;
-			if(updates == null) {
+			File bundleFolder = updates == null ? getPlainBundleFolder(installLocation) : null;
+			if(updates == null && (bundleFolder == null || threads <= 1)) {
 				components = ApiModelFactory.addComponents(baseline, installLocation, null);
+			} else if(updates == null) {
+				components = addComponents(baseline, bundleFolder.getAbsolutePath(), null, null, threads);
 			} else {
-				components = addComponents(baseline, installLocation, updates, null);
+				components = addComponents(baseline, installLocation, updates, null, threads);
 			}
 			if (components.length == 0){			
 				throw new BuildException(NLS.bind(Messages.directoryIsEmpty, installLocation));
@@ -83,6 +112,10 @@ public class BaselineUtils {
 	}
 	
 	public static IApiBaseline createBaseline(String baselineName, File[] files) {
+		return createBaseline(baselineName, files, 1);
+	}
+	
+	public static IApiBaseline createBaseline(String baselineName, File[] files, int threads) {
 
 		try {
 			IApiBaseline baseline = null;
@@ -93,7 +126,7 @@ public class BaselineUtils {
 			}
 			
 			IApiComponent[] components = null;
-			components = addComponents(baseline, files, null);
+			components = addComponents(baseline, files, null, threads);
 			if (components.length == 0){			
 				throw new BuildException("No bundles found");
 			}
@@ -111,7 +144,12 @@ public class BaselineUtils {
 	
 	
 	public static IApiComponent[] addComponents(IApiBaseline baseline, File[] files, IProgressMonitor monitor) throws CoreException {
-		IApiComponent[] result = getApiComponentsFromFiles(baseline, files, false);
+		return addComponents(baseline, files, monitor, 1);
+	}
+	
+	public static IApiComponent[] addComponents(IApiBaseline baseline, File[] files, 
+			IProgressMonitor monitor, int threads) throws CoreException {
+		IApiComponent[] result = getApiComponentsFromFiles(baseline, files, false, threads);
 		if(result != null && result.length > 0) {
 			baseline.addApiComponents(result);
 			return result;
@@ -120,6 +158,8 @@ public class BaselineUtils {
 	}
 	
 	private static final String CVS_FOLDER_NAME = "CVS"; //$NON-NLS-1$
+	private static final String PLUGINS_FOLDER_NAME = "plugins"; //$NON-NLS-1$
+	private static final String CONFIGURATION_FOLDER_NAME = "configuration"; //$NON-NLS-1$
 	static class CVSNameFilter implements FilenameFilter {
 		public boolean accept(File dir, String name) {
 			return !name.equalsIgnoreCase(CVS_FOLDER_NAME);
@@ -142,12 +182,23 @@ public class BaselineUtils {
 	 */
 	public static IApiComponent[] addComponents(IApiBaseline baseline, String installLocation, 
 			String updatesLocation, IProgressMonitor monitor) throws CoreException {
+		return addComponents(baseline, installLocation, updatesLocation, monitor, 1);
+	}
+	
+	/**
+	 * Like {@link #addComponents(IApiBaseline, String, String, IProgressMonitor)}, 
+	 * opening up to the given number of bundles at once.
+	 * 
+	 * @param threads the number of bundles to open at once
+	 */
+	public static IApiComponent[] addComponents(IApiBaseline baseline, String installLocation, 
+			String updatesLocation, IProgressMonitor monitor, int threads) throws CoreException {
 		SubMonitor subMonitor = SubMonitor.convert(monitor, "Configuring Baseline", 50);
 		ArrayList<IApiComponent> all = new ArrayList<IApiComponent>();
 		try {
-			// Load our two baselines
-			IApiComponent[] fromBaseline = getComponentsFromLocation(baseline, installLocation);
-			IApiComponent[] fromUpdates = getComponentsFromLocation(baseline, updatesLocation);
+			// Load the updates first, so that replaced bundles can be skipped
+			IApiComponent[] fromUpdates = updatesLocation == null ? ApiModelFactory.NO_COMPONENTS 
+					: getComponentsFromLocation(baseline, updatesLocation, false, threads);
 			
 			// Cache in a map all the bundles from the updates location
 			HashMap<String, IApiComponent> fromUpdatesMap = new HashMap<String, IApiComponent>();
@@ -157,6 +208,9 @@ public class BaselineUtils {
 				}
 			}
 			
+			File[] baselineFiles = listBundleFiles(installLocation);
+			IApiComponent[] fromBaseline = getApiComponentsFromFiles(baseline, baselineFiles, false, threads);
+			
 			// Add from original baseline if updates does not have a replacement
 			for( int i = 0; i < fromBaseline.length; i++ ) {
 				if( fromUpdatesMap.get(fromBaseline[i].getSymbolicName()) == null ) {
@@ -183,29 +237,123 @@ public class BaselineUtils {
 	
 	public static IApiComponent[] getApiComponentsFromFiles(IApiBaseline baseline, 
 			File[] files, boolean ignoreSourceBundles) throws CoreException {
+		return getApiComponentsFromFiles(baseline, files, ignoreSourceBundles, 1);
+	}
+	
+	/**
+	 * Create the API components of the given bundles without adding them to the baseline. 
+	 * Up to the given number of bundles are opened at once; the components are 
+	 * returned in the order of the given files regardless.
+	 * 
+	 * @param baseline the baseline the components will belong to
+	 * @param files the bundles
+	 * @param ignoreSourceBundles whether to leave out source bundles
+	 * @param threads the number of bundles to open at once
+	 * @return the components, possibly empty, never <code>null</code>
+	 * @throws CoreException if a component cannot be created
+	 */
+	public static IApiComponent[] getApiComponentsFromFiles(final IApiBaseline baseline, 
+			File[] files, final boolean ignoreSourceBundles, int threads) throws CoreException {
 		if(files == null) {
 			return ApiModelFactory.NO_COMPONENTS;
 		}
-		List components = new ArrayList();
-		for (int i = 0; i < files.length; i++) {
-			File bundle = files[i];
-			IApiComponent component = ApiModelFactory.newApiComponent(baseline, bundle.getAbsolutePath());
-			if(component != null) {
-				if( !ignoreSourceBundles || !component.isSourceComponent())
+		List<IApiComponent> components = new ArrayList<IApiComponent>();
+		if( threads <= 1 || files.length <= 1 ) {
+			for (int i = 0; i < files.length; i++) {
+				IApiComponent component = loadComponent(baseline, files[i], ignoreSourceBundles);
+				if( component != null )
+					components.add(component);
+			}
+			return (IApiComponent[]) components.toArray(new IApiComponent[components.size()]);
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.length));
+		try {
+			ArrayList<Future<IApiComponent>> futures = new ArrayList<Future<IApiComponent>>(files.length);
+			for (int i = 0; i < files.length; i++) {
+				final File bundle = files[i];
+				futures.add(executor.submit(new Callable<IApiComponent>() {
+					public IApiComponent call() throws Exception {
+						return loadComponent(baseline, bundle, ignoreSourceBundles);
+					}
+				}));
+			}
+			for (int i = 0; i < files.length; i++) {
+				IApiComponent component = futures.get(i).get();
+				if( component != null )
 					components.add(component);
 			}
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new BuildException(ie);
+		} catch(ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if( cause instanceof CoreException )
+				throw (CoreException)cause;
+			if( cause instanceof RuntimeException )
+				throw (RuntimeException)cause;
+			if( cause instanceof Error )
+				throw (Error)cause;
+			throw new BuildException(cause);
+		} finally {
+			executor.shutdownNow();
 		}
 		return (IApiComponent[]) components.toArray(new IApiComponent[components.size()]);
 	}
 	
+	/*
+	 * Create the component of a single bundle, or return null if it is 
+	 * not a bundle or is a source bundle that should be left out. 
+	 * This method must remain safe to call from several threads at once.
+	 */
+	private static IApiComponent loadComponent(IApiBaseline baseline, File bundle, 
+			boolean ignoreSourceBundles) throws CoreException {
+		IApiComponent component = ApiModelFactory.newApiComponent(baseline, bundle.getAbsolutePath());
+		if(component != null) {
+			if( !ignoreSourceBundles || !component.isSourceComponent())
+				return component;
+		}
+		return null;
+	}
+	
 	public static IApiComponent[] getComponentsFromLocation(IApiBaseline baseline, String installLocation, boolean ignoreSourceBundles) throws CoreException {
+		return getComponentsFromLocation(baseline, installLocation, ignoreSourceBundles, 1);
+	}
+	
+	public static IApiComponent[] getComponentsFromLocation(IApiBaseline baseline, String installLocation, 
+			boolean ignoreSourceBundles, int threads) throws CoreException {
 		// The target platform service is unavailable (OSGi isn't running), add components by searching the plug-ins directory
+		File[] files = listBundleFiles(installLocation);
+		if(files != null) {
+			return getApiComponentsFromFiles(baseline, files, ignoreSourceBundles, threads);
+		}
+		return ApiModelFactory.NO_COMPONENTS;
+	}
+	
+	/*
+	 * Answer the folder whose entries are the bundles ApiModelFactory.addComponents
+	 * discovers at the given location: the plugins folder of an installation, 
+	 * or the location itself. Answer null when the location is not a folder, or 
+	 * is an installation whose configuration decides which bundles it holds.
+	 */
+	private static File getPlainBundleFolder(String installLocation) {
+		File dir = new File(installLocation);
+		if( !dir.isDirectory() || new File(dir, CONFIGURATION_FOLDER_NAME).exists())
+			return null;
+		File plugins = new File(dir, PLUGINS_FOLDER_NAME);
+		return plugins.isDirectory() ? plugins : dir;
+	}
+	
+	/*
+	 * List the candidate bundles in the given directory, 
+	 * or return null if it does not exist
+	 */
+	private static File[] listBundleFiles(String installLocation) {
 		File dir = new File(installLocation);
 		if(dir.exists()) {
-			File[] files = dir.listFiles(new CVSNameFilter());
-			return getApiComponentsFromFiles(baseline, files, ignoreSourceBundles);
+			return dir.listFiles(new CVSNameFilter());
 		}
-		return ApiModelFactory.NO_COMPONENTS;
+		return null;
 	}
 	
 	/**
@@ -221,15 +369,15 @@ public class BaselineUtils {
 	
 	public static IApiComponent[] getFilteredElements(IApiBaseline baseline, 
 			String includeListLocation, String excludeListLocation) {
-		FilteredElements excludedElements=null;
-		FilteredElements includedElements=null;
+		ComponentMatcher excludedElements=null;
+		ComponentMatcher includedElements=null;
 		
 		if (excludeListLocation != null) {
-			excludedElements = initializeFilteredElements(
+			excludedElements = ComponentMatcher.getMatcher(
 					excludeListLocation, baseline, false);
 		}
 		if (includeListLocation != null) {
-			includedElements = initializeFilteredElements(
+			includedElements = ComponentMatcher.getMatcher(
 					includeListLocation, baseline, false);
 		}
 		return getFilteredElements(baseline, includedElements, excludedElements);
@@ -242,103 +390,51 @@ public class BaselineUtils {
 	 */
 	public static IApiComponent[] getFilteredElements(
 			IApiBaseline baseline, IApiComponent[] included) {
-		FilteredElements includedElements=
-				initializeRegexFilterList(baseline, 
-				StringUtils.getSymbolicNamesAsString(included, "\n"), false);
+		ComponentMatcher includedElements=
+				ComponentMatcher.compile(
+				StringUtils.getSymbolicNamesAsString(included, "\n"), baseline, false);
 		return getFilteredElements(baseline, includedElements, null);
 	}
 
 	public static IApiComponent[] getFilteredElements(IApiBaseline baseline, 
-			FilteredElements includedElements,
-			FilteredElements excludedElements ) {
+			ComponentMatcher includedElements,
+			ComponentMatcher excludedElements ) {
 		IApiComponent[] all = baseline.getApiComponents();
 		ArrayList<IApiComponent> ret = new ArrayList<IApiComponent>();
 		for( int i = 0; i < all.length; i++ ) {
 			String componentID = all[i].getSymbolicName();
-			if (excludedElements != null
-					&& (excludedElements.containsExactMatch(componentID)
-						|| excludedElements.containsPartialMatch(componentID))) {
+			if (excludedElements != null && excludedElements.matches(componentID)) {
 				continue;
 			}
 			if (includedElements != null && !includedElements.isEmpty()
-					&& !(includedElements.containsExactMatch(componentID)
-						|| includedElements.containsPartialMatch(componentID))) {
+					&& !includedElements.matches(componentID)) {
 				continue;
 			}
 			ret.add(all[i]);
 		}
 		return (IApiComponent[]) ret.toArray(new IApiComponent[ret.size()]);
 	}
-	
 
-	protected static FilteredElements initializeFilteredElements(String filterListLocation, IApiBaseline baseline, boolean debug) {
-		char[] contents2 = null;
-		if (filterListLocation != null) {
-			File file = new File(filterListLocation);
-			if (file.exists()) {
-				InputStream stream = null;
-				try {
-					stream = new BufferedInputStream(new FileInputStream(file));
-					contents2 = Util.getInputStreamAsCharArray(stream, -1, Util.ISO_8859_1);
-				} 
-				catch (FileNotFoundException e) {} 
-				catch (IOException e) {} 
-				finally {
-					if (stream != null) {
-						try {
-							stream.close();
-						} catch (IOException e) {}
-					}
-				}
-			}
-		}
-		return initializeRegexFilterList(baseline, new String(contents2), debug);
+	public static File extractSDK(String installDirName, String location) {
+		return extractSDK(installDirName, location, false);
 	}
-
 	
 	/**
-	 * Initializes the exclude set with regex support. The API baseline is used to determine which
-	 * bundles should be added to the list when processing regex expressions.
+	 * Prepare an installation to build a baseline from. If the location is an 
+	 * archive, it is extracted to a folder with the given name in the temp directory. 
 	 * 
-	 * This is an override of the Util.initializeRegexFilterList method
-	 * which allows a String instead of a file location
+	 * When only bundles are requested and the location is a zip archive, entries 
+	 * are read through the archive's central directory and only the bundles below 
+	 * a plugins folder are written: a jar bundle is copied as a single file without 
+	 * being expanded, a folder bundle is expanded since it must stay a folder. 
+	 * Features, executables and everything else in the archive are never read.
 	 * 
-	 * @param location
-	 * @param baseline
-	 * @return the list of bundles to be excluded
+	 * @param installDirName the name of the folder to extract to
+	 * @param location a folder or an archive
+	 * @param bundlesOnly whether to only extract the bundles of a zip archive
+	 * @return the installation folder
 	 */
-	public static FilteredElements initializeRegexFilterList(IApiBaseline baseline, String contents, boolean debug) {
-		FilteredElements matchedElements = new FilteredElements();
-		if (contents != null) {
-			LineNumberReader reader = new LineNumberReader(new StringReader(contents));
-			String line = null;
-			try {
-				while ((line = reader.readLine()) != null) {
-					line = line.trim();
-					if (line.startsWith("#") || line.length() == 0) { //$NON-NLS-1$
-						continue; 
-					}
-					if(line.startsWith(Util.REGULAR_EXPRESSION_START)) {
-						if(baseline != null) {
-							Util.collectRegexIds(line, matchedElements, baseline.getApiComponents(), debug);
-						}
-					} else {
-						matchedElements.addExactMatch(line);
-					}
-				}
-			} 
-			catch (IOException e) {} 
-			catch (Exception e) {} 
-			finally {
-				try {
-					reader.close();
-				} catch (IOException e) {}
-			}
-		}
-		return matchedElements;
-	}
-	
-	public static File extractSDK(String installDirName, String location) {
+	public static File extractSDK(String installDirName, String location, boolean bundlesOnly) {
 		File file = new File(location);
 		File locationFile = file;
 		if (!locationFile.exists()) {
@@ -362,32 +458,143 @@ public class BaselineUtils {
 								Messages.couldNotCreate,
 								installDir.getAbsolutePath()));
 			}
-			try {
-				if (Util.isZipJarFile(location)) {
+			extractArchive(file, installDir, bundlesOnly);
+			return new File(installDir, ECLIPSE_FOLDER_NAME);
+		} else {
+			return locationFile;
+		}
+	}
+	
+	/**
+	 * Extract an archive into the given folder.
+	 * 
+	 * @param archive a zip or tar.gz archive
+	 * @param installDir an existing folder
+	 * @param bundlesOnly whether to only extract the bundles of a zip archive
+	 * @see #extractSDK(String, String, boolean)
+	 */
+	public static void extractArchive(File archive, File installDir, boolean bundlesOnly) {
+		String location = archive.getAbsolutePath();
+		try {
+			if (Util.isZipJarFile(location)) {
+				if( bundlesOnly ) {
+					extractBundles(archive, installDir);
+				} else {
 					Util.unzip(location, installDir.getAbsolutePath());
-				} else if (Util.isTGZFile(location)) {
-					Util.guntar(location, installDir.getAbsolutePath());
 				}
-			} catch (IOException e) {
-				throw new BuildException(
+			} else if (Util.isTGZFile(location)) {
+				Util.guntar(location, installDir.getAbsolutePath());
+			}
+		} catch (IOException e) {
+			throw new BuildException(
+				NLS.bind(
+					Messages.couldNotUnzip,
+					new String[] {
+							location,
+							installDir.getAbsolutePath()
+					}));
+		} catch (TarException e) {
+			throw new BuildException(
 					NLS.bind(
-						Messages.couldNotUnzip,
-						new String[] {
-								location,
-								installDir.getAbsolutePath()
-						}));
-			} catch (TarException e) {
-				throw new BuildException(
-						NLS.bind(
-								Messages.couldNotUntar,
-								new String[] {
-										location,
-										installDir.getAbsolutePath()
-								}));
+							Messages.couldNotUntar,
+							new String[] {
+									location,
+									installDir.getAbsolutePath()
+							}));
+		}
+	}
+	
+	private static final String PLUGINS_SEGMENT = "plugins/"; //$NON-NLS-1$
+	
+	/*
+	 * Write only the bundles found below a plugins folder of the archive
+	 */
+	private static void extractBundles(File archive, File installDir) throws IOException {
+		ZipFile zip = new ZipFile(archive);
+		try {
+			// Folder bundles are recognized by their manifest
+			HashSet<String> folderBundles = new HashSet<String>();
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while(entries.hasMoreElements()) {
+				String name = entries.nextElement().getName();
+				int start = getBundlesStart(name);
+				if( start == -1 )
+					continue;
+				int end = name.indexOf('/', start);
+				if( end == -1 )
+					continue;
+				String rest = name.substring(end + 1);
+				if( rest.equals(JarFile.MANIFEST_NAME) || rest.equals("plugin.xml") || rest.equals("fragment.xml")) { //$NON-NLS-1$ //$NON-NLS-2$
+					folderBundles.add(name.substring(0, end + 1));
+				}
+			}
+			
+			byte[] buffer = new byte[8192];
+			entries = zip.entries();
+			while(entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				String name = entry.getName();
+				if( entry.isDirectory() || name.indexOf("..") != -1 ) //$NON-NLS-1$
+					continue;
+				int start = getBundlesStart(name);
+				if( start == -1 )
+					continue;
+				int end = name.indexOf('/', start);
+				boolean wanted = end == -1 ? Util.isArchive(name) 
+						: folderBundles.contains(name.substring(0, end + 1));
+				if( wanted )
+					copyEntry(zip, entry, new File(installDir, name), buffer);
+			}
+		} finally {
+			try {
+				zip.close();
+			} catch(IOException e) {
+				// ignore
+			}
+		}
+	}
+	
+	/*
+	 * Answer where the name of a bundle starts in the given entry name, 
+	 * or -1 if the entry is not below a plugins folder
+	 */
+	private static int getBundlesStart(String name) {
+		if( name.startsWith(PLUGINS_SEGMENT))
+			return PLUGINS_SEGMENT.length();
+		int index = name.indexOf('/' + PLUGINS_SEGMENT);
+		return index == -1 ? -1 : index + PLUGINS_SEGMENT.length() + 1;
+	}
+	
+	private static void copyEntry(ZipFile zip, ZipEntry entry, File target, byte[] buffer) throws IOException {
+		File parent = target.getParentFile();
+		if( !parent.exists() && !parent.mkdirs())
+			throw new IOException(NLS.bind(Messages.couldNotCreate, parent.getAbsolutePath()));
+		InputStream in = null;
+		OutputStream out = null;
+		try {
+			in = zip.getInputStream(entry);
+			out = new FileOutputStream(target);
+			int read;
+			while((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			if( in != null ) {
+				try {
+					in.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+			if( out != null ) {
+				try {
+					out.close();
+				} catch(IOException e) {
+					// ignore
+				}
 			}
-			return new File(installDir, ECLIPSE_FOLDER_NAME);
-		} else {
-			return locationFile;
 		}
+		if( entry.getTime() != -1 )
+			target.setLastModified(entry.getTime());
 	}
 }
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Identifies the content of a bundle on disk by its path, size, 
+ * last modification time and a SHA-256 digest of its bytes. 
+ * 
+ * Directory-shaped bundles are fingerprinted over all the files they 
+ * contain, in sorted order, with their relative paths.
+ */
+public class BundleFingerprint {
+	private static final String DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+	private static final int BUFFER_SIZE = 8192;
+	
+	/*
+	 * Fingerprints of the files read by this process, keyed by path.
+	 */
+	private static final HashMap<String, BundleFingerprint> fingerprints = new HashMap<String, BundleFingerprint>();
+	
+	private String path;
+	private long size;
+	private long lastModified;
+	private String digest;
+
+	public BundleFingerprint(String path, long size, long lastModified, String digest) {
+		this.path = path;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.digest = digest;
+	}
+	
+	/**
+	 * Create a fingerprint for the given file or directory, 
+	 * reading its full contents to compute the digest.
+	 * 
+	 * @param file a bundle jar or directory
+	 * @return the fingerprint
+	 * @throws IOException if the file cannot be read
+	 */
+	public static BundleFingerprint create(File file) throws IOException {
+		long[] stat = stat(file);
+		return new BundleFingerprint(file.getAbsolutePath(), stat[0], stat[1], computeDigest(file));
+	}
+	
+	/**
+	 * Answer the fingerprint of the given file or directory, reading its 
+	 * contents only if this process did not read them since its size or 
+	 * modification time last changed.
+	 * 
+	 * @param file a bundle jar or directory
+	 * @return the fingerprint
+	 * @throws IOException if the file cannot be read
+	 */
+	public static BundleFingerprint getFingerprint(File file) throws IOException {
+		String path = file.getAbsolutePath();
+		BundleFingerprint fingerprint = null;
+		synchronized(fingerprints) {
+			fingerprint = fingerprints.get(path);
+		}
+		if( fingerprint == null || !fingerprint.matchesStat(file)) {
+			fingerprint = create(file);
+			synchronized(fingerprints) {
+				fingerprints.put(path, fingerprint);
+			}
+		}
+		return fingerprint;
+	}
+	
+	/**
+	 * @param file a bundle jar or directory
+	 * @return the digest of its contents, as answered by {@link #getFingerprint(File)}
+	 * @throws IOException if the file cannot be read
+	 */
+	public static String getContentDigest(File file) throws IOException {
+		return getFingerprint(file).getDigest();
+	}
+	
+	/**
+	 * Return the total size and the most recent modification time 
+	 * of the given file or directory, without reading its contents.
+	 * 
+	 * @param file a file or a directory
+	 * @return an array of { size, lastModified }
+	 */
+	public static long[] stat(File file) {
+		if( !file.isDirectory())
+			return new long[] { file.length(), file.lastModified() };
+		long[] ret = new long[] { 0, file.lastModified() };
+		File[] children = file.listFiles();
+		if( children != null ) {
+			for( int i = 0; i < children.length; i++ ) {
+				long[] child = stat(children[i]);
+				ret[0] += child[0];
+				ret[1] = Math.max(ret[1], child[1]);
+			}
+		}
+		return ret;
+	}
+	
+	public static String computeDigest(File file) throws IOException {
+		MessageDigest md = newDigest();
+		updateDigest(md, file, ""); //$NON-NLS-1$
+		return toHex(md.digest());
+	}
+	
+	public static String computeDigest(String s) {
+		MessageDigest md = newDigest();
+		try {
+			md.update(s.getBytes("UTF-8")); //$NON-NLS-1$
+		} catch(IOException ioe) {
+			// UTF-8 is always supported
+		}
+		return toHex(md.digest());
+	}
+	
+	private static void updateDigest(MessageDigest md, File file, String relative) throws IOException {
+		if( file.isDirectory()) {
+			File[] children = file.listFiles();
+			if( children == null )
+				return;
+			Arrays.sort(children);
+			for( int i = 0; i < children.length; i++ ) {
+				String childPath = relative + "/" + children[i].getName(); //$NON-NLS-1$
+				md.update(childPath.getBytes("UTF-8")); //$NON-NLS-1$
+				updateDigest(md, children[i], childPath);
+			}
+			return;
+		}
+		InputStream is = null;
+		try {
+			is = new BufferedInputStream(new FileInputStream(file));
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read = 0;
+			while((read = is.read(buffer)) != -1) {
+				md.update(buffer, 0, read);
+			}
+		} finally {
+			if( is != null ) {
+				try {
+					is.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+	
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch(NoSuchAlgorithmException nsae) {
+			// Every JRE is required to provide SHA-256
+			throw new IllegalStateException(nsae);
+		}
+	}
+	
+	private static String toHex(byte[] bytes) {
+		StringBuffer sb = new StringBuffer(bytes.length * 2);
+		for( int i = 0; i < bytes.length; i++ ) {
+			int b = bytes[i] & 0xff;
+			if( b < 0x10 )
+				sb.append('0');
+			sb.append(Integer.toHexString(b));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Returns whether the file on disk still has the size and 
+	 * modification time recorded in this fingerprint. 
+	 * 
+	 * @param file the file to compare
+	 * @return true if neither size nor modification time changed
+	 */
+	public boolean matchesStat(File file) {
+		long[] stat = stat(file);
+		return stat[0] == size && stat[1] == lastModified;
+	}
+	
+	public String getPath() {
+		return path;
+	}
+	
+	public long getSize() {
+		return size;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+	
+	public String getDigest() {
+		return digest;
+	}
+	
+	public void write(DataOutputStream out) throws IOException {
+		out.writeUTF(path);
+		out.writeLong(size);
+		out.writeLong(lastModified);
+		out.writeUTF(digest);
+	}
+	
+	public static BundleFingerprint read(DataInputStream in) throws IOException {
+		return new BundleFingerprint(in.readUTF(), in.readLong(), in.readLong(), in.readUTF());
+	}
+	
+	public boolean equals(Object obj) {
+		if( !(obj instanceof BundleFingerprint))
+			return false;
+		BundleFingerprint other = (BundleFingerprint)obj;
+		return path.equals(other.path) && size == other.size 
+				&& digest.equals(other.digest);
+	}
+	
+	public int hashCode() {
+		return digest.hashCode();
+	}
+	
+	public String toString() {
+		return path + " [" + size + ", " + digest + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
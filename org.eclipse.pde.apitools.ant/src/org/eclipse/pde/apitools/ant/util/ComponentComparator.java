@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.tools.ant.BuildException;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.pde.api.tools.internal.comparator.Delta;
+import org.eclipse.pde.api.tools.internal.provisional.comparator.ApiComparator;
+import org.eclipse.pde.api.tools.internal.provisional.comparator.IDelta;
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
+
+/**
+ * Compares two baselines one pair of components at a time, so that
+ * the pairs can be compared on several threads.
+ *
+ * The deltas of all pairs are added to a single root delta in the
+ * order the pairs were formed, so the result does not depend on the
+ * number of threads.
+ */
+public class ComponentComparator {
+
+	/**
+	 * Compare all components of two baselines, as
+	 * {@link ApiComparator#compare(IApiBaseline, IApiBaseline, int, boolean, org.eclipse.core.runtime.IProgressMonitor)} does.
+	 * Components only found in one of the baselines are reported as added or removed.
+	 *
+	 * @param referenceBaseline the reference baseline
+	 * @param baseline the baseline to compare with the reference
+	 * @param visibilityModifiers the visibility to compare
+	 * @param threads the number of pairs to compare at once
+	 * @return the root delta, or {@link ApiComparator#NO_DELTA}
+	 * @throws CoreException if a comparison fails
+	 */
+	public static IDelta compare(IApiBaseline referenceBaseline, IApiBaseline baseline,
+			int visibilityModifiers, int threads) throws CoreException {
+		ArrayList<IApiComponent[]> pairs = new ArrayList<IApiComponent[]>();
+		HashSet<String> paired = new HashSet<String>();
+		IApiComponent[] references = referenceBaseline.getApiComponents();
+		for( int i = 0; i < references.length; i++ ) {
+			if( references[i].isSystemComponent())
+				continue;
+			String id = references[i].getSymbolicName();
+			paired.add(id);
+			pairs.add(new IApiComponent[] { references[i], baseline.getApiComponent(id) });
+		}
+		IApiComponent[] components = baseline.getApiComponents();
+		for( int i = 0; i < components.length; i++ ) {
+			if( !components[i].isSystemComponent() && !paired.contains(components[i].getSymbolicName()))
+				pairs.add(new IApiComponent[] { null, components[i] });
+		}
+		return compare(pairs, referenceBaseline, baseline, visibilityModifiers, threads);
+	}
+
+	/**
+	 * Compare the given components with their counterparts in the reference baseline,
+	 * as comparing a scope of these components with
+	 * {@link ApiComparator#compare(org.eclipse.pde.api.tools.internal.provisional.model.IApiScope, IApiBaseline, int, boolean, org.eclipse.core.runtime.IProgressMonitor)} does.
+	 * Components missing from the reference baseline are reported as added.
+	 *
+	 * @param components the components to compare
+	 * @param referenceBaseline the reference baseline
+	 * @param baseline the baseline the components belong to
+	 * @param visibilityModifiers the visibility to compare
+	 * @param threads the number of pairs to compare at once
+	 * @return the root delta, or {@link ApiComparator#NO_DELTA}
+	 * @throws CoreException if a comparison fails
+	 */
+	public static IDelta compare(IApiComponent[] components, IApiBaseline referenceBaseline,
+			IApiBaseline baseline, int visibilityModifiers, int threads) throws CoreException {
+		ArrayList<IApiComponent[]> pairs = new ArrayList<IApiComponent[]>();
+		for( int i = 0; i < components.length; i++ ) {
+			if( components[i].isSystemComponent())
+				continue;
+			IApiComponent reference = referenceBaseline.getApiComponent(components[i].getSymbolicName());
+			pairs.add(new IApiComponent[] { reference, components[i] });
+		}
+		return compare(pairs, referenceBaseline, baseline, visibilityModifiers, threads);
+	}
+
+	private static IDelta compare(final ArrayList<IApiComponent[]> pairs, final IApiBaseline referenceBaseline,
+			final IApiBaseline baseline, final int visibilityModifiers, int threads) throws CoreException {
+		IDelta[] deltas = new IDelta[pairs.size()];
+		if( threads <= 1 || pairs.size() <= 1 ) {
+			for( int i = 0; i < deltas.length; i++ ) {
+				IApiComponent[] pair = pairs.get(i);
+				deltas[i] = ApiComparator.compare(pair[0], pair[1], referenceBaseline, baseline, visibilityModifiers, null);
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, pairs.size()));
+			try {
+				ArrayList<Future<IDelta>> futures = new ArrayList<Future<IDelta>>(pairs.size());
+				for( int i = 0; i < deltas.length; i++ ) {
+					final IApiComponent[] pair = pairs.get(i);
+					futures.add(executor.submit(new Callable<IDelta>() {
+						public IDelta call() throws Exception {
+							return ApiComparator.compare(pair[0], pair[1], referenceBaseline, baseline, visibilityModifiers, null);
+						}
+					}));
+				}
+				for( int i = 0; i < deltas.length; i++ ) {
+					deltas[i] = futures.get(i).get();
+				}
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new BuildException(ie);
+			} catch(ExecutionException ee) {
+				Throwable cause = ee.getCause();
+				if( cause instanceof CoreException )
+					throw (CoreException)cause;
+				if( cause instanceof RuntimeException )
+					throw (RuntimeException)cause;
+				if( cause instanceof Error )
+					throw (Error)cause;
+				throw new BuildException(cause);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		Delta root = new Delta();
+		for( int i = 0; i < deltas.length; i++ ) {
+			if( deltas[i] != null && deltas[i] != ApiComparator.NO_DELTA )
+				root.add(deltas[i]);
+		}
+		return root.isEmpty() ? ApiComparator.NO_DELTA : root;
+	}
+}
@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
+import org.eclipse.pde.api.tools.internal.util.Util;
+
+/**
+ * An inclusion or exclusion list compiled for one baseline.
+ *
+ * Matches the same names as the {@link org.eclipse.pde.api.tools.internal.util.FilteredElements}
+ * read from the same list: a name matches if it is listed, or if it starts
+ * with the symbolic name of a baseline component matched by one of the
+ * regular expressions of the list. Listed names are kept in a hash set and
+ * the names matched by regular expressions in a prefix tree, so a lookup
+ * costs the length of the name whatever the length of the list. The regular
+ * expressions are combined into a single one where possible, so the components
+ * of the baseline are only matched once.
+ *
+ * Matchers of list files are shared by all tasks using the same baseline
+ * instance, until the list file changes.
+ */
+public class ComponentMatcher {
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+	private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]"); //$NON-NLS-1$
+
+	/*
+	 * Baselines are equal when their names are, and every task names its baselines
+	 * the same, so the matchers are kept per baseline instance instead
+	 */
+	private static final HashMap<BaselineKey, HashMap<String, ComponentMatcher>> matchers
+		= new HashMap<BaselineKey, HashMap<String, ComponentMatcher>>();
+	private static final ReferenceQueue<IApiBaseline> collected = new ReferenceQueue<IApiBaseline>();
+
+	/*
+	 * Weak reference to a baseline, equal to the references to the same instance only
+	 */
+	private static class BaselineKey extends WeakReference<IApiBaseline> {
+		private final int hash;
+
+		private BaselineKey(IApiBaseline baseline, ReferenceQueue<IApiBaseline> queue) {
+			super(baseline, queue);
+			this.hash = System.identityHashCode(baseline);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object obj) {
+			if( obj == this )
+				return true;
+			if( !(obj instanceof BaselineKey))
+				return false;
+			IApiBaseline baseline = get();
+			return baseline != null && baseline == ((BaselineKey)obj).get();
+		}
+	}
+
+	/*
+	 * A node of the prefix tree
+	 */
+	private static class Node {
+		private HashMap<Character, Node> children;
+		private boolean terminal;
+	}
+
+	private HashSet<String> exactMatches = new HashSet<String>();
+	private Node prefixes = new Node();
+	private TreeSet<String> prefixNames = new TreeSet<String>();
+
+	private ComponentMatcher() {
+	}
+
+	/**
+	 * Answer the matcher of the given list for the given baseline,
+	 * compiling it unless it was compiled for this baseline already
+	 * and the list did not change since
+	 *
+	 * @param listLocation the list file, or <code>null</code>
+	 * @param baseline the baseline the regular expressions are matched against
+	 * @param debug whether to print the names matched by regular expressions
+	 * @return the matcher, empty if there is no list
+	 */
+	public static ComponentMatcher getMatcher(String listLocation, IApiBaseline baseline, boolean debug) {
+		if( listLocation == null )
+			return new ComponentMatcher();
+		File file = new File(listLocation);
+		String key;
+		try {
+			key = file.getCanonicalPath();
+		} catch(IOException ioe) {
+			key = file.getAbsolutePath();
+		}
+		key = key + ':' + file.length() + ':' + file.lastModified();
+		HashMap<String, ComponentMatcher> forBaseline = null;
+		if( baseline != null ) {
+			synchronized(matchers) {
+				Reference<? extends IApiBaseline> stale = null;
+				while((stale = collected.poll()) != null) {
+					matchers.remove(stale);
+				}
+				forBaseline = matchers.get(new BaselineKey(baseline, null));
+				if( forBaseline == null ) {
+					forBaseline = new HashMap<String, ComponentMatcher>();
+					matchers.put(new BaselineKey(baseline, collected), forBaseline);
+				}
+				ComponentMatcher matcher = forBaseline.get(key);
+				if( matcher != null )
+					return matcher;
+			}
+		}
+		ComponentMatcher matcher = load(listLocation, baseline, debug);
+		if( forBaseline != null ) {
+			synchronized(matchers) {
+				forBaseline.put(key, matcher);
+			}
+		}
+		return matcher;
+	}
+
+	/**
+	 * Compile the given list file, without sharing the result
+	 *
+	 * @param listLocation the list file
+	 * @param baseline the baseline the regular expressions are matched against, or <code>null</code>
+	 * @param debug whether to print the names matched by regular expressions
+	 * @return the matcher, empty if the file cannot be read
+	 */
+	public static ComponentMatcher load(String listLocation, IApiBaseline baseline, boolean debug) {
+		File file = new File(listLocation);
+		if( !file.exists())
+			return new ComponentMatcher();
+		InputStream stream = null;
+		try {
+			stream = new BufferedInputStream(new FileInputStream(file));
+			char[] contents = Util.getInputStreamAsCharArray(stream, -1, Util.ISO_8859_1);
+			return compile(new String(contents), baseline, debug);
+		} catch(IOException ioe) {
+			return new ComponentMatcher();
+		} finally {
+			if( stream != null ) {
+				try {
+					stream.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compile the contents of a list
+	 *
+	 * @param contents one name or <code>R:</code> regular expression per line
+	 * @param baseline the baseline the regular expressions are matched against, or <code>null</code>
+	 * @param debug whether to print the names matched by regular expressions
+	 * @return the matcher
+	 */
+	public static ComponentMatcher compile(String contents, IApiBaseline baseline, boolean debug) {
+		ComponentMatcher matcher = new ComponentMatcher();
+		if( contents == null )
+			return matcher;
+		ArrayList<String> regexes = new ArrayList<String>();
+		LineNumberReader reader = new LineNumberReader(new StringReader(contents));
+		try {
+			String line = null;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if( line.startsWith("#") || line.length() == 0 ) //$NON-NLS-1$
+					continue;
+				if( line.startsWith(Util.REGULAR_EXPRESSION_START)) {
+					regexes.add(line.substring(Util.REGULAR_EXPRESSION_START.length()));
+				} else {
+					matcher.exactMatches.add(line);
+				}
+			}
+		} catch(IOException ioe) {
+			// cannot happen on a string
+		}
+		if( baseline != null && regexes.size() > 0 )
+			matcher.addRegexMatches(regexes, baseline.getApiComponents(), debug);
+		return matcher;
+	}
+
+	/*
+	 * Match every component once against all regular expressions,
+	 * and keep the names of those matching as prefixes
+	 */
+	private void addRegexMatches(ArrayList<String> regexes, IApiComponent[] components, boolean debug) {
+		StringBuffer combined = new StringBuffer();
+		ArrayList<Pattern> combinable = new ArrayList<Pattern>();
+		ArrayList<Pattern> separate = new ArrayList<Pattern>();
+		Iterator<String> it = regexes.iterator();
+		while(it.hasNext()) {
+			String regex = it.next();
+			Pattern pattern = null;
+			try {
+				pattern = Pattern.compile(regex);
+			} catch(PatternSyntaxException pse) {
+				if( debug )
+					System.out.println("Invalid regular expression : " + regex); //$NON-NLS-1$
+				continue;
+			}
+			// Group numbers shift once combined, so back references stay apart
+			if( BACK_REFERENCE.matcher(regex).find()) {
+				separate.add(pattern);
+			} else {
+				combinable.add(pattern);
+				if( combined.length() > 0 )
+					combined.append('|');
+				combined.append("(?:").append(regex).append(')'); //$NON-NLS-1$
+			}
+		}
+		if( combined.length() > 0 ) {
+			try {
+				separate.add(0, Pattern.compile(combined.toString()));
+			} catch(PatternSyntaxException pse) {
+				// An expression valid on its own may not be once combined, e.g. with embedded flags
+				if( debug )
+					System.out.println("Cannot combine the regular expressions, matching them one by one"); //$NON-NLS-1$
+				separate.addAll(0, combinable);
+			}
+		}
+		Pattern[] patterns = separate.toArray(new Pattern[separate.size()]);
+		for( int i = 0; i < components.length; i++ ) {
+			String id = components[i].getSymbolicName();
+			for( int j = 0; j < patterns.length; j++ ) {
+				if( patterns[j].matcher(id).matches()) {
+					if( debug )
+						System.out.println(id + " matched the pattern " + patterns[j].pattern()); //$NON-NLS-1$
+					addPrefix(id);
+					break;
+				}
+			}
+		}
+	}
+
+	private void addPrefix(String prefix) {
+		Node node = prefixes;
+		for( int i = 0; i < prefix.length(); i++ ) {
+			if( node.children == null )
+				node.children = new HashMap<Character, Node>();
+			Character c = new Character(prefix.charAt(i));
+			Node child = node.children.get(c);
+			if( child == null ) {
+				child = new Node();
+				node.children.put(c, child);
+			}
+			node = child;
+		}
+		node.terminal = true;
+		prefixNames.add(prefix);
+	}
+
+	/**
+	 * @param name the symbolic name of a component
+	 * @return whether the list matches the name
+	 */
+	public boolean matches(String name) {
+		return exactMatches.contains(name) || hasPrefixOf(name);
+	}
+
+	private boolean hasPrefixOf(String name) {
+		Node node = prefixes;
+		for( int i = 0; ; i++ ) {
+			if( node.terminal )
+				return true;
+			if( i == name.length() || node.children == null )
+				return false;
+			node = node.children.get(new Character(name.charAt(i)));
+			if( node == null )
+				return false;
+		}
+	}
+
+	/**
+	 * @return whether the list matches no name at all
+	 */
+	public boolean isEmpty() {
+		return exactMatches.isEmpty() && prefixNames.isEmpty();
+	}
+
+	/*
+	 * Lists the listed names and the names matched by regular expressions,
+	 * for debug output
+	 */
+	public String toString() {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("Exact matches:").append(LINE_SEPARATOR); //$NON-NLS-1$
+		appendNames(buffer, new TreeSet<String>(exactMatches));
+		buffer.append("Partial matches:").append(LINE_SEPARATOR); //$NON-NLS-1$
+		appendNames(buffer, prefixNames);
+		return buffer.toString();
+	}
+
+	private static void appendNames(StringBuffer buffer, TreeSet<String> names) {
+		if( names.isEmpty()) {
+			buffer.append("\t<empty>").append(LINE_SEPARATOR); //$NON-NLS-1$
+			return;
+		}
+		Iterator<String> it = names.iterator();
+		while(it.hasNext()) {
+			buffer.append('\t').append(it.next()).append(LINE_SEPARATOR);
+		}
+	}
+}
@@ -18,7 +18,7 @@ import java.util.List;
  * translated into xml
  *
  */
-public interface IMemento {
+public interface IMemento extends IMementoWriter {
 	/**
 	 * Creates a new child of this memento with the given type.
 	 * <p>
@@ -110,4 +110,11 @@ public interface IMemento {
 	 * @param value the value
 	 */
 	public void putString(String key, String value);
+
+	/**
+	 * Sets the text content of this memento.
+	 *
+	 * @param data the text
+	 */
+	public void putTextData(String data);
 }
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.util;
+
+/**
+ * The write half of {@link IMemento}, for mementos whose
+ * contents cannot be read back once written
+ */
+public interface IMementoWriter {
+	/**
+	 * Creates a new child of this memento with the given type.
+	 *
+	 * @param type the type
+	 * @return a new child memento
+	 */
+	public IMementoWriter createChild(String type);
+
+	/**
+	 * Sets the value of the given key to the given integer.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void putInteger(String key, int value);
+
+	/**
+	 * Sets the value of the given key to the given boolean value.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void putBoolean(String key, boolean value);
+
+	/**
+	 * Sets the value of the given key to the given string.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 */
+	public void putString(String key, String value);
+
+	/**
+	 * Sets the text content of this memento.
+	 *
+	 * @param data the text
+	 */
+	public void putTextData(String data);
+}
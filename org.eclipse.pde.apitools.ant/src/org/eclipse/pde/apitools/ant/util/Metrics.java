@@ -0,0 +1,280 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Named timers, counters and histograms collected while a task runs,
+ * written as <code>metrics.json</code> next to the reports of the task.
+ * The analysis, comparison, freeze, deprecation, use and migration tasks
+ * write it; the report conversion tasks and the <code>.api_description</code>
+ * generation do not.
+ *
+ * A timer sums the durations recorded under its name, a counter sums
+ * its increments, and a histogram keeps every value recorded so that
+ * its percentiles can be written. Metrics are written in the order
+ * they were first recorded. All methods may be called from several
+ * threads at once.
+ */
+public class Metrics {
+	public static final String FILE_NAME = "metrics.json"; //$NON-NLS-1$
+
+	// Timers
+	public static final String BASELINE_REFERENCE_LOAD = "baseline.reference.load"; //$NON-NLS-1$
+	public static final String BASELINE_PROFILE_LOAD = "baseline.profile.load"; //$NON-NLS-1$
+	public static final String BASELINES_LOAD = "baselines.load"; //$NON-NLS-1$
+	public static final String EXTRACTION = "extraction"; //$NON-NLS-1$
+	public static final String BASELINE_RESOLUTION = "baseline.resolution"; //$NON-NLS-1$
+	public static final String INCLUSION = "inclusion"; //$NON-NLS-1$
+	public static final String ANALYSIS = "analysis"; //$NON-NLS-1$
+	public static final String DELTA = "delta"; //$NON-NLS-1$
+	public static final String REPORT_SERIALIZATION = "report.serialization"; //$NON-NLS-1$
+	public static final String CLEANUP = "cleanup"; //$NON-NLS-1$
+	public static final String TOTAL = "total"; //$NON-NLS-1$
+
+	// Counters
+	public static final String BUNDLES_ANALYZED = "bundles.analyzed"; //$NON-NLS-1$
+	public static final String BUNDLES_SKIPPED = "bundles.skipped"; //$NON-NLS-1$
+	public static final String BUNDLES_REUSED = "bundles.reused"; //$NON-NLS-1$
+	public static final String PROBLEMS = "problems"; //$NON-NLS-1$
+	public static final String FILTER_CHECKS = "filter.checks"; //$NON-NLS-1$
+	public static final String FILTER_HITS = "filter.hits"; //$NON-NLS-1$
+	public static final String REPORT_FILES = "report.files"; //$NON-NLS-1$
+	public static final String REPORT_BYTES = "report.bytes"; //$NON-NLS-1$
+
+	// Histograms
+	public static final String BUNDLE_ANALYSIS_TIME = "bundle.analysis.ms"; //$NON-NLS-1$
+	public static final String BUNDLE_PROBLEMS = "bundle.problems"; //$NON-NLS-1$
+
+	/**
+	 * Measures one duration of a timer
+	 */
+	public class Stopwatch {
+		private String name;
+		private long start;
+
+		private Stopwatch(String name) {
+			this.name = name;
+			this.start = System.nanoTime();
+		}
+
+		/**
+		 * Add the time elapsed since this stopwatch was started to its timer
+		 *
+		 * @return the time elapsed, in milliseconds
+		 */
+		public long stop() {
+			long elapsed = (System.nanoTime() - start) / 1000000;
+			time(name, elapsed);
+			return elapsed;
+		}
+	}
+
+	private static class Timer {
+		private long count;
+		private long total;
+		private long max;
+	}
+
+	private static class Histogram {
+		private long[] values = new long[16];
+		private int size;
+
+		private void add(long value) {
+			if( size == values.length )
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+	}
+
+	private LinkedHashMap<String, Timer> timers = new LinkedHashMap<String, Timer>();
+	private LinkedHashMap<String, Long> counters = new LinkedHashMap<String, Long>();
+	private LinkedHashMap<String, Histogram> histograms = new LinkedHashMap<String, Histogram>();
+
+	/**
+	 * Start measuring a duration of the given timer
+	 *
+	 * @param name the name of the timer
+	 * @return a stopwatch to stop once done
+	 */
+	public Stopwatch start(String name) {
+		return new Stopwatch(name);
+	}
+
+	/**
+	 * Add a duration to the given timer
+	 *
+	 * @param name the name of the timer
+	 * @param millis the duration, in milliseconds
+	 */
+	public synchronized void time(String name, long millis) {
+		Timer timer = timers.get(name);
+		if( timer == null ) {
+			timer = new Timer();
+			timers.put(name, timer);
+		}
+		timer.count++;
+		timer.total += millis;
+		timer.max = Math.max(timer.max, millis);
+	}
+
+	/**
+	 * @param name the name of a timer
+	 * @return the total time of the timer in milliseconds, 0 if it never ran
+	 */
+	public synchronized long getTime(String name) {
+		Timer timer = timers.get(name);
+		return timer == null ? 0 : timer.total;
+	}
+
+	/**
+	 * Add to the given counter
+	 *
+	 * @param name the name of the counter
+	 * @param delta the amount to add
+	 */
+	public synchronized void count(String name, long delta) {
+		Long value = counters.get(name);
+		counters.put(name, new Long(value == null ? delta : value.longValue() + delta));
+	}
+
+	/**
+	 * @param name the name of a counter
+	 * @return the value of the counter, 0 if it was never incremented
+	 */
+	public synchronized long getCount(String name) {
+		Long value = counters.get(name);
+		return value == null ? 0 : value.longValue();
+	}
+
+	/**
+	 * Add a value to the given histogram
+	 *
+	 * @param name the name of the histogram
+	 * @param value the value
+	 */
+	public synchronized void record(String name, long value) {
+		Histogram histogram = histograms.get(name);
+		if( histogram == null ) {
+			histogram = new Histogram();
+			histograms.put(name, histogram);
+		}
+		histogram.add(value);
+	}
+
+	/**
+	 * Write the metrics as <code>metrics.json</code> in the given folder
+	 *
+	 * @param folder the reports folder
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(String folder) throws IOException {
+		File dir = new File(folder);
+		if( !dir.exists())
+			dir.mkdirs();
+		Writer w = null;
+		try {
+			w = new OutputStreamWriter(new BufferedOutputStream(
+					new FileOutputStream(new File(dir, FILE_NAME))), "UTF-8"); //$NON-NLS-1$
+			w.write(toJson());
+			w.close();
+			w = null;
+		} finally {
+			if( w != null ) {
+				try {
+					w.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	public synchronized String toJson() {
+		StringBuffer json = new StringBuffer("{\n  \"timers\": {"); //$NON-NLS-1$
+		Iterator<Map.Entry<String, Timer>> timerIt = timers.entrySet().iterator();
+		while(timerIt.hasNext()) {
+			Map.Entry<String, Timer> entry = timerIt.next();
+			Timer timer = entry.getValue();
+			json.append("\n    ").append(quote(entry.getKey())) //$NON-NLS-1$
+				.append(": {\"count\": ").append(timer.count) //$NON-NLS-1$
+				.append(", \"totalMs\": ").append(timer.total) //$NON-NLS-1$
+				.append(", \"maxMs\": ").append(timer.max).append('}'); //$NON-NLS-1$
+			if( timerIt.hasNext())
+				json.append(',');
+		}
+		json.append("\n  },\n  \"counters\": {"); //$NON-NLS-1$
+		Iterator<Map.Entry<String, Long>> counterIt = counters.entrySet().iterator();
+		while(counterIt.hasNext()) {
+			Map.Entry<String, Long> entry = counterIt.next();
+			json.append("\n    ").append(quote(entry.getKey())).append(": ").append(entry.getValue()); //$NON-NLS-1$ //$NON-NLS-2$
+			if( counterIt.hasNext())
+				json.append(',');
+		}
+		json.append("\n  },\n  \"histograms\": {"); //$NON-NLS-1$
+		Iterator<Map.Entry<String, Histogram>> histogramIt = histograms.entrySet().iterator();
+		while(histogramIt.hasNext()) {
+			Map.Entry<String, Histogram> entry = histogramIt.next();
+			Histogram histogram = entry.getValue();
+			long[] sorted = Arrays.copyOf(histogram.values, histogram.size);
+			Arrays.sort(sorted);
+			long sum = 0;
+			for( int i = 0; i < sorted.length; i++ ) {
+				sum += sorted[i];
+			}
+			json.append("\n    ").append(quote(entry.getKey())) //$NON-NLS-1$
+				.append(": {\"count\": ").append(sorted.length) //$NON-NLS-1$
+				.append(", \"min\": ").append(sorted.length == 0 ? 0 : sorted[0]) //$NON-NLS-1$
+				.append(", \"max\": ").append(sorted.length == 0 ? 0 : sorted[sorted.length - 1]) //$NON-NLS-1$
+				.append(", \"mean\": ").append(String.format(Locale.US, "%.2f", //$NON-NLS-1$ //$NON-NLS-2$
+						new Double(sorted.length == 0 ? 0 : (double)sum / sorted.length)))
+				.append(", \"p50\": ").append(percentile(sorted, 50)) //$NON-NLS-1$
+				.append(", \"p90\": ").append(percentile(sorted, 90)) //$NON-NLS-1$
+				.append(", \"p99\": ").append(percentile(sorted, 99)).append('}'); //$NON-NLS-1$
+			if( histogramIt.hasNext())
+				json.append(',');
+		}
+		json.append("\n  }\n}\n"); //$NON-NLS-1$
+		return json.toString();
+	}
+
+	/*
+	 * Nearest rank percentile of sorted values
+	 */
+	private static long percentile(long[] sorted, int percent) {
+		if( sorted.length == 0 )
+			return 0;
+		int rank = (int)Math.ceil(percent / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	private static String quote(String value) {
+		StringBuffer sb = new StringBuffer("\""); //$NON-NLS-1$
+		for( int i = 0; i < value.length(); i++ ) {
+			char c = value.charAt(i);
+			if( c == '"' || c == '\\' )
+				sb.append('\\');
+			sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+}
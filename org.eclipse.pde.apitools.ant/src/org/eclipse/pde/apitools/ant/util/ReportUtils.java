@@ -10,10 +10,13 @@
  *******************************************************************************/
 package org.eclipse.pde.apitools.ant.util;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import org.eclipse.osgi.util.NLS;
 import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport;
@@ -65,21 +68,65 @@ public class ReportUtils {
 	}
 
 	public static void saveReport(RootReport report, File location ) throws ToolingException {
-		XMLMemento reportMemento = report.generateMemento();
-		saveMemento(reportMemento, location);
+		saveReport(report, location, null);
 	} 
 
 	public static void saveAnalysisReport(ApiAnalysisReport report, File location, int[] categories ) throws ToolingException {
-		XMLMemento reportMemento = report.generateMemento(categories);
-		saveMemento(reportMemento, location);
+		saveReport(report, location, categories);
 	} 
 
-	public static void saveMemento(XMLMemento reportMemento, File location ) throws ToolingException {
+	/*
+	 * Stream the report to the file rather than building a document first.
+	 * The report is written to a sibling file and only renamed once complete,
+	 * so a failed write never leaves a truncated report behind.
+	 */
+	private static void saveReport(RootReport report, File location, int[] categories) throws ToolingException {
+		createParent(location);
+		File temp = new File(location.getParentFile(), location.getName() + ".tmp"); //$NON-NLS-1$
+		OutputStream os = null;
+		boolean written = false;
+		try {
+			os = new BufferedOutputStream(new FileOutputStream(temp));
+			if( categories != null )
+				((ApiAnalysisReport)report).write(os, categories);
+			else
+				report.write(os);
+			os.close();
+			os = null;
+			written = true;
+		} catch(IOException ioe) {
+			throw new ToolingException("Cannot save report to file " + location.getAbsolutePath(), ioe);
+		} finally {
+			if( os != null ) {
+				try {
+					os.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+			if( !written )
+				temp.delete();
+		}
+		if( location.exists() && !location.delete()) {
+			temp.delete();
+			throw new ToolingException("Cannot replace report file " + location.getAbsolutePath());
+		}
+		if( !temp.renameTo(location)) {
+			temp.delete();
+			throw new ToolingException("Cannot save report to file " + location.getAbsolutePath());
+		}
+	}
+
+	private static void createParent(File location) throws ToolingException {
 		if( !location.getParentFile().exists()) {
 			if( !location.getParentFile().mkdirs() ) {
 				throw new ToolingException(NLS.bind(Messages.errorCreatingParentReportFile, location.getAbsolutePath()));
 			}
 		}
+	}
+
+	public static void saveMemento(XMLMemento reportMemento, File location ) throws ToolingException {
+		createParent(location);
 		try {
 			reportMemento.saveToFile(location.getAbsolutePath());
 		} catch(IOException ioe) {
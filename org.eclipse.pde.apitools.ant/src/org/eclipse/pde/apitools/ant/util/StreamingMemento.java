@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.ant.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A write-only memento that writes elements to a stream as they are
+ * created, instead of building a document in memory.
+ *
+ * Only the elements along the path from the root to the most recently
+ * created child are held. The memento must therefore be filled in
+ * document order: attributes and text of an element are set before
+ * its first child is created, and an element can no longer be
+ * modified once a sibling following it was created.
+ *
+ * The output is laid out like {@link XMLMemento#save(OutputStream)}
+ * lays out the same tree: attributes sorted by name and two spaces of
+ * indentation. It is an equivalent document, but not necessarily the
+ * same bytes, since the serializer of the running JDK may declare and
+ * escape characters differently.
+ */
+public final class StreamingMemento implements IMementoWriter {
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+
+	private static final int PENDING = 0;
+	private static final int STARTED = 1;
+	private static final int CLOSED = 2;
+
+	/*
+	 * State shared by all elements of one document
+	 */
+	private static class Output {
+		private Writer writer;
+		private StreamingMemento current;
+		private List<String> instructions = new ArrayList<String>();
+		private IOException error;
+
+		private Output(Writer writer) {
+			this.writer = writer;
+		}
+
+		private void write(String s) {
+			if( error != null )
+				return;
+			try {
+				writer.write(s);
+			} catch(IOException ioe) {
+				error = ioe;
+			}
+		}
+	}
+
+	private Output out;
+	private StreamingMemento parent;
+	private String type;
+	private int depth;
+	private int state = PENDING;
+	private Map<String, String> attributes = new TreeMap<String, String>();
+	private String text;
+
+	private StreamingMemento(Output out, StreamingMemento parent, String type) {
+		this.out = out;
+		this.parent = parent;
+		this.type = type;
+		this.depth = parent == null ? 0 : parent.depth + 1;
+	}
+
+	/**
+	 * Answer a root memento writing a document to the given stream.
+	 * The document is only complete once {@link #close()} is called.
+	 *
+	 * @param type the type of the root element
+	 * @param os the stream to write to, left open by {@link #close()}
+	 * @return a memento
+	 */
+	public static StreamingMemento createWriteRoot(String type, OutputStream os) {
+		Writer w = null;
+		try {
+			w = new BufferedWriter(new OutputStreamWriter(os, "UTF-8")); //$NON-NLS-1$
+		} catch(IOException ioe) {
+			// UTF-8 is always supported
+		}
+		Output out = new Output(w);
+		StreamingMemento root = new StreamingMemento(out, null, type);
+		out.current = root;
+		return root;
+	}
+
+	public void addProcessingInstruction(String target, String data) {
+		if( parent != null || state != PENDING )
+			throw new IllegalStateException("Processing instructions must precede the root element"); //$NON-NLS-1$
+		out.instructions.add("<?" + target + " " + data + "?>"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/*
+	 * @see IMementoWriter
+	 */
+	public IMementoWriter createChild(String type) {
+		if( state == CLOSED )
+			throw new IllegalStateException("Element " + this.type + " was already written"); //$NON-NLS-1$ //$NON-NLS-2$
+		// Finish any previous child still open below us
+		while( out.current != this ) {
+			out.current.end();
+		}
+		start(true);
+		StreamingMemento child = new StreamingMemento(out, this, type);
+		out.current = child;
+		return child;
+	}
+
+	/**
+	 * Write all elements still open and flush the stream.
+	 * This must be called on the root memento.
+	 *
+	 * @throws IOException if the document could not be written
+	 */
+	public void close() throws IOException {
+		if( parent != null )
+			throw new IllegalStateException("Only the root memento can be closed"); //$NON-NLS-1$
+		while( out.current != null ) {
+			out.current.end();
+		}
+		out.write(LINE_SEPARATOR);
+		if( out.error == null ) {
+			try {
+				out.writer.flush();
+			} catch(IOException ioe) {
+				out.error = ioe;
+			}
+		}
+		if( out.error != null )
+			throw out.error;
+	}
+
+	/*
+	 * Write the start tag, and the text if this element also has children
+	 */
+	private void start(boolean withChildren) {
+		if( state != PENDING )
+			return;
+		StringBuffer sb = new StringBuffer();
+		if( parent == null ) {
+			sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"); //$NON-NLS-1$
+			sb.append(LINE_SEPARATOR);
+			Iterator<String> i = out.instructions.iterator();
+			while(i.hasNext()) {
+				sb.append(i.next());
+			}
+		} else {
+			sb.append(LINE_SEPARATOR);
+			indent(sb, depth);
+		}
+		sb.append('<').append(type);
+		Iterator<Map.Entry<String, String>> i = attributes.entrySet().iterator();
+		while(i.hasNext()) {
+			Map.Entry<String, String> next = i.next();
+			sb.append(' ').append(next.getKey()).append("=\""); //$NON-NLS-1$
+			escape(sb, next.getValue(), true);
+			sb.append('"');
+		}
+		if( withChildren ) {
+			sb.append('>');
+			if( text != null && text.length() > 0 ) {
+				// Text followed by children is indented, without its leading line feeds
+				int first = 0;
+				while( first < text.length() && text.charAt(first) == '\n' ) {
+					first++;
+				}
+				sb.append(LINE_SEPARATOR);
+				indent(sb, depth + 1);
+				escape(sb, text.substring(first), false);
+			}
+		}
+		out.write(sb.toString());
+		state = STARTED;
+	}
+
+	/*
+	 * Write the end of this element and make the parent current
+	 */
+	private void end() {
+		if( state == PENDING ) {
+			start(false);
+			if( text != null && text.length() > 0 ) {
+				StringBuffer sb = new StringBuffer();
+				sb.append('>');
+				escape(sb, text, false);
+				sb.append("</").append(type).append('>'); //$NON-NLS-1$
+				out.write(sb.toString());
+			} else {
+				out.write("/>"); //$NON-NLS-1$
+			}
+		} else {
+			StringBuffer sb = new StringBuffer();
+			sb.append(LINE_SEPARATOR);
+			indent(sb, depth);
+			sb.append("</").append(type).append('>'); //$NON-NLS-1$
+			out.write(sb.toString());
+		}
+		state = CLOSED;
+		attributes = null;
+		text = null;
+		out.current = parent;
+	}
+
+	private static void indent(StringBuffer sb, int depth) {
+		for( int i = 0; i < depth; i++ ) {
+			sb.append("  "); //$NON-NLS-1$
+		}
+	}
+
+	private static void escape(StringBuffer sb, String s, boolean attribute) {
+		int length = s.length();
+		for( int i = 0; i < length; i++ ) {
+			char c = s.charAt(i);
+			switch(c) {
+			case '&':
+				sb.append("&amp;"); //$NON-NLS-1$
+				break;
+			case '<':
+				sb.append("&lt;"); //$NON-NLS-1$
+				break;
+			case '>':
+				sb.append("&gt;"); //$NON-NLS-1$
+				break;
+			case '"':
+				if( attribute )
+					sb.append("&quot;"); //$NON-NLS-1$
+				else
+					sb.append(c);
+				break;
+			case '\n':
+				if( attribute )
+					sb.append("&#10;"); //$NON-NLS-1$
+				else
+					sb.append(LINE_SEPARATOR);
+				break;
+			case '\t':
+				if( attribute )
+					sb.append("&#9;"); //$NON-NLS-1$
+				else
+					sb.append(c);
+				break;
+			default:
+				if( Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+					sb.append("&#").append(Character.toCodePoint(c, s.charAt(i + 1))).append(';'); //$NON-NLS-1$
+					i++;
+				} else if( c < 0x20 || (!attribute && c >= 0x7f && c <= 0x9f)) {
+					sb.append("&#").append((int)c).append(';'); //$NON-NLS-1$
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+	}
+
+	private void checkModifiable() {
+		if( state != PENDING )
+			throw new IllegalStateException("Element " + type + " was already written"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/*
+	 * @see IMementoWriter
+	 */
+	public void putInteger(String key, int value) {
+		checkModifiable();
+		attributes.put(key, String.valueOf(value));
+	}
+
+	/*
+	 * @see IMementoWriter
+	 */
+	public void putBoolean(String key, boolean value) {
+		checkModifiable();
+		attributes.put(key, String.valueOf(value));
+	}
+
+	/*
+	 * @see IMementoWriter
+	 */
+	public void putString(String key, String value) {
+		if (value == null)
+			return;
+		checkModifiable();
+		attributes.put(key, value);
+	}
+
+	/*
+	 * @see IMementoWriter
+	 */
+	public void putTextData(String data) {
+		checkModifiable();
+		text = data;
+	}
+}
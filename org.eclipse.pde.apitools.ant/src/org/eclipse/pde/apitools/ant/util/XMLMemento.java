@@ -84,9 +84,10 @@ public final class XMLMemento implements IMemento {
 			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
 			DocumentBuilder parser = factory.newDocumentBuilder();
 			document = parser.parse(new InputSource(in));
-			Node node = document.getFirstChild();
-			if (node instanceof Element)
-				return new XMLMemento(document, (Element) node);
+			// Skip any leading processing instruction, such as a stylesheet
+			Element root = document.getDocumentElement();
+			if (root != null)
+				return new XMLMemento(document, root);
 		} catch (Exception e) {
 			// ignore
 		} finally {
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.pde.api.tools.internal.provisional.problems.IApiProblem;
+import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.internal.AntFilterStore;
+import org.eclipse.pde.apitools.ant.internal.FilterRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures matching all problems of a bundle against its filters.
+ * One problem in <code>filterEvery</code> is filtered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilterStoreBenchmark {
+	private static final String COMPONENT_ID = SyntheticData.getBundleName(0);
+
+	@Param({"10", "1000", "100000", "1000000"})
+	public int problems;
+
+	@Param({"2", "50"})
+	public int filterEvery;
+
+	private File filtersRoot;
+	private IApiProblem[] input;
+	private AntFilterStore store;
+
+	@Setup
+	public void setUp() throws IOException {
+		input = SyntheticData.createProblems(problems, Math.max(1, problems / 20), SyntheticData.SEED);
+		filtersRoot = SyntheticData.createTempDir("filters"); //$NON-NLS-1$
+		SyntheticData.writeFilters(filtersRoot, COMPONENT_ID, input, filterEvery);
+		store = new AntFilterStore(false, filtersRoot.getAbsolutePath(), COMPONENT_ID);
+	}
+
+	@TearDown
+	public void tearDown() {
+		FilterRepository.getDefault().clear();
+		Util.delete(filtersRoot);
+	}
+
+	@Benchmark
+	public int isFiltered() {
+		int filtered = 0;
+		for( int i = 0; i < input.length; i++ ) {
+			if( store.isFiltered(input[i]))
+				filtered++;
+		}
+		return filtered;
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiBaseline;
+import org.eclipse.pde.api.tools.internal.provisional.model.IApiComponent;
+import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.util.BaselineUtils;
+import org.eclipse.pde.apitools.ant.util.ComponentMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures applying an inclusion and an exclusion list to a baseline.
+ * The inclusion list names the first 80% of the bundles, the exclusion 
+ * list the last 10% of those. Both mix exact names and regular expressions.
+ * Lists are compiled once per baseline and shared, so the cost of
+ * compiling them is measured apart.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilteredElementsBenchmark {
+
+	@Param({"10", "500", "5000"})
+	public int bundles;
+
+	private File dir;
+	private IApiBaseline baseline;
+	private String includeList;
+	private String excludeList;
+
+	@Setup
+	public void setUp() throws IOException {
+		dir = SyntheticData.createTempDir("baseline"); //$NON-NLS-1$
+		File install = new File(dir, "install"); //$NON-NLS-1$
+		SyntheticData.writeManifestBundles(install, bundles);
+		baseline = BaselineUtils.createBaseline("bench", install.getAbsolutePath(), null); //$NON-NLS-1$
+		if( baseline == null )
+			throw new IllegalStateException("Could not create the baseline in " + install); //$NON-NLS-1$
+
+		int included = Math.max(1, bundles * 8 / 10);
+		int excluded = Math.max(1, included / 8);
+		File include = new File(dir, "include.txt"); //$NON-NLS-1$
+		File exclude = new File(dir, "exclude.txt"); //$NON-NLS-1$
+		SyntheticData.writeList(include, 0, included, 3);
+		SyntheticData.writeList(exclude, included - excluded, excluded, 2);
+		includeList = include.getAbsolutePath();
+		excludeList = exclude.getAbsolutePath();
+	}
+
+	@TearDown
+	public void tearDown() {
+		if( baseline != null )
+			baseline.dispose();
+		Util.delete(dir);
+	}
+
+	@Benchmark
+	public IApiComponent[] getFilteredElements() {
+		return BaselineUtils.getFilteredElements(baseline, includeList, excludeList);
+	}
+
+	@Benchmark
+	public IApiComponent[] compileAndFilter() {
+		return BaselineUtils.getFilteredElements(baseline, 
+				ComponentMatcher.load(includeList, baseline, false), 
+				ComponentMatcher.load(excludeList, baseline, false));
+	}
+}
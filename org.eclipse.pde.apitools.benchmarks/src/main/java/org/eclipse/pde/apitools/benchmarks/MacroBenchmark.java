@@ -0,0 +1,418 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.apache.tools.ant.Project;
+import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.tasks.slim.AbstractComparisonTask;
+import org.eclipse.pde.apitools.ant.tasks.slim.ApiAnalysisTask;
+import org.eclipse.pde.apitools.ant.tasks.slim.BreakageTask;
+import org.eclipse.pde.apitools.ant.tasks.slim.DeprecationTask;
+import org.eclipse.pde.apitools.ant.tasks.slim.FreezeTask;
+
+/**
+ * Runs the analysis tasks end to end against a pair of installations
+ * written by {@link SyntheticBundles}, and records for each run its wall
+ * time, peak resident set size, garbage collection time and allocation
+ * rate in a JSON file.
+ *
+ * Each run happens in a JVM of its own, so that the peak resident set
+ * size and the collections belong to that run alone. Allocation is sampled
+ * per thread every few milliseconds; the last few milliseconds of a
+ * thread that ends during the run may be missed. The peak resident set
+ * size is only known on Linux, and is -1 elsewhere.
+ *
+ * Usage: <code>MacroBenchmark [-option value]...</code>, where the
+ * options and their defaults are listed in {@link #DEFAULTS}.
+ */
+public class MacroBenchmark {
+	public static final String TASK_ANALYSIS = "analysis"; //$NON-NLS-1$
+	public static final String TASK_BREAKAGE = "breakage"; //$NON-NLS-1$
+	public static final String TASK_FREEZE = "freeze"; //$NON-NLS-1$
+	public static final String TASK_DEPRECATION = "deprecation"; //$NON-NLS-1$
+
+	public static final String KEY_WALL_TIME = "wallTimeMs"; //$NON-NLS-1$
+	public static final String KEY_PEAK_RSS = "peakRssKb"; //$NON-NLS-1$
+	public static final String KEY_GC_TIME = "gcTimeMs"; //$NON-NLS-1$
+	public static final String KEY_GC_COUNT = "gcCount"; //$NON-NLS-1$
+	public static final String KEY_ALLOCATED = "allocatedBytes"; //$NON-NLS-1$
+	public static final String KEY_ALLOCATION_RATE = "allocationRateMBps"; //$NON-NLS-1$
+	public static final String KEY_FAILURE = "failure"; //$NON-NLS-1$
+
+	private static final String[] RESULT_KEYS = new String[] {
+		KEY_WALL_TIME, KEY_PEAK_RSS, KEY_GC_TIME, KEY_GC_COUNT, KEY_ALLOCATED, KEY_ALLOCATION_RATE
+	};
+
+	public static final String[][] DEFAULTS = new String[][] {
+		{"bundles", "100"}, //$NON-NLS-1$ //$NON-NLS-2$
+		{"packages", "5"}, //$NON-NLS-1$ //$NON-NLS-2$
+		{"types", "10"}, //$NON-NLS-1$ //$NON-NLS-2$
+		{"methods", "10"}, //$NON-NLS-1$ //$NON-NLS-2$
+		{"breaks", "3"}, //$NON-NLS-1$ //$NON-NLS-2$
+		{"deprecations", "3"}, //$NON-NLS-1$ //$NON-NLS-2$
+		{"iterations", "3"}, //$NON-NLS-1$ //$NON-NLS-2$
+		{"threads", "1"}, //$NON-NLS-1$ //$NON-NLS-2$
+		{"xmx", "2g"}, //$NON-NLS-1$ //$NON-NLS-2$
+		{"tasks", TASK_ANALYSIS + ',' + TASK_BREAKAGE + ',' + TASK_FREEZE + ',' + TASK_DEPRECATION}, //$NON-NLS-1$
+		{"dir", new File(System.getProperty("java.io.tmpdir"), "apitools-macro").getPath()}, //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		{"out", "macro-benchmark.json"}, //$NON-NLS-1$ //$NON-NLS-2$
+	};
+
+	private static final int SAMPLE_INTERVAL = 10;
+
+	public static void main(String[] args) throws Exception {
+		LinkedHashMap<String, String> options = parseOptions(args);
+		File dir = new File(options.get("dir")); //$NON-NLS-1$
+		File bundles = new File(dir, "bundles"); //$NON-NLS-1$
+		if( bundles.exists())
+			Util.delete(bundles);
+		System.out.println("Writing synthetic bundles to " + bundles); //$NON-NLS-1$
+		new SyntheticBundles(getInt(options, "bundles"), getInt(options, "packages"), //$NON-NLS-1$ //$NON-NLS-2$
+				getInt(options, "types"), getInt(options, "methods"), //$NON-NLS-1$ //$NON-NLS-2$
+				getInt(options, "breaks"), getInt(options, "deprecations")).write(bundles); //$NON-NLS-1$ //$NON-NLS-2$
+
+		List<String> tasks = Arrays.asList(options.get("tasks").split(",")); //$NON-NLS-1$ //$NON-NLS-2$
+		int iterations = getInt(options, "iterations"); //$NON-NLS-1$
+		ArrayList<Properties> results = new ArrayList<Properties>();
+		for( int t = 0; t < tasks.size(); t++ ) {
+			String task = tasks.get(t).trim();
+			for( int i = 0; i < iterations; i++ ) {
+				System.out.println("Running " + task + ", iteration " + (i + 1) + " of " + iterations); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				Properties result = fork(task, i, bundles, dir, options);
+				result.setProperty("task", task); //$NON-NLS-1$
+				result.setProperty("iteration", Integer.toString(i)); //$NON-NLS-1$
+				results.add(result);
+			}
+		}
+		File out = new File(options.get("out")); //$NON-NLS-1$
+		writeJson(out, options, results);
+		System.out.println("Results written to " + out.getAbsolutePath()); //$NON-NLS-1$
+	}
+
+	private static LinkedHashMap<String, String> parseOptions(String[] args) {
+		LinkedHashMap<String, String> options = new LinkedHashMap<String, String>();
+		for( int i = 0; i < DEFAULTS.length; i++ ) {
+			options.put(DEFAULTS[i][0], DEFAULTS[i][1]);
+		}
+		for( int i = 0; i + 1 < args.length; i += 2 ) {
+			String key = args[i].startsWith("-") ? args[i].substring(1) : args[i]; //$NON-NLS-1$
+			if( !options.containsKey(key))
+				throw new IllegalArgumentException("Unknown option " + args[i]); //$NON-NLS-1$
+			options.put(key, args[i + 1]);
+		}
+		return options;
+	}
+
+	private static int getInt(HashMap<String, String> options, String key) {
+		return Integer.parseInt(options.get(key));
+	}
+
+	/*
+	 * Run one task in a new JVM with the same class path, and read back its results
+	 */
+	private static Properties fork(String task, int iteration, File bundles, File dir,
+			HashMap<String, String> options) throws IOException, InterruptedException {
+		File reports = new File(dir, "reports/" + task + '-' + iteration); //$NON-NLS-1$
+		if( reports.exists())
+			Util.delete(reports);
+		reports.mkdirs();
+		File resultFile = new File(dir, task + '-' + iteration + ".properties"); //$NON-NLS-1$
+		resultFile.delete();
+
+		String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath(); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		ProcessBuilder builder = new ProcessBuilder(
+				java, "-Xmx" + options.get("xmx"), //$NON-NLS-1$ //$NON-NLS-2$
+				"-cp", System.getProperty("java.class.path"), //$NON-NLS-1$ //$NON-NLS-2$
+				TaskRun.class.getName(), task,
+				new File(bundles, SyntheticBundles.REFERENCE).getAbsolutePath(),
+				new File(bundles, SyntheticBundles.PROFILE).getAbsolutePath(),
+				reports.getAbsolutePath(), options.get("threads"), //$NON-NLS-1$
+				resultFile.getAbsolutePath());
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		copy(process.getInputStream(), System.out);
+		int exit = process.waitFor();
+
+		Properties result = new Properties();
+		if( resultFile.isFile()) {
+			InputStream in = new BufferedInputStream(new FileInputStream(resultFile));
+			try {
+				result.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		if( exit != 0 && result.getProperty(KEY_FAILURE) == null )
+			result.setProperty(KEY_FAILURE, "exit code " + exit); //$NON-NLS-1$
+		return result;
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[4096];
+		int read;
+		while( (read = in.read(buffer)) != -1 ) {
+			out.write(buffer, 0, read);
+		}
+		out.flush();
+	}
+
+	private static void writeJson(File file, HashMap<String, String> options,
+			List<Properties> results) throws IOException {
+		StringBuffer json = new StringBuffer("{\n"); //$NON-NLS-1$
+		json.append("  \"java\": {\"version\": ").append(quote(System.getProperty("java.version"))) //$NON-NLS-1$ //$NON-NLS-2$
+			.append(", \"vm\": ").append(quote(System.getProperty("java.vm.name"))).append("},\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		json.append("  \"parameters\": {"); //$NON-NLS-1$
+		Iterator<String> it = options.keySet().iterator();
+		while(it.hasNext()) {
+			String key = it.next();
+			json.append(quote(key)).append(": ").append(quote(options.get(key))); //$NON-NLS-1$
+			if( it.hasNext())
+				json.append(", "); //$NON-NLS-1$
+		}
+		json.append("},\n  \"results\": [\n"); //$NON-NLS-1$
+		for( int i = 0; i < results.size(); i++ ) {
+			Properties result = results.get(i);
+			json.append("    {\"task\": ").append(quote(result.getProperty("task"))) //$NON-NLS-1$ //$NON-NLS-2$
+				.append(", \"iteration\": ").append(result.getProperty("iteration")); //$NON-NLS-1$ //$NON-NLS-2$
+			for( int k = 0; k < RESULT_KEYS.length; k++ ) {
+				String value = result.getProperty(RESULT_KEYS[k]);
+				if( value != null )
+					json.append(", ").append(quote(RESULT_KEYS[k])).append(": ").append(value); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			if( result.getProperty(KEY_FAILURE) != null )
+				json.append(", ").append(quote(KEY_FAILURE)).append(": ").append(quote(result.getProperty(KEY_FAILURE))); //$NON-NLS-1$ //$NON-NLS-2$
+			json.append(i + 1 < results.size() ? "},\n" : "}\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		json.append("  ]\n}\n"); //$NON-NLS-1$
+
+		Writer w = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file)), "UTF-8"); //$NON-NLS-1$
+		try {
+			w.write(json.toString());
+		} finally {
+			w.close();
+		}
+	}
+
+	private static String quote(String value) {
+		StringBuffer sb = new StringBuffer("\""); //$NON-NLS-1$
+		for( int i = 0; value != null && i < value.length(); i++ ) {
+			char c = value.charAt(i);
+			if( c == '"' || c == '\\' )
+				sb.append('\\').append(c);
+			else if( c < 0x20 )
+				sb.append(String.format("\\u%04x", new Integer(c))); //$NON-NLS-1$
+			else
+				sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * Run a single task in the current JVM and store its measures.
+	 *
+	 * Usage: <code>TaskRun &lt;task&gt; &lt;reference&gt; &lt;profile&gt;
+	 * &lt;reports&gt; &lt;threads&gt; &lt;result file&gt;</code>
+	 */
+	public static class TaskRun {
+		public static void main(String[] args) throws IOException {
+			AbstractComparisonTask task = createTask(args[0]);
+			Project project = new Project();
+			project.init();
+			task.setProject(project);
+			task.setBaseline(args[1]);
+			task.setProfile(args[2]);
+			task.setReport(args[3]);
+			task.setThreads(Integer.parseInt(args[4]));
+
+			Properties result = new Properties();
+			AllocationSampler sampler = new AllocationSampler();
+			long gcTime = getGcTime();
+			long gcCount = getGcCount();
+			sampler.start();
+			long start = System.nanoTime();
+			try {
+				task.execute();
+			} catch(RuntimeException re) {
+				re.printStackTrace();
+				result.setProperty(KEY_FAILURE, String.valueOf(re.getMessage()));
+			}
+			long wallTime = (System.nanoTime() - start) / 1000000;
+			long allocated = sampler.finish();
+
+			result.setProperty(KEY_WALL_TIME, Long.toString(wallTime));
+			result.setProperty(KEY_PEAK_RSS, Long.toString(getPeakRss()));
+			result.setProperty(KEY_GC_TIME, Long.toString(getGcTime() - gcTime));
+			result.setProperty(KEY_GC_COUNT, Long.toString(getGcCount() - gcCount));
+			result.setProperty(KEY_ALLOCATED, Long.toString(allocated));
+			double rate = allocated < 0 || wallTime == 0 ? -1 : (allocated / (1024.0 * 1024.0)) / (wallTime / 1000.0);
+			result.setProperty(KEY_ALLOCATION_RATE, String.format(Locale.US, "%.1f", new Double(rate))); //$NON-NLS-1$
+
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(args[5]));
+			try {
+				result.store(out, null);
+			} finally {
+				out.close();
+			}
+			System.exit(result.getProperty(KEY_FAILURE) == null ? 0 : 1);
+		}
+
+		private static AbstractComparisonTask createTask(String name) {
+			if( TASK_ANALYSIS.equals(name))
+				return new ApiAnalysisTask();
+			if( TASK_BREAKAGE.equals(name))
+				return new BreakageTask();
+			if( TASK_FREEZE.equals(name))
+				return new FreezeTask();
+			if( TASK_DEPRECATION.equals(name))
+				return new DeprecationTask();
+			throw new IllegalArgumentException("Unknown task " + name); //$NON-NLS-1$
+		}
+
+		private static long getGcTime() {
+			long total = 0;
+			Iterator<GarbageCollectorMXBean> it = ManagementFactory.getGarbageCollectorMXBeans().iterator();
+			while(it.hasNext()) {
+				total += Math.max(0, it.next().getCollectionTime());
+			}
+			return total;
+		}
+
+		private static long getGcCount() {
+			long total = 0;
+			Iterator<GarbageCollectorMXBean> it = ManagementFactory.getGarbageCollectorMXBeans().iterator();
+			while(it.hasNext()) {
+				total += Math.max(0, it.next().getCollectionCount());
+			}
+			return total;
+		}
+
+		/*
+		 * The high water mark of the resident set, in kB
+		 */
+		private static long getPeakRss() {
+			File status = new File("/proc/self/status"); //$NON-NLS-1$
+			if( !status.isFile())
+				return -1;
+			BufferedReader reader = null;
+			try {
+				reader = new BufferedReader(new FileReader(status));
+				String line;
+				while( (line = reader.readLine()) != null ) {
+					if( line.startsWith("VmHWM:")) { //$NON-NLS-1$
+						String value = line.substring(6).trim();
+						return Long.parseLong(value.substring(0, value.indexOf(' ')));
+					}
+				}
+			} catch(IOException ioe) {
+				// unknown
+			} catch(RuntimeException re) {
+				// unknown
+			} finally {
+				if( reader != null ) {
+					try {
+						reader.close();
+					} catch(IOException e) {
+						// ignore
+					}
+				}
+			}
+			return -1;
+		}
+	}
+
+	/*
+	 * Sums the bytes allocated by every thread seen while sampling
+	 */
+	private static class AllocationSampler extends Thread {
+		private com.sun.management.ThreadMXBean bean;
+		private HashMap<Long, Long> latest = new HashMap<Long, Long>();
+		private long initial;
+		private volatile boolean done = false;
+
+		private AllocationSampler() {
+			super("Allocation Sampler"); //$NON-NLS-1$
+			setDaemon(true);
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			if( threads instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported()) {
+				bean = (com.sun.management.ThreadMXBean)threads;
+				bean.setThreadAllocatedMemoryEnabled(true);
+				sample();
+				initial = total();
+			}
+		}
+
+		public void run() {
+			while( !done && bean != null ) {
+				sample();
+				try {
+					Thread.sleep(SAMPLE_INTERVAL);
+				} catch(InterruptedException ie) {
+					return;
+				}
+			}
+		}
+
+		private synchronized void sample() {
+			long[] ids = bean.getAllThreadIds();
+			long[] bytes = bean.getThreadAllocatedBytes(ids);
+			for( int i = 0; i < ids.length; i++ ) {
+				if( bytes[i] >= 0 )
+					latest.put(new Long(ids[i]), new Long(bytes[i]));
+			}
+		}
+
+		private synchronized long total() {
+			long total = 0;
+			Iterator<Long> it = latest.values().iterator();
+			while(it.hasNext()) {
+				total += it.next().longValue();
+			}
+			return total;
+		}
+
+		/*
+		 * Stop sampling, and answer the bytes allocated since
+		 * this sampler was created, or -1 if that is unknown
+		 */
+		private long finish() {
+			done = true;
+			if( bean == null )
+				return -1;
+			sample();
+			return total() - initial;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.pde.api.tools.internal.provisional.problems.IApiProblem;
+import org.eclipse.pde.apitools.ant.util.ApiToolsUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the handling of the problems of a single bundle
+ * before they are reported.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProblemsBenchmark {
+
+	@Param({"10", "1000", "100000", "1000000"})
+	public int problems;
+
+	private IApiProblem[] input;
+
+	@Setup
+	public void setUp() {
+		input = SyntheticData.createProblems(problems, Math.max(1, problems / 20), SyntheticData.SEED);
+	}
+
+	@Benchmark
+	public IApiProblem[] removeDuplicates() {
+		return ApiToolsUtils.removeDuplicates(input);
+	}
+
+	@Benchmark
+	public IApiProblem[] sortProblems() {
+		return ApiToolsUtils.sortProblems(input);
+	}
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.pde.api.tools.internal.provisional.problems.IApiProblem;
+import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport;
+import org.eclipse.pde.apitools.ant.util.XMLMemento;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures turning the problems of a bundle into its report:
+ * building the memento of a new report, and saving a memento to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ReportBenchmark {
+	private static final String COMPONENT_ID = SyntheticData.getBundleName(0);
+
+	@Param({"10", "1000", "100000", "1000000"})
+	public int problems;
+
+	private IApiProblem[] input;
+	private Properties preferences;
+	private XMLMemento memento;
+	private File dir;
+	private String file;
+
+	@Setup
+	public void setUp() throws IOException {
+		input = SyntheticData.createProblems(problems, Math.max(1, problems / 20), SyntheticData.SEED);
+		preferences = new Properties();
+		memento = new ApiAnalysisReport(COMPONENT_ID, input, preferences).generateMemento(null);
+		dir = SyntheticData.createTempDir("report"); //$NON-NLS-1$
+		file = new File(dir, "report.xml").getAbsolutePath(); //$NON-NLS-1$
+	}
+
+	@TearDown
+	public void tearDown() {
+		Util.delete(dir);
+	}
+
+	/*
+	 * A new report each time, since a report keeps its problems sorted once written
+	 */
+	@Benchmark
+	public XMLMemento generateMemento() {
+		return new ApiAnalysisReport(COMPONENT_ID, input, preferences).generateMemento(null);
+	}
+
+	@Benchmark
+	public void saveToFile() throws IOException {
+		memento.saveToFile(file);
+	}
+}
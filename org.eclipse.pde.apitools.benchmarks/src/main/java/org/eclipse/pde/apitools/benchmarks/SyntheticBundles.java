@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Writes a reference and a profile installation of synthetic OSGi bundles,
+ * so that the analysis can be measured without downloading an SDK.
+ *
+ * Every bundle exports all its packages and requires the previous bundle.
+ * Each type is a public class with public methods. In the profile, the
+ * micro version of every bundle is increased, the first <code>breaks</code>
+ * methods of each bundle are removed and the next <code>deprecations</code>
+ * methods are deprecated. The same parameters always write the same bundles.
+ *
+ * Usage: <code>SyntheticBundles &lt;folder&gt; &lt;bundles&gt; &lt;packages&gt;
+ * &lt;types&gt; &lt;methods&gt; &lt;breaks&gt; &lt;deprecations&gt;</code>
+ */
+public class SyntheticBundles {
+	public static final String REFERENCE = "reference"; //$NON-NLS-1$
+	public static final String PROFILE = "profile"; //$NON-NLS-1$
+	private static final String PLUGINS = "plugins"; //$NON-NLS-1$
+
+	private int bundles;
+	private int packages;
+	private int types;
+	private int methods;
+	private int breaks;
+	private int deprecations;
+
+	/**
+	 * @param bundles the number of bundles of each installation
+	 * @param packages the number of packages per bundle
+	 * @param types the number of types per package
+	 * @param methods the number of methods per type
+	 * @param breaks the number of methods removed from each profile bundle
+	 * @param deprecations the number of methods deprecated in each profile bundle
+	 */
+	public SyntheticBundles(int bundles, int packages, int types, int methods,
+			int breaks, int deprecations) {
+		this.bundles = bundles;
+		this.packages = packages;
+		this.types = types;
+		this.methods = methods;
+		this.breaks = breaks;
+		this.deprecations = deprecations;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if( args.length < 7 ) {
+			System.err.println("Usage: SyntheticBundles <folder> <bundles> <packages> <types> <methods> <breaks> <deprecations>"); //$NON-NLS-1$
+			System.exit(1);
+		}
+		new SyntheticBundles(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+				Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+				Integer.parseInt(args[5]), Integer.parseInt(args[6])).write(new File(args[0]));
+	}
+
+	/**
+	 * Write the reference installation to <code>folder/reference</code>
+	 * and the profile installation to <code>folder/profile</code>
+	 *
+	 * @param folder the folder to write to
+	 * @throws IOException if a bundle cannot be written
+	 */
+	public void write(File folder) throws IOException {
+		writeInstallation(new File(folder, REFERENCE), false);
+		writeInstallation(new File(folder, PROFILE), true);
+	}
+
+	private void writeInstallation(File location, boolean profile) throws IOException {
+		File plugins = new File(location, PLUGINS);
+		if( !plugins.isDirectory() && !plugins.mkdirs())
+			throw new IOException("Could not create " + plugins); //$NON-NLS-1$
+		for( int i = 0; i < bundles; i++ ) {
+			writeBundle(plugins, i, profile);
+		}
+	}
+
+	private void writeBundle(File plugins, int bundle, boolean profile) throws IOException {
+		String name = SyntheticData.getBundleName(bundle);
+		String version = profile ? "1.0.1" : "1.0.0"; //$NON-NLS-1$ //$NON-NLS-2$
+		File jar = new File(plugins, name + '_' + version + ".jar"); //$NON-NLS-1$
+		JarOutputStream out = new JarOutputStream(
+				new BufferedOutputStream(new FileOutputStream(jar)), createManifest(bundle, version));
+		try {
+			// the methods of a bundle are numbered across its types
+			int method = 0;
+			for( int p = 0; p < packages; p++ ) {
+				String packageName = getPackageName(bundle, p);
+				for( int t = 0; t < types; t++ ) {
+					String internalName = packageName.replace('.', '/') + "/Type" + t; //$NON-NLS-1$
+					out.putNextEntry(new JarEntry(internalName + ".class")); //$NON-NLS-1$
+					out.write(createClass(internalName, method, profile));
+					out.closeEntry();
+					method += methods;
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private Manifest createManifest(int bundle, String version) {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0"); //$NON-NLS-1$
+		attributes.putValue("Bundle-ManifestVersion", "2"); //$NON-NLS-1$ //$NON-NLS-2$
+		attributes.putValue("Bundle-SymbolicName", SyntheticData.getBundleName(bundle)); //$NON-NLS-1$
+		attributes.putValue("Bundle-Version", version); //$NON-NLS-1$
+		attributes.putValue("Bundle-RequiredExecutionEnvironment", "JavaSE-1.6"); //$NON-NLS-1$ //$NON-NLS-2$
+		if( packages > 0 ) {
+			StringBuffer exports = new StringBuffer();
+			for( int p = 0; p < packages; p++ ) {
+				if( p > 0 )
+					exports.append(',');
+				exports.append(getPackageName(bundle, p));
+			}
+			attributes.putValue("Export-Package", exports.toString()); //$NON-NLS-1$
+		}
+		if( bundle > 0 ) {
+			attributes.putValue("Require-Bundle", SyntheticData.getBundleName(bundle - 1)); //$NON-NLS-1$
+		}
+		return manifest;
+	}
+
+	private static String getPackageName(int bundle, int p) {
+		return SyntheticData.PACKAGE_PREFIX + bundle + ".sub" + p; //$NON-NLS-1$
+	}
+
+	/*
+	 * A public class whose methods are numbered from the given one
+	 */
+	private byte[] createClass(String internalName, int firstMethod, boolean profile) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName, null, "java/lang/Object", null); //$NON-NLS-1$
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null); //$NON-NLS-1$ //$NON-NLS-2$
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		for( int m = firstMethod; m < firstMethod + methods; m++ ) {
+			int access = Opcodes.ACC_PUBLIC;
+			if( profile ) {
+				if( m < breaks )
+					continue;
+				if( m < breaks + deprecations )
+					access |= Opcodes.ACC_DEPRECATED;
+			}
+			mv = cw.visitMethod(access, "method" + m, "()V", null, null); //$NON-NLS-1$ //$NON-NLS-2$
+			mv.visitCode();
+			mv.visitInsn(Opcodes.RETURN);
+			mv.visitMaxs(0, 0);
+			mv.visitEnd();
+		}
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.eclipse.pde.api.tools.internal.IApiCoreConstants;
+import org.eclipse.pde.api.tools.internal.IApiXmlConstants;
+import org.eclipse.pde.api.tools.internal.problems.ApiProblemFactory;
+import org.eclipse.pde.api.tools.internal.provisional.comparator.IDelta;
+import org.eclipse.pde.api.tools.internal.provisional.problems.IApiProblem;
+import org.eclipse.pde.api.tools.internal.util.Util;
+import org.eclipse.pde.apitools.ant.util.IMemento;
+import org.eclipse.pde.apitools.ant.util.XMLMemento;
+
+/**
+ * Creates the inputs of the benchmarks: problem sets, filter files,
+ * bundle folders and inclusion lists. All data derives from a seed, so
+ * that every run of a benchmark measures the same inputs.
+ */
+public class SyntheticData {
+	public static final long SEED = 20130101L;
+	public static final String BUNDLE_PREFIX = "bench.bundle."; //$NON-NLS-1$
+	public static final String PACKAGE_PREFIX = "org.bench.p"; //$NON-NLS-1$
+
+	/**
+	 * Create compatibility problems spread over a number of types,
+	 * in no particular order. About one problem in ten repeats the
+	 * message of another one.
+	 *
+	 * @param count the number of problems
+	 * @param types the number of types the problems are reported on
+	 * @param seed the seed of the order of the problems
+	 * @return the problems
+	 */
+	public static IApiProblem[] createProblems(int count, int types, long seed) {
+		int distinct = Math.max(1, count - count / 10);
+		IApiProblem[] problems = new IApiProblem[count];
+		for( int i = 0; i < count; i++ ) {
+			int member = i % distinct;
+			String typeName = getTypeName(member % types);
+			String method = "method" + member + "()"; //$NON-NLS-1$ //$NON-NLS-2$
+			problems[i] = ApiProblemFactory.newApiProblem(
+					typeName.replace('.', '/') + ".java", //$NON-NLS-1$
+					typeName, new String[] { typeName, method }, null, null,
+					member, -1, -1,
+					IApiProblem.CATEGORY_COMPATIBILITY,
+					IDelta.CLASS_ELEMENT_TYPE,
+					IDelta.REMOVED,
+					IDelta.METHOD);
+		}
+		shuffle(problems, seed);
+		return problems;
+	}
+
+	public static String getTypeName(int type) {
+		return PACKAGE_PREFIX + (type % 100) + ".Type" + type; //$NON-NLS-1$
+	}
+
+	public static String getBundleName(int bundle) {
+		return BUNDLE_PREFIX + bundle;
+	}
+
+	private static void shuffle(Object[] array, long seed) {
+		Random random = new Random(seed);
+		for( int i = array.length - 1; i > 0; i-- ) {
+			int j = random.nextInt(i + 1);
+			Object tmp = array[i];
+			array[i] = array[j];
+			array[j] = tmp;
+		}
+	}
+
+	/**
+	 * Write a filter file for the given component, filtering one
+	 * problem out of every <code>every</code> given problems.
+	 *
+	 * @param filtersRoot the folder holding a folder of filters per component
+	 * @param componentId the component to write the filters of
+	 * @param problems the problems to take the filters from
+	 * @param every the ratio of problems to filter
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeFilters(File filtersRoot, String componentId,
+			IApiProblem[] problems, int every) throws IOException {
+		// group by type, as .api_filters does
+		HashMap<String, ArrayList<IApiProblem>> byType = new HashMap<String, ArrayList<IApiProblem>>();
+		for( int i = 0; i < problems.length; i += every ) {
+			ArrayList<IApiProblem> list = byType.get(problems[i].getTypeName());
+			if( list == null ) {
+				list = new ArrayList<IApiProblem>();
+				byType.put(problems[i].getTypeName(), list);
+			}
+			list.add(problems[i]);
+		}
+		XMLMemento root = XMLMemento.createWriteRoot(IApiXmlConstants.ELEMENT_COMPONENT);
+		root.putString(IApiXmlConstants.ATTR_ID, componentId);
+		root.putString(IApiXmlConstants.ATTR_VERSION, "2"); //$NON-NLS-1$
+		Iterator<String> it = byType.keySet().iterator();
+		while(it.hasNext()) {
+			String typeName = it.next();
+			ArrayList<IApiProblem> list = byType.get(typeName);
+			IMemento resource = root.createChild(IApiXmlConstants.ELEMENT_RESOURCE);
+			resource.putString(IApiXmlConstants.ATTR_PATH, list.get(0).getResourcePath());
+			resource.putString(IApiXmlConstants.ATTR_TYPE, typeName);
+			for( int i = 0; i < list.size(); i++ ) {
+				IApiProblem problem = list.get(i);
+				IMemento filter = resource.createChild(IApiXmlConstants.ELEMENT_FILTER);
+				filter.putString(IApiXmlConstants.ATTR_ID, Integer.toString(problem.getId()));
+				IMemento arguments = filter.createChild(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENTS);
+				String[] messageArguments = problem.getMessageArguments();
+				for( int j = 0; j < messageArguments.length; j++ ) {
+					IMemento argument = arguments.createChild(IApiXmlConstants.ELEMENT_PROBLEM_MESSAGE_ARGUMENT);
+					argument.putString(IApiXmlConstants.ATTR_VALUE, messageArguments[j]);
+				}
+			}
+		}
+		File dir = new File(filtersRoot, componentId);
+		dir.mkdirs();
+		root.saveToFile(new File(dir, IApiCoreConstants.API_FILTERS_XML_NAME).getAbsolutePath());
+	}
+
+	/**
+	 * Write an installation of bundles holding nothing but a manifest
+	 * below <code>location/plugins</code>, as an extracted SDK would.
+	 *
+	 * @param location the installation folder
+	 * @param bundles the number of bundles
+	 * @throws IOException if a bundle cannot be written
+	 */
+	public static void writeManifestBundles(File location, int bundles) throws IOException {
+		File plugins = new File(location, "plugins"); //$NON-NLS-1$
+		for( int i = 0; i < bundles; i++ ) {
+			String name = getBundleName(i);
+			File metaInf = new File(new File(plugins, name + "_1.0.0"), "META-INF"); //$NON-NLS-1$ //$NON-NLS-2$
+			metaInf.mkdirs();
+			StringBuffer manifest = new StringBuffer();
+			manifest.append("Manifest-Version: 1.0\n"); //$NON-NLS-1$
+			manifest.append("Bundle-ManifestVersion: 2\n"); //$NON-NLS-1$
+			manifest.append("Bundle-SymbolicName: ").append(name).append('\n'); //$NON-NLS-1$
+			manifest.append("Bundle-Version: 1.0.0\n"); //$NON-NLS-1$
+			manifest.append("Bundle-RequiredExecutionEnvironment: JavaSE-1.6\n"); //$NON-NLS-1$
+			write(new File(metaInf, "MANIFEST.MF"), manifest.toString()); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Write an inclusion or exclusion list of the given bundles. Every
+	 * <code>regexEvery</code>-th decade of bundles is matched by a regular
+	 * expression instead of exact names.
+	 *
+	 * @param file the list to write
+	 * @param first the first bundle of the list
+	 * @param count the number of bundles in the list
+	 * @param regexEvery the ratio of decades matched by a regular expression
+	 * @throws IOException if the list cannot be written
+	 */
+	public static void writeList(File file, int first, int count, int regexEvery) throws IOException {
+		StringBuffer contents = new StringBuffer("# synthetic list\n"); //$NON-NLS-1$
+		for( int i = first; i < first + count; i++ ) {
+			if( regexEvery > 0 && (i / 10) % regexEvery == 0 ) {
+				if( i % 10 == 0 )
+					contents.append(Util.REGULAR_EXPRESSION_START).append('^')
+						.append(BUNDLE_PREFIX.replaceAll("\\.", "\\\\.")) //$NON-NLS-1$ //$NON-NLS-2$
+						.append(i / 10).append("\\d$\n"); //$NON-NLS-1$
+				continue;
+			}
+			contents.append(getBundleName(i)).append('\n');
+		}
+		write(file, contents.toString());
+	}
+
+	private static void write(File file, String contents) throws IOException {
+		Writer w = null;
+		try {
+			w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")); //$NON-NLS-1$
+			w.write(contents);
+		} finally {
+			if( w != null ) {
+				try {
+					w.close();
+				} catch(IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create a fresh temporary folder
+	 */
+	public static File createTempDir(String prefix) throws IOException {
+		File dir = File.createTempFile(prefix, ""); //$NON-NLS-1$
+		if( !dir.delete() || !dir.mkdirs())
+			throw new IOException("Could not create " + dir); //$NON-NLS-1$
+		return dir;
+	}
+}
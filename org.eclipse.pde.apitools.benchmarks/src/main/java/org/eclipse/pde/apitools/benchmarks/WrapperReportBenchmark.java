@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Red Hat Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Red Hat Inc. - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.pde.apitools.benchmarks;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.pde.api.tools.internal.provisional.problems.IApiProblem;
+import org.eclipse.pde.apitools.ant.internal.ApiAnalysisReport;
+import org.eclipse.pde.apitools.ant.internal.WrapperReport;
+import org.eclipse.pde.apitools.ant.util.XMLMemento;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures a summary report over many bundles, which sorts
+ * the bundles by their number of problems before filling in each.
+ * The bundles have between none and twice <code>problemsPerBundle</code> problems.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WrapperReportBenchmark {
+	private static final int[] TYPES = new int[] { IApiProblem.CATEGORY_COMPATIBILITY };
+
+	@Param({"10", "500", "5000"})
+	public int bundles;
+
+	@Param({"10", "200"})
+	public int problemsPerBundle;
+
+	private IApiProblem[][] problems;
+	private Properties preferences;
+
+	@Setup
+	public void setUp() {
+		preferences = new Properties();
+		problems = new IApiProblem[bundles][];
+		for( int i = 0; i < bundles; i++ ) {
+			int count = (int)((i * 7919L) % (2 * problemsPerBundle + 1));
+			problems[i] = SyntheticData.createProblems(count, Math.max(1, count / 20), SyntheticData.SEED + i);
+		}
+	}
+
+	/*
+	 * New reports each time, since a report keeps its problems sorted once written
+	 */
+	@Benchmark
+	public XMLMemento generateMemento() {
+		WrapperReport main = new WrapperReport("breakage", TYPES); //$NON-NLS-1$
+		for( int i = 0; i < problems.length; i++ ) {
+			main.addChildReport(new ApiAnalysisReport(SyntheticData.getBundleName(i), problems[i], preferences));
+		}
+		return main.generateMemento();
+	}
+}